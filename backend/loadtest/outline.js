@@ -0,0 +1,44 @@
+// k6 load test: many concurrent users waiting on slow upstream calls.
+// Each iteration requests a distinct outline so the outline cache does not absorb the load.
+// Rate limiting is per signed-in user, so run the backend with ratelimit.enabled=false or pass
+// one session per simulated user; 429s are counted as expected rather than as failures.
+import http from 'k6/http';
+import { check } from 'k6';
+import exec from 'k6/execution';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+// Comma-separated SPEECHMATE_SESSION cookie values; each VU uses one of them in turn
+const SESSIONS = (__ENV.SESSION_COOKIES || __ENV.SESSION_COOKIE || '').split(',').filter((s) => s);
+
+http.setResponseCallback(http.expectedStatuses(200, 429));
+
+export const options = {
+  scenarios: {
+    outlines: {
+      executor: 'constant-vus',
+      vus: Number(__ENV.VUS || 1000),
+      duration: __ENV.DURATION || '1m',
+    },
+  },
+  thresholds: {
+    http_req_failed: ['rate<0.01'],
+  },
+};
+
+export default function () {
+  const res = http.post(`${BASE_URL}/api/gemini/generate-outline`, JSON.stringify({
+    topic: `Load test ${exec.scenario.iterationInTest}`,
+    tone: 'professional',
+    style: 'informative',
+    audience: 'engineers',
+    seconds: 300,
+  }), {
+    headers: { 'Content-Type': 'application/json' },
+    cookies: { SPEECHMATE_SESSION: SESSIONS[(exec.vu.idInTest - 1) % SESSIONS.length] },
+    timeout: '60s',
+  });
+  check(res, {
+    'status is 200': (r) => r.status === 200,
+    'not rate limited': (r) => r.status !== 429,
+  });
+}
@@ -0,0 +1,89 @@
+"""Slow stand-in for the Gemini API used by the load test.
+
+Answers every generateContent call after a fixed delay with a canned response, so
+the backend can be driven at high concurrency without spending quota and the number
+of requests it keeps in flight is bounded only by its own threading model.
+
+    python3 stub_gemini.py --port 8089 --delay 3
+"""
+import argparse
+import asyncio
+import json
+
+OUTLINE = {
+    "title": "Load test outline",
+    "hook": "Hook",
+    "sections": [{"heading": "Intro", "bullets": ["Point"], "durationSeconds": 60}],
+    "closing": {"summary": "Summary", "callToAction": "Act"},
+}
+TIPS = {"tips": ["Breathe before you start", "Pause after key points", "Make eye contact"]}
+ANALYSIS = {"overallScore": 80, "summary": "Solid delivery"}
+
+
+def envelope(payload):
+    text = payload if isinstance(payload, str) else json.dumps(payload)
+    return json.dumps({
+        "candidates": [{"content": {"parts": [{"text": text}]}, "finishReason": "STOP"}],
+        "usageMetadata": {"promptTokenCount": 100, "candidatesTokenCount": 50, "totalTokenCount": 150},
+    }).encode()
+
+
+def response_for(path):
+    if "flash-lite" in path:
+        return envelope(TIPS)
+    if "gemini-2.5-pro" in path:
+        return envelope(ANALYSIS)
+    return envelope(OUTLINE)
+
+
+async def handle(reader, writer, delay):
+    try:
+        while True:
+            request_line = await reader.readline()
+            if not request_line:
+                break
+            path = request_line.decode().split(" ")[1]
+            length = 0
+            chunked = False
+            while True:
+                header = await reader.readline()
+                if header in (b"\r\n", b""):
+                    break
+                name, _, value = header.decode().partition(":")
+                if name.lower() == "content-length":
+                    length = int(value.strip())
+                elif name.lower() == "transfer-encoding" and "chunked" in value.lower():
+                    chunked = True
+            if chunked:
+                while True:
+                    size = int((await reader.readline()).strip(), 16)
+                    await reader.readexactly(size + 2)
+                    if size == 0:
+                        break
+            elif length:
+                await reader.readexactly(length)
+
+            await asyncio.sleep(delay)
+            body = response_for(path)
+            writer.write(b"HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n"
+                         + f"Content-Length: {len(body)}\r\n\r\n".encode() + body)
+            await writer.drain()
+    except (ConnectionError, asyncio.IncompleteReadError):
+        pass
+    finally:
+        writer.close()
+
+
+async def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--port", type=int, default=8089)
+    parser.add_argument("--delay", type=float, default=3.0, help="seconds before each response")
+    args = parser.parse_args()
+    server = await asyncio.start_server(lambda r, w: handle(r, w, args.delay), "0.0.0.0", args.port, backlog=4096)
+    print(f"Gemini stand-in listening on :{args.port} with {args.delay}s latency")
+    async with server:
+        await server.serve_forever()
+
+
+if __name__ == "__main__":
+    asyncio.run(main())
@@ -0,0 +1,69 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building prompts and serializing the small JSON request bodies sent for outlines
+ * and analyses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Map<String, Object> outlineParams;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        outlineParams = Map.of(
+            "topic", "Why every team should run blameless postmortems",
+            "tone", "professional",
+            "style", "persuasive",
+            "audience", "engineering managers",
+            "keyMessage", "Incidents are a chance to fix systems, not to blame people",
+            "seconds", 420
+        );
+    }
+
+    @Benchmark
+    public String analysisPrompt() {
+        return GeminiService.buildAnalysisPrompt(
+            "Quarterly product update", "company all-hands", 600, "sound more confident and cut filler words");
+    }
+
+    @Benchmark
+    public Map<String, Object> outlineRequest() {
+        return GeminiService.buildOutlineRequest(outlineParams);
+    }
+
+    @Benchmark
+    public byte[] outlineRequestSerialized() throws Exception {
+        return objectMapper.writeValueAsBytes(GeminiService.buildOutlineRequest(outlineParams));
+    }
+
+    @Benchmark
+    public byte[] analysisPromptSerialized() throws Exception {
+        String prompt = GeminiService.buildAnalysisPrompt(
+            "Quarterly product update", "company all-hands", 600, "sound more confident and cut filler words");
+        return objectMapper.writeValueAsBytes(Map.of("contents", Map.of("parts", Map.of("text", prompt))));
+    }
+}
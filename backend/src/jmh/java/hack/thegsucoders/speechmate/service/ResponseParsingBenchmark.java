@@ -0,0 +1,87 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.model.GeminiResponse;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an analysis out of a generateContent response: the streaming parser and typed
+ * payload against walking a fully materialized Map, as the service originally did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {
+    };
+
+    private ObjectMapper objectMapper;
+    private GeminiResponseParser parser;
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        parser = new GeminiResponseParser(objectMapper);
+
+        String analysis;
+        try (InputStream in = getClass().getResourceAsStream("/speech-analysis.json")) {
+            analysis = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Map<String, Object> envelope = Map.of(
+            "candidates", List.of(Map.of(
+                "content", Map.of("role", "model", "parts", List.of(Map.of("text", "```json\n" + analysis + "\n```"))),
+                "finishReason", "STOP",
+                "safetyRatings", List.of(
+                    Map.of("category", "HARM_CATEGORY_HARASSMENT", "probability", "NEGLIGIBLE"),
+                    Map.of("category", "HARM_CATEGORY_HATE_SPEECH", "probability", "NEGLIGIBLE"),
+                    Map.of("category", "HARM_CATEGORY_DANGEROUS_CONTENT", "probability", "NEGLIGIBLE")
+                )
+            )),
+            "usageMetadata", Map.of("promptTokenCount", 25310, "candidatesTokenCount", 1204, "totalTokenCount", 26514),
+            "modelVersion", "gemini-2.5-pro"
+        );
+        response = objectMapper.writeValueAsBytes(envelope);
+    }
+
+    @Benchmark
+    public SpeechAnalysis streamingParser() {
+        GeminiResponse parsed = parser.parse(DefaultDataBufferFactory.sharedInstance.wrap(response));
+        return parser.readPayload(parsed.text(), SpeechAnalysis.class);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> mapWalk() throws IOException {
+        Map<String, Object> body = objectMapper.readValue(response, MAP);
+        List<Map<String, Object>> candidates = (List<Map<String, Object>>) body.get("candidates");
+        Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
+        List<Map<String, Object>> parts = (List<Map<String, Object>>) content.get("parts");
+        String text = (String) parts.get(0).get("text");
+        return objectMapper.readValue(text.substring(text.indexOf('{'), text.lastIndexOf('}') + 1), MAP);
+    }
+}
@@ -0,0 +1,200 @@
+package hack.thegsucoders.speechmate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user admission control for the endpoints that spend upstream quota. Each
+ * authenticated principal gets one token bucket per endpoint class; requests beyond
+ * the budget are rejected with 429 and a Retry-After before reaching a controller.
+ *
+ * <p>Buckets use the generic cell rate algorithm: the whole bucket is a single
+ * timestamp updated by compare-and-set, so admission takes no locks and allocates
+ * nothing once a user's buckets exist.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    enum EndpointClass {
+        /** Multimodal analysis of uploaded recordings */
+        HEAVY,
+        /** Text generation and text-to-speech */
+        LIGHT,
+        /** Batch text-to-speech, which synthesizes a whole speech in one request */
+        BATCH
+    }
+
+    /**
+     * Token bucket stored as the time at which it will next be full ("theoretical arrival time")
+     */
+    static final class Bucket {
+        private final AtomicLong fullAt;
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        Bucket(int capacity, Duration refillInterval, long now) {
+            this.fullAt = new AtomicLong(now);
+            this.intervalNanos = refillInterval.toNanos();
+            this.burstNanos = intervalNanos * capacity;
+        }
+
+        /**
+         * Take a token
+         * @return 0 if admitted, otherwise nanoseconds until a token is available
+         */
+        long tryAcquire(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long base = current - now > 0 ? current : now;
+                long next = base + intervalNanos;
+                long wait = next - now - burstNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * A full bucket behaves exactly like a new one, so it can be dropped
+         */
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+
+    private record Buckets(Bucket heavy, Bucket light, Bucket batch) {
+        Bucket get(EndpointClass endpointClass) {
+            return switch (endpointClass) {
+                case HEAVY -> heavy;
+                case LIGHT -> light;
+                case BATCH -> batch;
+            };
+        }
+    }
+
+    private final Map<String, Buckets> buckets = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final int heavyCapacity;
+    private final Duration heavyRefill;
+    private final int lightCapacity;
+    private final Duration lightRefill;
+    private final int batchCapacity;
+    private final Duration batchRefill;
+
+    private final Counter heavyRejected;
+    private final Counter lightRejected;
+    private final Counter batchRejected;
+
+    public RateLimitFilter(MeterRegistry meterRegistry,
+                           @Value("${ratelimit.enabled:true}") boolean enabled,
+                           @Value("${ratelimit.heavy.capacity:3}") int heavyCapacity,
+                           @Value("${ratelimit.heavy.refill-interval:2m}") Duration heavyRefill,
+                           @Value("${ratelimit.light.capacity:20}") int lightCapacity,
+                           @Value("${ratelimit.light.refill-interval:3s}") Duration lightRefill,
+                           @Value("${ratelimit.batch.capacity:2}") int batchCapacity,
+                           @Value("${ratelimit.batch.refill-interval:1m}") Duration batchRefill) {
+        this.enabled = enabled;
+        this.heavyCapacity = heavyCapacity;
+        this.heavyRefill = heavyRefill;
+        this.lightCapacity = lightCapacity;
+        this.lightRefill = lightRefill;
+        this.batchCapacity = batchCapacity;
+        this.batchRefill = batchRefill;
+
+        this.heavyRejected = Counter.builder("speechmate.ratelimit.rejected").tag("class", "heavy").register(meterRegistry);
+        this.lightRejected = Counter.builder("speechmate.ratelimit.rejected").tag("class", "light").register(meterRegistry);
+        this.batchRejected = Counter.builder("speechmate.ratelimit.rejected").tag("class", "batch").register(meterRegistry);
+        Gauge.builder("speechmate.ratelimit.users", buckets, Map::size)
+            .description("Users with a partly drained rate limit bucket")
+            .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        EndpointClass endpointClass = classify(request);
+        Principal principal = request.getUserPrincipal();
+        if (!enabled || endpointClass == null || principal == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long now = System.nanoTime();
+        Bucket bucket = buckets.computeIfAbsent(principal.getName(), name -> new Buckets(
+            new Bucket(heavyCapacity, heavyRefill, now),
+            new Bucket(lightCapacity, lightRefill, now),
+            new Bucket(batchCapacity, batchRefill, now)
+        )).get(endpointClass);
+
+        long wait = bucket.tryAcquire(now);
+        if (wait == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        (switch (endpointClass) {
+            case HEAVY -> heavyRejected;
+            case LIGHT -> lightRejected;
+            case BATCH -> batchRejected;
+        }).increment();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999))));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Too many requests, please slow down\"}");
+    }
+
+    /**
+     * Endpoint class of a request, or null if it is not rate limited. Matched on the decoded
+     * path without path parameters, the way controllers are mapped, so an encoded or
+     * ;-suffixed spelling of an endpoint is limited like the plain one.
+     */
+    static EndpointClass classify(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        return switch (UrlPathHelper.defaultInstance.getPathWithinApplication(request)) {
+            case "/api/gemini/analyze-speech", "/api/gemini/analyze-speech/jobs" -> EndpointClass.HEAVY;
+            case "/api/gemini/generate-outline", "/api/gemini/generate-outline/stream",
+                 "/api/gemini/generate-encouragement",
+                 "/api/elevenlabs/text-to-speech", "/api/elevenlabs/text-to-speech/stream" -> EndpointClass.LIGHT;
+            case "/api/elevenlabs/text-to-speech/batch" -> EndpointClass.BATCH;
+            default -> null;
+        };
+    }
+
+    /**
+     * Drop buckets that have refilled completely, keeping memory proportional to recently active users.
+     * A request racing with the removal may be admitted against the dropped bucket, which
+     * at worst grants that user one extra token.
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.eviction-interval:60s}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(entry -> entry.heavy().isFull(now) && entry.light().isFull(now) && entry.batch().isFull(now));
+    }
+}
@@ -3,16 +3,26 @@ package hack.thegsucoders.speechmate.config;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.web.DefaultOAuth2AuthorizationRequestResolver;
 import org.springframework.security.oauth2.client.web.OAuth2AuthorizationRequestRedirectFilter;
 import org.springframework.security.oauth2.client.web.OAuth2AuthorizationRequestResolver;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.Http403ForbiddenEntryPoint;
 import org.springframework.web.cors.CorsConfiguration;
@@ -20,6 +30,8 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.List;
 
@@ -30,6 +42,9 @@ public class SecurityConfig {
     @Value("${frontend.url}")
     private String frontendUrl;
 
+    @Value("${metrics.scrape-token:}")
+    private String scrapeToken;
+
     private static final List<String> ALLOWED_ORIGINS = Arrays.asList(
         "http://localhost:5173",
         "https://ashy-glacier-0f328380f.3.azurestaticapps.net",
@@ -38,12 +53,25 @@ public class SecurityConfig {
     );
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http, ClientRegistrationRepository clientRegistrationRepository) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http,
+                                           ClientRegistrationRepository clientRegistrationRepository,
+                                           RateLimitFilter rateLimitFilter,
+                                           UploadAdmissionFilter uploadAdmissionFilter,
+                                           SessionTokenSecurityContextRepository securityContextRepository,
+                                           SessionTokenAuthorizationRequestRepository authorizationRequestRepository) throws Exception {
         http
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
+            // No servlet session: the signed-in user and the pending OAuth2 request travel in sealed cookies
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .securityContext(context -> context.securityContextRepository(securityContextRepository))
+            // Runs once the request is authenticated, so budgets are tracked per principal
+            .addFilterAfter(rateLimitFilter, AuthorizationFilter.class)
+            // Admitted uploads reserve their size before anything reads the multipart body
+            .addFilterAfter(uploadAdmissionFilter, RateLimitFilter.class)
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/", "/error", "/webjars/**", "/actuator/health", "/actuator/info", "/login/oauth2/code/**", "/api/user", "/robots933456.txt").permitAll()
+                .requestMatchers("/actuator/prometheus").access(scrapeTokenAuthorization())
                 .anyRequest().authenticated()
             )
             .exceptionHandling(exceptions -> exceptions
@@ -51,11 +79,13 @@ public class SecurityConfig {
             )
             .oauth2Login(oauth2 -> oauth2
                 .authorizationEndpoint(authorization ->
-                    authorization.authorizationRequestResolver(
-                        customAuthorizationRequestResolver(clientRegistrationRepository)
-                    )
+                    authorization
+                        .authorizationRequestResolver(customAuthorizationRequestResolver(clientRegistrationRepository))
+                        .authorizationRequestRepository(authorizationRequestRepository)
                 )
+                .authorizedClientRepository(new DiscardingAuthorizedClientRepository())
                 .successHandler(oAuth2AuthenticationSuccessHandler())
+                .failureHandler(oAuth2AuthenticationFailureHandler())
             )
             .logout(logout -> logout
                 .logoutSuccessUrl("/")
@@ -65,6 +95,66 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * The scraper authenticates with {@code Authorization: Bearer <metrics.scrape-token>}; with no
+     * token configured the endpoint is closed
+     */
+    private AuthorizationManager<RequestAuthorizationContext> scrapeTokenAuthorization() {
+        byte[] expected = ("Bearer " + scrapeToken).getBytes(StandardCharsets.UTF_8);
+        return (authentication, context) -> {
+            String header = context.getRequest().getHeader(HttpHeaders.AUTHORIZATION);
+            return new AuthorizationDecision(!scrapeToken.isBlank() && header != null
+                && MessageDigest.isEqual(expected, header.getBytes(StandardCharsets.UTF_8)));
+        };
+    }
+
+    /**
+     * The rate limit filter runs inside the security chain only, not as a standalone servlet filter
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    /**
+     * Likewise for upload admission, so rejected and unauthenticated requests never hold budget
+     */
+    @Bean
+    public FilterRegistrationBean<UploadAdmissionFilter> uploadAdmissionFilterRegistration(UploadAdmissionFilter uploadAdmissionFilter) {
+        FilterRegistrationBean<UploadAdmissionFilter> registration = new FilterRegistrationBean<>(uploadAdmissionFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    /**
+     * Nothing calls Google on the user's behalf after login, so the access and refresh tokens
+     * are not kept; the default in-memory store would hold them per user for the life of the node
+     */
+    private static final class DiscardingAuthorizedClientRepository implements OAuth2AuthorizedClientRepository {
+
+        @Override
+        public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, Authentication principal,
+                                                                          HttpServletRequest request) {
+            return null;
+        }
+
+        @Override
+        public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal,
+                                         HttpServletRequest request, HttpServletResponse response) {
+        }
+
+        @Override
+        public void removeAuthorizedClient(String clientRegistrationId, Authentication principal,
+                                           HttpServletRequest request, HttpServletResponse response) {
+        }
+    }
+
+    /**
+     * Always show Google's account chooser. Tokens are discarded after login, so neither
+     * offline access nor the consent screen is requested.
+     */
     private OAuth2AuthorizationRequestResolver customAuthorizationRequestResolver(
             ClientRegistrationRepository clientRegistrationRepository) {
         
@@ -75,10 +165,7 @@ public class SecurityConfig {
             );
 
         defaultResolver.setAuthorizationRequestCustomizer(customizer ->
-            customizer.additionalParameters(params -> {
-                params.put("prompt", "consent select_account");
-                params.put("access_type", "offline");
-            })
+            customizer.additionalParameters(params -> params.put("prompt", "select_account"))
         );
 
         return defaultResolver;
@@ -95,6 +182,15 @@ public class SecurityConfig {
         };
     }
 
+    /**
+     * Same redirect as the default, without stashing the exception in a new session
+     */
+    private SimpleUrlAuthenticationFailureHandler oAuth2AuthenticationFailureHandler() {
+        SimpleUrlAuthenticationFailureHandler failureHandler = new SimpleUrlAuthenticationFailureHandler("/login?error");
+        failureHandler.setAllowSessionCreation(false);
+        return failureHandler;
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
@@ -0,0 +1,62 @@
+package hack.thegsucoders.speechmate.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Reads and writes the cookies that carry sealed session state, with the attributes the
+ * cross-site frontend needs
+ */
+@Component
+public class SessionCookies {
+
+    private final String sameSite;
+    private final boolean secure;
+    private final String domain;
+
+    public SessionCookies(@Value("${auth.session.cookie.same-site:None}") String sameSite,
+                          @Value("${auth.session.cookie.secure:true}") boolean secure,
+                          @Value("${auth.session.cookie.domain:}") String domain) {
+        this.sameSite = sameSite;
+        this.secure = secure;
+        this.domain = domain;
+    }
+
+    public Optional<String> read(HttpServletRequest request, String name) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return Optional.empty();
+        }
+        for (Cookie cookie : cookies) {
+            if (name.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return Optional.of(cookie.getValue());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void write(HttpServletResponse response, String name, String value, Duration maxAge) {
+        ResponseCookie.ResponseCookieBuilder cookie = ResponseCookie.from(name, value)
+            .path("/")
+            .httpOnly(true)
+            .secure(secure)
+            .sameSite(sameSite)
+            .maxAge(maxAge);
+        if (!domain.isBlank()) {
+            cookie.domain(domain);
+        }
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.build().toString());
+    }
+
+    public void clear(HttpServletResponse response, String name) {
+        write(response, name, "", Duration.ZERO);
+    }
+}
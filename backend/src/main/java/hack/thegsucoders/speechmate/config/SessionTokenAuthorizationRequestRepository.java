@@ -0,0 +1,103 @@
+package hack.thegsucoders.speechmate.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.client.web.AuthorizationRequestRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+
+/**
+ * Holds the pending OAuth2 authorization request in a short-lived sealed cookie between
+ * the redirect to the provider and its callback, so the callback may land on any instance
+ */
+@Component
+public class SessionTokenAuthorizationRequestRepository implements AuthorizationRequestRepository<OAuth2AuthorizationRequest> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionTokenAuthorizationRequestRepository.class);
+
+    static final String PURPOSE = "oauth2-authorization-request";
+    private static final ObjectInputFilter ALLOWED_CLASSES = ObjectInputFilter.Config.createFilter(
+        "java.lang.*;java.util.*;org.springframework.security.oauth2.core.**;!*");
+
+    private final SessionTokenCodec codec;
+    private final SessionCookies cookies;
+    private final String cookieName;
+    private final Duration ttl;
+
+    public SessionTokenAuthorizationRequestRepository(SessionTokenCodec codec,
+                                                      SessionCookies cookies,
+                                                      @Value("${auth.session.authorization-request.cookie-name:SPEECHMATE_OAUTH2_REQUEST}") String cookieName,
+                                                      @Value("${auth.session.authorization-request.ttl:5m}") Duration ttl) {
+        this.codec = codec;
+        this.cookies = cookies;
+        this.cookieName = cookieName;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest loadAuthorizationRequest(HttpServletRequest request) {
+        String state = request.getParameter(OAuth2ParameterNames.STATE);
+        if (state == null) {
+            return null;
+        }
+        OAuth2AuthorizationRequest authorizationRequest = cookies.read(request, cookieName)
+            .flatMap(token -> codec.open(PURPOSE, token))
+            .map(SessionTokenAuthorizationRequestRepository::deserialize)
+            .orElse(null);
+        return authorizationRequest != null && state.equals(authorizationRequest.getState()) ? authorizationRequest : null;
+    }
+
+    @Override
+    public void saveAuthorizationRequest(OAuth2AuthorizationRequest authorizationRequest,
+                                         HttpServletRequest request, HttpServletResponse response) {
+        if (authorizationRequest == null) {
+            cookies.clear(response, cookieName);
+            return;
+        }
+        cookies.write(response, cookieName, codec.seal(PURPOSE, serialize(authorizationRequest), ttl), ttl);
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest removeAuthorizationRequest(HttpServletRequest request, HttpServletResponse response) {
+        OAuth2AuthorizationRequest authorizationRequest = loadAuthorizationRequest(request);
+        if (authorizationRequest != null) {
+            cookies.clear(response, cookieName);
+        }
+        return authorizationRequest;
+    }
+
+    private static byte[] serialize(OAuth2AuthorizationRequest authorizationRequest) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(authorizationRequest);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize authorization request", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Only called on payloads whose signature has been verified; the class filter is a second line of defence
+     */
+    private static OAuth2AuthorizationRequest deserialize(byte[] payload) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            in.setObjectInputFilter(ALLOWED_CLASSES);
+            return (OAuth2AuthorizationRequest) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOGGER.debug("Discarding unreadable authorization request cookie: {}", e.getMessage());
+            return null;
+        }
+    }
+}
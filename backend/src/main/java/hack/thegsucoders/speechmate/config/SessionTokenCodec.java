@@ -0,0 +1,204 @@
+package hack.thegsucoders.speechmate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Seals short payloads into compact, tamper-proof strings that fit in a cookie, so
+ * state that used to live in the servlet session can travel with the browser instead.
+ *
+ * <p>A token is {@code <key id>.<payload>.<signature>}: the payload is the expiry time
+ * followed by the caller's bytes, optionally AES-GCM encrypted, and the signature an
+ * HMAC-SHA256 over the purpose, key id and payload. Several keys can be configured;
+ * the first one seals and all of them open, so keys rotate without logging anyone out.
+ */
+@Component
+public class SessionTokenCodec {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionTokenCodec.class);
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    /**
+     * Signing and encryption keys derived from one configured secret, built once at startup
+     */
+    private record Key(String id, SecretKeySpec mac, SecretKeySpec cipher) {
+    }
+
+    private final Key sealingKey;
+    private final Map<String, Key> keys;
+    private final boolean encrypt;
+    private final SecureRandom random = new SecureRandom();
+    private final Counter issued;
+    private final Counter valid;
+    private final Counter expired;
+    private final Counter invalid;
+
+    /**
+     * @param keys Comma-separated {@code id:base64-secret} pairs; the first one seals new tokens
+     * @param encrypt Whether payloads are encrypted as well as signed
+     */
+    public SessionTokenCodec(@Value("${auth.session.keys:}") String keys,
+                             @Value("${auth.session.encrypt:false}") boolean encrypt,
+                             MeterRegistry meterRegistry) {
+        this.keys = parseKeys(keys);
+        this.sealingKey = this.keys.values().iterator().next();
+        this.encrypt = encrypt;
+        this.issued = meterRegistry.counter("speechmate.session.tokens", "result", "issued");
+        this.valid = meterRegistry.counter("speechmate.session.tokens", "result", "valid");
+        this.expired = meterRegistry.counter("speechmate.session.tokens", "result", "expired");
+        this.invalid = meterRegistry.counter("speechmate.session.tokens", "result", "invalid");
+    }
+
+    /**
+     * Seal a payload with the current key
+     * @param purpose What the token is for; a token only opens for the purpose it was sealed with
+     * @param payload Bytes to protect
+     * @param ttl How long the token stays valid
+     * @return Cookie-safe token
+     */
+    public String seal(String purpose, byte[] payload, Duration ttl) {
+        ByteBuffer body = ByteBuffer.allocate(Long.BYTES + payload.length)
+            .putLong(System.currentTimeMillis() + ttl.toMillis())
+            .put(payload);
+        byte[] sealed = encrypt ? encrypt(sealingKey, body.array()) : body.array();
+        String signed = sealingKey.id() + "." + ENCODER.encodeToString(sealed);
+        issued.increment();
+        return signed + "." + ENCODER.encodeToString(sign(sealingKey, purpose, signed));
+    }
+
+    /**
+     * Verify and open a token sealed with any configured key
+     * @param purpose Purpose the token must have been sealed with
+     * @param token Token as received
+     * @return The payload, or empty if the token is malformed, forged, sealed with an unknown key or expired
+     */
+    public Optional<byte[]> open(String purpose, String token) {
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        Key key = firstDot > 0 ? keys.get(token.substring(0, firstDot)) : null;
+        if (key == null || lastDot <= firstDot) {
+            invalid.increment();
+            return Optional.empty();
+        }
+        try {
+            String signed = token.substring(0, lastDot);
+            byte[] signature = DECODER.decode(token.substring(lastDot + 1));
+            if (!MessageDigest.isEqual(signature, sign(key, purpose, signed))) {
+                invalid.increment();
+                return Optional.empty();
+            }
+            byte[] sealed = DECODER.decode(token.substring(firstDot + 1, lastDot));
+            ByteBuffer body = ByteBuffer.wrap(encrypt ? decrypt(key, sealed) : sealed);
+            if (body.getLong() < System.currentTimeMillis()) {
+                expired.increment();
+                return Optional.empty();
+            }
+            byte[] payload = new byte[body.remaining()];
+            body.get(payload);
+            valid.increment();
+            return Optional.of(payload);
+        } catch (IllegalArgumentException | GeneralSecurityException | BufferUnderflowException e) {
+            invalid.increment();
+            return Optional.empty();
+        }
+    }
+
+    private static byte[] sign(Key key, String purpose, String signed) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key.mac());
+            mac.update(purpose.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) '.');
+            return mac.doFinal(signed.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+
+    private byte[] encrypt(Key key, byte[] plaintext) {
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key.cipher(), new GCMParameterSpec(TAG_BITS, iv));
+            byte[] sealed = new byte[IV_BYTES + cipher.getOutputSize(plaintext.length)];
+            System.arraycopy(iv, 0, sealed, 0, IV_BYTES);
+            cipher.doFinal(plaintext, 0, plaintext.length, sealed, IV_BYTES);
+            return sealed;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM unavailable", e);
+        }
+    }
+
+    private static byte[] decrypt(Key key, byte[] sealed) throws GeneralSecurityException {
+        if (sealed.length < IV_BYTES) {
+            throw new GeneralSecurityException("Token too short");
+        }
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key.cipher(), new GCMParameterSpec(TAG_BITS, sealed, 0, IV_BYTES));
+        return cipher.doFinal(sealed, IV_BYTES, sealed.length - IV_BYTES);
+    }
+
+    private static Map<String, Key> parseKeys(String config) {
+        Map<String, Key> keys = new LinkedHashMap<>();
+        for (String entry : config.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon <= 0 || entry.substring(0, colon).contains(".")) {
+                throw new IllegalArgumentException("auth.session.keys entries must be id:base64-secret with no dot in the id");
+            }
+            String id = entry.substring(0, colon).trim();
+            byte[] secret = Base64.getDecoder().decode(entry.substring(colon + 1).trim());
+            if (secret.length < MIN_SECRET_BYTES) {
+                throw new IllegalArgumentException("Session key " + id + " must be at least " + MIN_SECRET_BYTES + " bytes");
+            }
+            keys.put(id, deriveKey(id, secret));
+        }
+        if (keys.isEmpty()) {
+            byte[] secret = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(secret);
+            keys.put("local", deriveKey("local", secret));
+            LOGGER.warn("auth.session.keys is not set; sessions are sealed with a random key and end when this instance restarts");
+        }
+        return keys;
+    }
+
+    private static Key deriveKey(String id, byte[] secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            byte[] macKey = mac.doFinal("speechmate session signing".getBytes(StandardCharsets.US_ASCII));
+            byte[] cipherKey = mac.doFinal("speechmate session encryption".getBytes(StandardCharsets.US_ASCII));
+            return new Key(id, new SecretKeySpec(macKey, "HmacSHA256"), new SecretKeySpec(cipherKey, "AES"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+}
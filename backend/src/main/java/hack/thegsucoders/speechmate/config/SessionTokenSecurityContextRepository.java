@@ -0,0 +1,127 @@
+package hack.thegsucoders.speechmate.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the signed-in user in a sealed cookie instead of the servlet session. Only the
+ * registration, authorities and a few profile attributes are kept, and every request
+ * rebuilds its principal from the cookie, so any instance can serve any user and
+ * nothing per user stays on the heap between requests.
+ */
+@Component
+public class SessionTokenSecurityContextRepository implements SecurityContextRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionTokenSecurityContextRepository.class);
+
+    private static final String PURPOSE = "session";
+    private static final String NAME_ATTRIBUTE = "sub";
+
+    /**
+     * Cookie payload
+     */
+    record Claims(String registration, List<String> authorities, Map<String, Object> attributes) {
+    }
+
+    private final SessionTokenCodec codec;
+    private final SessionCookies cookies;
+    private final ObjectMapper objectMapper;
+    private final String cookieName;
+    private final Duration ttl;
+    private final List<String> attributes;
+
+    public SessionTokenSecurityContextRepository(SessionTokenCodec codec,
+                                                 SessionCookies cookies,
+                                                 ObjectMapper objectMapper,
+                                                 @Value("${auth.session.cookie.name:SPEECHMATE_SESSION}") String cookieName,
+                                                 @Value("${auth.session.ttl:12h}") Duration ttl,
+                                                 @Value("${auth.session.attributes:sub,name,email,picture}") String attributes) {
+        this.codec = codec;
+        this.cookies = cookies;
+        this.objectMapper = objectMapper;
+        this.cookieName = cookieName;
+        this.ttl = ttl;
+        this.attributes = Arrays.stream(attributes.split(",")).map(String::trim).filter(a -> !a.isEmpty()).toList();
+    }
+
+    @Override
+    @Deprecated
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        cookies.read(requestResponseHolder.getRequest(), cookieName)
+            .flatMap(token -> codec.open(PURPOSE, token))
+            .map(this::decode)
+            .ifPresent(context::setAuthentication);
+        return context;
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        if (context.getAuthentication() instanceof OAuth2AuthenticationToken authentication && authentication.isAuthenticated()) {
+            cookies.write(response, cookieName, codec.seal(PURPOSE, encode(authentication), ttl), ttl);
+        } else if (context.getAuthentication() == null && containsContext(request)) {
+            cookies.clear(response, cookieName);
+        }
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return cookies.read(request, cookieName).isPresent();
+    }
+
+    private byte[] encode(OAuth2AuthenticationToken authentication) {
+        OAuth2User user = authentication.getPrincipal();
+        Map<String, Object> kept = new LinkedHashMap<>();
+        kept.put(NAME_ATTRIBUTE, user.getName());
+        for (String attribute : attributes) {
+            Object value = user.getAttribute(attribute);
+            if (value != null) {
+                kept.putIfAbsent(attribute, value);
+            }
+        }
+        List<String> authorities = authentication.getAuthorities().stream()
+            .map(GrantedAuthority::getAuthority)
+            .toList();
+        try {
+            return objectMapper.writeValueAsBytes(new Claims(authentication.getAuthorizedClientRegistrationId(), authorities, kept));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode session claims", e);
+        }
+    }
+
+    private OAuth2AuthenticationToken decode(byte[] payload) {
+        try {
+            Claims claims = objectMapper.readValue(payload, Claims.class);
+            List<SimpleGrantedAuthority> authorities = claims.authorities().stream()
+                .map(SimpleGrantedAuthority::new)
+                .toList();
+            DefaultOAuth2User user = new DefaultOAuth2User(authorities, claims.attributes(), NAME_ATTRIBUTE);
+            return new OAuth2AuthenticationToken(user, authorities, claims.registration());
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Discarding unreadable session cookie: {}", e.getMessage());
+            return null;
+        }
+    }
+}
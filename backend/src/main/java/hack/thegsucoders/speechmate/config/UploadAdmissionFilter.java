@@ -0,0 +1,179 @@
+package hack.thegsucoders.speechmate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide admission control for multipart uploads. Before a multipart body is read,
+ * its declared length is reserved from a fixed byte budget and held until the request,
+ * including any asynchronous processing, has completed. When the budget is exhausted,
+ * requests wait briefly in a fair queue and are otherwise rejected with 503 and a
+ * Retry-After, so a burst of large uploads degrades into retries instead of running
+ * the process out of memory.
+ *
+ * <p>The budget is a semaphore over kibibytes, which keeps 2 GB and larger budgets within
+ * its int permits.
+ */
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final long UNIT = 1024;
+
+    private final boolean enabled;
+    private final int budgetUnits;
+    private final long maxRequestSize;
+    private final Duration queueTimeout;
+    private final int maxQueued;
+    private final Duration retryAfter;
+    private final Semaphore budget;
+
+    private final Counter rejected;
+
+    public UploadAdmissionFilter(MeterRegistry meterRegistry,
+                                 @Value("${uploads.admission.enabled:true}") boolean enabled,
+                                 @Value("${uploads.admission.budget:1GB}") DataSize budget,
+                                 @Value("${uploads.admission.queue-timeout:10s}") Duration queueTimeout,
+                                 @Value("${uploads.admission.max-queued:16}") int maxQueued,
+                                 @Value("${uploads.admission.retry-after:15s}") Duration retryAfter,
+                                 @Value("${spring.servlet.multipart.max-request-size:250MB}") DataSize maxRequestSize,
+                                 @Value("${spring.servlet.multipart.location:}") String spillDirectory) throws IOException {
+        this.enabled = enabled;
+        this.budgetUnits = (int) Math.min(Integer.MAX_VALUE, budget.toBytes() / UNIT);
+        this.maxRequestSize = maxRequestSize.toBytes();
+        this.queueTimeout = queueTimeout;
+        this.maxQueued = maxQueued;
+        this.retryAfter = retryAfter;
+        this.budget = new Semaphore(budgetUnits, true);
+
+        // The servlet container writes large parts here but does not create the directory itself
+        if (!spillDirectory.isBlank()) {
+            Files.createDirectories(Path.of(spillDirectory));
+        }
+
+        this.rejected = Counter.builder("speechmate.uploads.rejected")
+            .description("Multipart uploads turned away because the upload budget was exhausted")
+            .register(meterRegistry);
+        Gauge.builder("speechmate.uploads.budget.used", this, filter -> (double) (filter.budgetUnits - filter.budget.availablePermits()) * UNIT)
+            .description("Bytes of the upload budget reserved by requests in progress")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("speechmate.uploads.budget.limit", this, filter -> (double) filter.budgetUnits * UNIT)
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("speechmate.uploads.queued", this.budget, Semaphore::getQueueLength)
+            .description("Uploads waiting for budget")
+            .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!enabled || !isMultipart(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        int units = reservation(request.getContentLengthLong());
+        if (!acquire(units)) {
+            rejected.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Too many uploads in progress, please try again shortly\"}");
+            return;
+        }
+
+        Runnable release = releaseOnce(units);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * Budget units reserved for a request: its declared length, or the largest request
+     * allowed when the length is unknown, but never more than the whole budget
+     */
+    int reservation(long contentLength) {
+        long bytes = contentLength >= 0 ? contentLength : maxRequestSize;
+        return (int) Math.max(1, Math.min(budgetUnits, (bytes + UNIT - 1) / UNIT));
+    }
+
+    private boolean acquire(int units) {
+        try {
+            // Timed acquires honour the queue, so a large upload is not starved by a stream of small ones
+            if (budget.tryAcquire(units, 0, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            if (budget.getQueueLength() >= maxQueued) {
+                return false;
+            }
+            return budget.tryAcquire(units, queueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Runnable releaseOnce(int units) {
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                budget.release(units);
+            }
+        };
+    }
+
+    private static boolean isMultipart(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.regionMatches(true, 0, "multipart/", 0, "multipart/".length());
+    }
+
+    private record ReleasingListener(Runnable release) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package hack.thegsucoders.speechmate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Connection pool and timeout settings for each outbound HTTP client. Every client gets
+ * its own pool, so slow calls on one cannot use up the connections of another.
+ * @param gemini Fast Gemini calls: outlines, tips, encouragement
+ * @param geminiBulk Long-running Gemini calls: speech analysis and Files API uploads
+ * @param elevenlabs Text-to-speech calls
+ */
+@ConfigurationProperties(prefix = "upstream")
+public record UpstreamProperties(
+        @DefaultValue Client gemini,
+        @DefaultValue Client geminiBulk,
+        @DefaultValue Client elevenlabs) {
+
+    /**
+     * @param maxConnections Connections kept per pool
+     * @param pendingAcquireMaxCount Requests allowed to wait for a connection before failing fast
+     * @param pendingAcquireTimeout How long a request waits for a connection
+     * @param connectTimeout TCP connect timeout
+     * @param responseTimeout Longest gap allowed between reads of a response; overridable per request
+     * @param maxIdleTime Idle connections are closed after this long
+     * @param maxLifeTime Connections are recycled after this long, even if busy
+     * @param evictionInterval How often idle and expired connections are evicted in the background
+     * @param http2 Negotiate HTTP/2 over TLS, falling back to HTTP/1.1
+     * @param compress Request gzip-encoded responses
+     */
+    public record Client(
+            @DefaultValue("50") int maxConnections,
+            @DefaultValue("100") int pendingAcquireMaxCount,
+            @DefaultValue("10s") Duration pendingAcquireTimeout,
+            @DefaultValue("5s") Duration connectTimeout,
+            @DefaultValue("60s") Duration responseTimeout,
+            @DefaultValue("30s") Duration maxIdleTime,
+            @DefaultValue("5m") Duration maxLifeTime,
+            @DefaultValue("30s") Duration evictionInterval,
+            @DefaultValue("true") boolean http2,
+            @DefaultValue("true") boolean compress) {
+    }
+}
@@ -1,20 +1,102 @@
 package hack.thegsucoders.speechmate.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * One WebClient per upstream, each on its own Reactor Netty connection pool. Pool
+ * metrics are published under {@code reactor.netty.connection.provider.*} tagged with
+ * the pool name.
+ */
 @Configuration
-public class WebClientConfig {
+@EnableConfigurationProperties(UpstreamProperties.class)
+public class WebClientConfig implements DisposableBean {
+
+	private final UpstreamProperties properties;
+	private final List<ConnectionProvider> providers = new CopyOnWriteArrayList<>();
+
+	public WebClientConfig(UpstreamProperties properties) {
+		this.properties = properties;
+	}
+
+	@Bean
+	public WebClient geminiWebClient(@Value("${gemini.base-url:https://generativelanguage.googleapis.com}") String baseUrl) {
+		return build("gemini", properties.gemini(), baseUrl);
+	}
+
+	@Bean
+	public WebClient geminiBulkWebClient(@Value("${gemini.base-url:https://generativelanguage.googleapis.com}") String baseUrl) {
+		return build("gemini-bulk", properties.geminiBulk(), baseUrl);
+	}
 
 	@Bean
-	public WebClient.Builder webClientBuilder() {
+	public WebClient elevenLabsWebClient(@Value("${elevenlabs.base-url:https://api.elevenlabs.io/v1}") String baseUrl) {
+		return build("elevenlabs", properties.elevenlabs(), baseUrl);
+	}
+
+	/**
+	 * Override the client's response timeout for a single request, e.g.
+	 * {@code webClient.post().httpRequest(WebClientConfig.responseTimeout(Duration.ofSeconds(10)))}
+	 */
+	public static Consumer<ClientHttpRequest> responseTimeout(Duration timeout) {
+		return request -> {
+			HttpClientRequest nativeRequest = request.getNativeRequest();
+			nativeRequest.responseTimeout(timeout);
+		};
+	}
+
+	private WebClient build(String name, UpstreamProperties.Client client, String baseUrl) {
+		ConnectionProvider provider = ConnectionProvider.builder(name)
+			.maxConnections(client.maxConnections())
+			.pendingAcquireMaxCount(client.pendingAcquireMaxCount())
+			.pendingAcquireTimeout(client.pendingAcquireTimeout())
+			.maxIdleTime(client.maxIdleTime())
+			.maxLifeTime(client.maxLifeTime())
+			.evictInBackground(client.evictionInterval())
+			.metrics(true)
+			.build();
+		providers.add(provider);
+
+		HttpClient httpClient = HttpClient.create(provider)
+			.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) client.connectTimeout().toMillis())
+			.option(ChannelOption.SO_KEEPALIVE, true)
+			.responseTimeout(client.responseTimeout())
+			.compress(client.compress());
+		if (client.http2()) {
+			// Plain-text base URLs (local stand-ins) stay on HTTP/1.1
+			httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+		}
+
 		ExchangeStrategies strategies = ExchangeStrategies.builder()
 			.codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
 			.build();
 
 		return WebClient.builder()
-			.exchangeStrategies(strategies);
+			.baseUrl(baseUrl)
+			.clientConnector(new ReactorClientHttpConnector(httpClient))
+			.exchangeStrategies(strategies)
+			.build();
+	}
+
+	@Override
+	public void destroy() {
+		providers.forEach(ConnectionProvider::dispose);
 	}
 }
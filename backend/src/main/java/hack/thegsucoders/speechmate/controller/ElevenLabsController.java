@@ -1,10 +1,17 @@
 package hack.thegsucoders.speechmate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.model.TtsBatchRequest;
 import hack.thegsucoders.speechmate.service.ElevenLabsService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
 
+import java.io.InputStream;
 import java.util.Map;
 
 @RestController
@@ -13,9 +20,42 @@ import java.util.Map;
 public class ElevenLabsController {
 
     private final ElevenLabsService elevenLabsService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/text-to-speech")
-    public ResponseEntity<?> textToSpeech(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<?>> textToSpeech(@RequestBody Map<String, String> request) {
         return elevenLabsService.generateSpeechFromRequest(request);
     }
+
+    @PostMapping("/text-to-speech/stream")
+    public ResponseEntity<StreamingResponseBody> streamTextToSpeech(@RequestBody Map<String, String> request) {
+        return streaming(elevenLabsService.streamSpeechFromRequest(request));
+    }
+
+    @PostMapping("/text-to-speech/batch")
+    public ResponseEntity<StreamingResponseBody> batchTextToSpeech(@RequestBody TtsBatchRequest request) {
+        return streaming(elevenLabsService.streamBatchFromRequest(request));
+    }
+
+    /**
+     * MVC only streams a body asynchronously when the declared type says it is a
+     * StreamingResponseBody, so cached clips and error bodies are written through one as well
+     */
+    private ResponseEntity<StreamingResponseBody> streaming(ResponseEntity<?> response) {
+        if (response.getBody() instanceof StreamingResponseBody body) {
+            return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).body(body);
+        }
+        if (response.getBody() instanceof Resource resource) {
+            return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).body(outputStream -> {
+                try (InputStream in = resource.getInputStream()) {
+                    in.transferTo(outputStream);
+                }
+            });
+        }
+        Object error = response.getBody();
+        return ResponseEntity.status(response.getStatusCode())
+            .headers(response.getHeaders())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(outputStream -> objectMapper.writeValue(outputStream, error));
+    }
 }
@@ -1,53 +1,159 @@
 package hack.thegsucoders.speechmate.controller;
 
+import hack.thegsucoders.speechmate.model.SpeechOutline;
+import hack.thegsucoders.speechmate.service.AcousticAnalyzer;
+import hack.thegsucoders.speechmate.service.AnalysisHistoryStore;
+import hack.thegsucoders.speechmate.service.AnalysisJobService;
 import hack.thegsucoders.speechmate.service.GeminiService;
+import hack.thegsucoders.speechmate.service.SpeechTipPool;
+import hack.thegsucoders.speechmate.service.UpstreamUnavailableException;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/gemini")
 @RequiredArgsConstructor
 public class GeminiController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeminiController.class);
     
     private final GeminiService geminiService;
+    private final AcousticAnalyzer acousticAnalyzer;
+    private final AnalysisJobService analysisJobService;
+    private final AnalysisHistoryStore historyStore;
+    private final SpeechTipPool speechTipPool;
 
     @PostMapping("/generate-outline")
-    public ResponseEntity<Map<String, Object>> generateOutline(@RequestBody Map<String, Object> request) {
-        Map<String, Object> outline = geminiService.generateOutline(request);
-        return ResponseEntity.ok(outline);
+    public Mono<ResponseEntity<SpeechOutline>> generateOutline(@RequestBody Map<String, Object> request) {
+        return geminiService.generateOutline(request)
+            .map(ResponseEntity::ok);
+    }
+
+    @PostMapping(value = "/generate-outline/stream", produces = "text/event-stream")
+    public Flux<ServerSentEvent<String>> streamOutline(@RequestBody Map<String, Object> request) {
+        return geminiService.streamOutline(request)
+            .map(text -> ServerSentEvent.builder(text).event("delta").build())
+            .concatWith(Mono.just(ServerSentEvent.builder("").event("done").build()))
+            .onErrorResume(e -> {
+                // Upstream error messages include request details; the client only gets a fixed message
+                LOGGER.warn("Outline stream failed: {}", e.getMessage());
+                return Mono.just(ServerSentEvent.builder("Outline generation failed, please try again").event("error").build());
+            });
     }
 
     @GetMapping("/speech-tips")
-    public ResponseEntity<Map<String, Object>> getSpeechTips(@RequestParam(required = false) Integer count) {
-        Map<String, Object> tips = geminiService.generateSpeechTips(count);
-        return ResponseEntity.ok(tips);
+    public Mono<ResponseEntity<Map<String, Object>>> getSpeechTips(@RequestParam(required = false) Integer count) {
+        return speechTipPool.sample(count)
+            .map(tips -> ResponseEntity.ok(Map.<String, Object>of("tips", tips)));
     }
 
     @PostMapping(value = "/analyze-speech", consumes = "multipart/form-data")
-    public ResponseEntity<Map<String, Object>> analyzeSpeech(
+    public Mono<ResponseEntity<?>> analyzeSpeech(
+            @AuthenticationPrincipal OAuth2User principal,
             @RequestParam("files") List<MultipartFile> files,
             @RequestParam(required = false) String topic,
             @RequestParam(required = false) String audience,
             @RequestParam(required = false) Integer duration,
             @RequestParam(required = false) String goals
     ) {
+        return geminiService.analyzeSpeechPerformance(files, topic, audience, duration, goals)
+            .doOnNext(analysis -> historyStore.appendLater(principal.getAttribute("email"), topic, analysis))
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .onErrorResume(IllegalArgumentException.class,
+                e -> Mono.just(ResponseEntity.badRequest().body(Map.of("error", e.getMessage()))));
+    }
+
+    @PostMapping(value = "/analyze-speech/acoustics", consumes = "multipart/form-data")
+    public Mono<ResponseEntity<?>> analyzeAcoustics(@RequestParam("files") List<MultipartFile> files) {
+        return acousticAnalyzer.analyze(files)
+            .map(acoustics -> acoustics.<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.unprocessableEntity()
+                    .body(Map.of("error", "Acoustic analysis needs PCM WAV audio among the uploaded files"))));
+    }
+
+    @PostMapping(value = "/analyze-speech/jobs", consumes = "multipart/form-data")
+    public ResponseEntity<Map<String, Object>> submitAnalysisJob(
+            @AuthenticationPrincipal OAuth2User principal,
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(required = false) String topic,
+            @RequestParam(required = false) String audience,
+            @RequestParam(required = false) Integer duration,
+            @RequestParam(required = false) String goals
+    ) throws IOException {
+        if (!analysisJobService.isEnabled()) {
+            return jobsUnavailable();
+        }
         try {
-            Map<String, Object> analysis = geminiService.analyzeSpeechPerformance(files, topic, audience, duration, goals);
-            return ResponseEntity.ok(analysis);
+            AnalysisJobService.AnalysisJob job = analysisJobService.submit(principal.getAttribute("email"), files, topic, audience, duration, goals);
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/gemini/analyze-speech/jobs/" + job.getId()))
+                .body(job.toView());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of("error", "Too many analyses in progress, please try again shortly"));
+        }
+    }
+
+    @GetMapping("/analyze-speech/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getAnalysisJob(@AuthenticationPrincipal OAuth2User principal, @PathVariable String jobId) {
+        if (!analysisJobService.isEnabled()) {
+            return jobsUnavailable();
         }
+        return analysisJobService.find(jobId, principal.getAttribute("email"))
+            .map(job -> ResponseEntity.ok(job.toView()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/analyze-speech/jobs/{jobId}/events", produces = "text/event-stream")
+    public ResponseEntity<?> streamAnalysisJob(@AuthenticationPrincipal OAuth2User principal, @PathVariable String jobId) {
+        if (!analysisJobService.isEnabled()) {
+            return jobsUnavailable();
+        }
+        return analysisJobService.find(jobId, principal.getAttribute("email"))
+            .<ResponseEntity<?>>map(job -> ResponseEntity.ok(analysisJobService.subscribe(job)))
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @PostMapping("/generate-encouragement")
-    public ResponseEntity<Map<String, String>> generateEncouragement(@RequestBody Map<String, String> request) {
+    public Mono<ResponseEntity<Map<String, String>>> generateEncouragement(@RequestBody Map<String, String> request) {
         String userName = request.getOrDefault("userName", "");
-        String encouragement = geminiService.generateEncouragement(userName);
-        return ResponseEntity.ok(Map.of("message", encouragement));
+        return geminiService.generateEncouragement(userName)
+            .map(encouragement -> ResponseEntity.ok(Map.of("message", encouragement)));
+    }
+
+    /**
+     * Jobs are kept by the instance that accepted them, which a round-robin load balancer would not route back to
+     */
+    private static ResponseEntity<Map<String, Object>> jobsUnavailable() {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+            .body(Map.of("error", "Analysis jobs are not available on this deployment; use POST /api/gemini/analyze-speech"));
+    }
+
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<Map<String, String>> upstreamUnavailable(UpstreamUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+            .body(Map.of("error", e.getMessage()));
     }
 }
@@ -0,0 +1,62 @@
+package hack.thegsucoders.speechmate.controller;
+
+import hack.thegsucoders.speechmate.service.AnalysisHistoryStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Past analyses of the signed-in user, keyed by their email. Answers 501 when history is
+ * off, e.g. on multi-instance deployments, so clients do not mistake it for an empty history.
+ */
+@RestController
+@RequestMapping("/api/history")
+@RequiredArgsConstructor
+public class HistoryController {
+
+    private final AnalysisHistoryStore historyStore;
+
+    /**
+     * Summaries only, newest first; pass {@code next_cursor} back as {@code cursor} for the next page
+     */
+    @GetMapping
+    public ResponseEntity<?> list(@AuthenticationPrincipal OAuth2User principal,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(defaultValue = "20") int limit) {
+        if (!historyStore.isEnabled()) {
+            return unavailable();
+        }
+        return ResponseEntity.ok(historyStore.page(principal.getAttribute("email"), cursor, limit));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> get(@AuthenticationPrincipal OAuth2User principal, @PathVariable String id) throws IOException {
+        if (!historyStore.isEnabled()) {
+            return unavailable();
+        }
+        return historyStore.find(principal.getAttribute("email"), id)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> delete(@AuthenticationPrincipal OAuth2User principal, @PathVariable String id) throws IOException {
+        if (!historyStore.isEnabled()) {
+            return unavailable();
+        }
+        return historyStore.delete(principal.getAttribute("email"), id)
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.notFound().build();
+    }
+
+    private static ResponseEntity<Map<String, String>> unavailable() {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+            .body(Map.of("error", "Analysis history is not available on this deployment"));
+    }
+}
@@ -0,0 +1,61 @@
+package hack.thegsucoders.speechmate.model;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.Map;
+
+/**
+ * Pacing, pause and loudness measurements taken directly from the audio signal, available
+ * long before the model's analysis
+ * @param durationSeconds Length of the recording
+ * @param speakingSeconds Time spent speaking, from the first to the last voiced frame minus pauses
+ * @param speakingRatio Speaking time as a fraction of the recording
+ * @param syllablesPerSecond Estimated from peaks in the energy envelope while speaking
+ * @param estimatedWordsPerMinute Syllable rate converted at 1.5 syllables per word
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record AcousticAnalysis(
+    double durationSeconds,
+    double speakingSeconds,
+    double speakingRatio,
+    Pauses pauses,
+    double syllablesPerSecond,
+    int estimatedWordsPerMinute,
+    Loudness loudness
+) {
+
+    /**
+     * Silences between speech of at least the minimum pause length
+     * @param minSeconds Shortest silence counted as a pause
+     * @param distribution Pause count per length band, e.g. {@code "0.5-1s"}
+     */
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Pauses(
+        double minSeconds,
+        int count,
+        double totalSeconds,
+        double meanSeconds,
+        double medianSeconds,
+        double p90Seconds,
+        double longestSeconds,
+        Map<String, Integer> distribution
+    ) {
+    }
+
+    /**
+     * Levels in dB relative to full scale
+     * @param meanDbfs Average level while speaking
+     * @param dynamicRangeDb Spread between quiet (10th percentile) and loud (95th percentile) speech
+     * @param envelopeDbfs Average level per interval over the whole recording
+     */
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Loudness(
+        double meanDbfs,
+        double peakDbfs,
+        double dynamicRangeDb,
+        double envelopeIntervalSeconds,
+        float[] envelopeDbfs
+    ) {
+    }
+}
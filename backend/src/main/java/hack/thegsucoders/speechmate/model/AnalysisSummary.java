@@ -0,0 +1,24 @@
+package hack.thegsucoders.speechmate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * History entry without the analysis document, as listed on history pages
+ * @param id Opaque identifier of the stored analysis
+ * @param scores Score per category, e.g. {@code delivery}
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record AnalysisSummary(
+    String id,
+    Instant createdAt,
+    String topic,
+    Integer overallScore,
+    Map<String, Integer> scores
+) {
+}
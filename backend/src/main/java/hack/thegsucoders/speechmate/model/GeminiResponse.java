@@ -0,0 +1,12 @@
+package hack.thegsucoders.speechmate.model;
+
+/**
+ * The parts of a generateContent response the application uses: the text of the
+ * first candidate and the token usage. Everything else in the envelope is skipped.
+ */
+public record GeminiResponse(
+    String text,
+    String finishReason,
+    UsageMetadata usage
+) {
+}
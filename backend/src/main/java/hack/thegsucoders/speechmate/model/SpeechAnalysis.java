@@ -0,0 +1,110 @@
+package hack.thegsucoders.speechmate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Speech analysis returned by {@code /api/gemini/analyze-speech}, in the JSON shape the prompt asks the model for
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record SpeechAnalysis(
+    Integer overallScore,
+    String summary,
+    String speechContentSummary,
+    String languageDetected,
+    AccentAnalysis accentAnalysis,
+    IntonationAnalysis intonationAnalysis,
+    Map<String, Score> scores,
+    List<String> strengths,
+    List<StatementFeedback> specificStatementsFeedback,
+    List<Improvement> areasForImprovement,
+    DetailedFeedback detailedFeedback,
+    List<YoutubeResource> youtubeResources,
+    List<String> actionPlan
+) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record AccentAnalysis(
+        String accentType,
+        String clarity,
+        String notes
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record IntonationAnalysis(
+        String pattern,
+        String pitchVariation,
+        String emotionalInflection,
+        String specificExamples
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Score(
+        Integer score,
+        String label
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record StatementFeedback(
+        String quote,
+        String timestamp,
+        String effectiveness,
+        String deliveryNotes,
+        String suggestion
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Improvement(
+        String category,
+        String issue,
+        String impact,
+        String suggestion
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record DetailedFeedback(
+        String contentSummary,
+        String topicAdherence,
+        FillerWords fillerWords,
+        String vocalAnalysis,
+        String intonationDetails,
+        String bodyLanguageNotes,
+        String slideFeedback,
+        String languageNotes
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record FillerWords(
+        Integer count,
+        String frequency,
+        List<String> mostCommon,
+        String context
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record YoutubeResource(
+        String area,
+        String searchQuery,
+        List<String> recommendedChannels,
+        String why
+    ) {
+    }
+}
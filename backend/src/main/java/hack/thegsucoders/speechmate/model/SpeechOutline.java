@@ -0,0 +1,40 @@
+package hack.thegsucoders.speechmate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+
+/**
+ * Speech outline returned by {@code /api/gemini/generate-outline}, in the JSON shape the prompt asks the model for
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record SpeechOutline(
+    String title,
+    Integer goalMinutes,
+    String thesis,
+    List<Section> sections,
+    Closing closing
+) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Section(
+        String heading,
+        String purpose,
+        List<String> talkingPoints,
+        List<String> evidence,
+        Integer timeHintSec
+    ) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Closing(
+        String callToAction,
+        String takeaway
+    ) {
+    }
+}
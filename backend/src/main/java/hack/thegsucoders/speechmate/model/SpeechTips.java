@@ -0,0 +1,11 @@
+package hack.thegsucoders.speechmate.model;
+
+import java.util.List;
+
+/**
+ * Tips payload the speech-tips prompt asks the model for
+ */
+public record SpeechTips(
+    List<String> tips
+) {
+}
@@ -0,0 +1,17 @@
+package hack.thegsucoders.speechmate.model;
+
+import java.util.List;
+
+/**
+ * Body of {@code /api/elevenlabs/text-to-speech/batch}; field names follow the other
+ * text-to-speech endpoints, while sections keep the outline's own JSON shape
+ * @param text Free text, split into chunks at paragraph and sentence boundaries
+ * @param sections Outline sections from {@code /api/gemini/generate-outline}, narrated before any text
+ */
+public record TtsBatchRequest(
+    String text,
+    List<SpeechOutline.Section> sections,
+    String voiceId,
+    String modelId
+) {
+}
@@ -0,0 +1,13 @@
+package hack.thegsucoders.speechmate.model;
+
+/**
+ * Token counts reported in the {@code usageMetadata} of a Gemini response
+ */
+public record UsageMetadata(
+    int promptTokenCount,
+    int candidatesTokenCount,
+    int cachedContentTokenCount,
+    int totalTokenCount
+) {
+    public static final UsageMetadata EMPTY = new UsageMetadata(0, 0, 0, 0);
+}
@@ -0,0 +1,334 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.AcousticAnalysis;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures pacing, pauses and loudness of PCM WAV audio in plain Java, in well under a
+ * second for a long talk, so users get numbers before the model has answered. The signal
+ * is reduced to the level of each 10 ms frame in one streaming pass; voice activity,
+ * pauses, syllable nuclei and the loudness envelope are then found in a few passes over
+ * that primitive array, without per-frame allocation.
+ */
+@Component
+public class AcousticAnalyzer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AcousticAnalyzer.class);
+
+    private static final int FRAMES_PER_SECOND = 100;
+    private static final float FLOOR_DB = -120;
+    /** Levels below which a recording with no contrast counts as silence rather than continuous speech */
+    private static final float SILENCE_DB = -50;
+    /** Lowest voice threshold, so quiet rooms do not turn breathing into speech */
+    private static final float MIN_THRESHOLD_DB = -60;
+    private static final float MIN_CONTRAST_DB = 6;
+    /** Dip in the smoothed envelope separating two syllable nuclei */
+    private static final float SYLLABLE_PROMINENCE_DB = 3;
+    private static final int MIN_SYLLABLE_FRAMES = 8;
+    private static final int SMOOTHING_FRAMES = 2;
+    private static final int ENVELOPE_POINTS = 120;
+    private static final double SYLLABLES_PER_WORD = 1.5;
+
+    /** Levels of consecutive analysis frames, in dBFS */
+    private record Frames(float[] levels, int count, double frameSeconds) {
+    }
+
+    private final boolean enabled;
+    private final double minPause;
+    private final Timer timer;
+
+    public AcousticAnalyzer(MeterRegistry meterRegistry,
+                            @Value("${acoustic.enabled:true}") boolean enabled,
+                            @Value("${acoustic.min-pause:250ms}") Duration minPause) {
+        this.enabled = enabled;
+        this.minPause = minPause.toMillis() / 1000.0;
+        this.timer = Timer.builder("speechmate.acoustic.analysis")
+            .description("Time to measure pacing, pauses and loudness of an uploaded recording")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    /**
+     * Measure the first WAV upload, if any
+     * @return The measurements, or empty if there is no PCM WAV audio or it cannot be read; never fails
+     */
+    public Mono<Optional<AcousticAnalysis>> analyze(List<? extends MultipartFile> files) {
+        Optional<? extends MultipartFile> wav = files.stream()
+            .filter(file -> WavReducer.isWav(file.getContentType()))
+            .findFirst();
+        if (!enabled || wav.isEmpty()) {
+            return Mono.just(Optional.empty());
+        }
+        MultipartFile file = wav.get();
+        return Mono.fromCallable(() -> {
+                long start = System.nanoTime();
+                try (InputStream in = file.getInputStream()) {
+                    Optional<AcousticAnalysis> analysis = Optional.ofNullable(analyze(in, file.getSize()));
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return analysis;
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .onErrorResume(e -> {
+                LOGGER.warn("Failed to analyze audio of {}: {}", file.getOriginalFilename(), e.getMessage());
+                return Mono.just(Optional.empty());
+            });
+    }
+
+    /**
+     * Measure a WAV stream
+     * @param sizeHint Size of the stream in bytes, used to size the frame buffer; zero or less if unknown
+     * @return The measurements, or null if the stream is not integer PCM WAV or its header
+     *         claims more sample data than the stream holds
+     */
+    public AcousticAnalysis analyze(InputStream source, long sizeHint) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, 64 * 1024));
+        WavReducer.Format format = WavReducer.readHeader(in);
+        if (format == null || sizeHint > 0 && format.dataSize() != Long.MAX_VALUE && format.dataSize() > sizeHint) {
+            return null;
+        }
+        return measure(frames(in, format, sizeHint));
+    }
+
+    /**
+     * Downmix to mono and reduce each analysis frame to its mean power in dBFS
+     */
+    private static Frames frames(DataInputStream in, WavReducer.Format format, long sizeHint) throws IOException {
+        int channels = format.channels();
+        int bytesPerSample = format.bitsPerSample() / 8;
+        int frameSize = format.frameSize();
+        int samplesPerFrame = Math.max(1, format.sampleRate() / FRAMES_PER_SECOND);
+
+        // Sized from the bytes actually uploaded, never from the header alone; without a size it grows as frames are read
+        long dataSize = sizeHint > 0 ? Math.min(format.dataSize(), sizeHint) : 0;
+        float[] levels = new float[(int) Math.min(Integer.MAX_VALUE - 8, dataSize / frameSize / samplesPerFrame + 1)];
+        byte[] buffer = new byte[Math.max(1, 64 * 1024 / frameSize) * frameSize];
+        double scale = 1.0 / (32768.0 * 32768.0 * channels * channels * samplesPerFrame);
+
+        long remaining = format.dataSize() != Long.MAX_VALUE ? format.dataSize() / frameSize * frameSize : Long.MAX_VALUE;
+        double power = 0;
+        int inFrame = 0;
+        int count = 0;
+        while (remaining > 0) {
+            int read = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, remaining));
+            read -= read % frameSize;
+            if (read <= 0) {
+                break;
+            }
+            remaining -= read;
+            for (int offset = 0; offset < read; offset += frameSize) {
+                double value = 0;
+                for (int channel = 0; channel < channels; channel++) {
+                    value += WavReducer.readSample(buffer, offset + channel * bytesPerSample, bytesPerSample);
+                }
+                power += value * value;
+                if (++inFrame == samplesPerFrame) {
+                    if (count == levels.length) {
+                        levels = Arrays.copyOf(levels, Math.max(16, count * 2));
+                    }
+                    levels[count++] = toDb(power * scale);
+                    power = 0;
+                    inFrame = 0;
+                }
+            }
+        }
+        return new Frames(levels, count, (double) samplesPerFrame / format.sampleRate());
+    }
+
+    private AcousticAnalysis measure(Frames frames) {
+        float[] levels = frames.levels();
+        int count = frames.count();
+        double frameSeconds = frames.frameSeconds();
+
+        // The voice threshold sits between the noise floor and typical speech level
+        int[] histogram = new int[(int) -FLOOR_DB + 1];
+        float peak = FLOOR_DB;
+        for (int i = 0; i < count; i++) {
+            histogram[bin(levels[i])]++;
+            peak = Math.max(peak, levels[i]);
+        }
+        float floor = percentile(histogram, count, 0.10);
+        float loud = percentile(histogram, count, 0.90);
+        float threshold = loud - floor < MIN_CONTRAST_DB
+            ? (loud < SILENCE_DB ? Float.MAX_VALUE : -Float.MAX_VALUE)
+            : Math.max(MIN_THRESHOLD_DB, floor + Math.max(MIN_CONTRAST_DB, 0.3f * (loud - floor)));
+
+        // Voice activity: silences inside speech at least the minimum pause long are pauses,
+        // shorter ones (stops, breaths between words) count as speaking time
+        int minPauseFrames = (int) Math.max(1, Math.round(minPause / frameSeconds));
+        int[] pauses = new int[count / minPauseFrames + 1];
+        int pauseCount = 0;
+        int pauseFrames = 0;
+        int first = -1;
+        int last = -1;
+        int silence = 0;
+        double voicedPower = 0;
+        int voiced = 0;
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < count; i++) {
+            if (levels[i] >= threshold) {
+                if (first < 0) {
+                    first = i;
+                } else if (silence >= minPauseFrames) {
+                    pauses[pauseCount++] = silence;
+                    pauseFrames += silence;
+                }
+                silence = 0;
+                last = i;
+                voicedPower += Math.pow(10, levels[i] / 10.0);
+                voiced++;
+                histogram[bin(levels[i])]++;
+            } else if (first >= 0) {
+                silence++;
+            }
+        }
+        int speakingFrames = first < 0 ? 0 : last - first + 1 - pauseFrames;
+
+        // Syllable nuclei: prominent peaks of the smoothed envelope while speaking
+        int syllables = 0;
+        int lastPeak = -MIN_SYLLABLE_FRAMES;
+        float valley = floor;
+        for (int i = Math.max(1, first); first >= 0 && i < Math.min(count - 1, last + 1); i++) {
+            float level = smoothed(levels, count, i);
+            valley = Math.min(valley, level);
+            if (level >= threshold
+                && level >= smoothed(levels, count, i - 1)
+                && level > smoothed(levels, count, i + 1)
+                && level - valley >= SYLLABLE_PROMINENCE_DB
+                && i - lastPeak >= MIN_SYLLABLE_FRAMES) {
+                syllables++;
+                lastPeak = i;
+                valley = level;
+            }
+        }
+
+        double duration = count * frameSeconds;
+        double speaking = speakingFrames * frameSeconds;
+        double syllableRate = speaking > 0 ? syllables / speaking : 0;
+        return new AcousticAnalysis(
+            round(duration, 2),
+            round(speaking, 2),
+            duration > 0 ? round(speaking / duration, 3) : 0,
+            pauses(pauses, pauseCount, frameSeconds),
+            round(syllableRate, 2),
+            (int) Math.round(syllableRate * 60 / SYLLABLES_PER_WORD),
+            new AcousticAnalysis.Loudness(
+                voiced > 0 ? round(10 * Math.log10(voicedPower / voiced), 1) : FLOOR_DB,
+                round(peak, 1),
+                voiced > 0 ? percentile(histogram, voiced, 0.95) - percentile(histogram, voiced, 0.10) : 0,
+                round(envelopeInterval(count) * frameSeconds, 2),
+                envelope(levels, count)
+            )
+        );
+    }
+
+    private AcousticAnalysis.Pauses pauses(int[] pauses, int count, double frameSeconds) {
+        Map<String, Integer> distribution = new LinkedHashMap<>();
+        distribution.put("<0.5s", 0);
+        distribution.put("0.5-1s", 0);
+        distribution.put("1-2s", 0);
+        distribution.put("2s+", 0);
+        if (count == 0) {
+            return new AcousticAnalysis.Pauses(minPause, 0, 0, 0, 0, 0, 0, distribution);
+        }
+
+        Arrays.sort(pauses, 0, count);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += pauses[i];
+            double seconds = pauses[i] * frameSeconds;
+            String band = seconds < 0.5 ? "<0.5s" : seconds < 1 ? "0.5-1s" : seconds < 2 ? "1-2s" : "2s+";
+            distribution.merge(band, 1, Integer::sum);
+        }
+        double median = count % 2 == 1 ? pauses[count / 2] : (pauses[count / 2 - 1] + pauses[count / 2]) / 2.0;
+        return new AcousticAnalysis.Pauses(
+            minPause,
+            count,
+            round(total * frameSeconds, 2),
+            round(total * frameSeconds / count, 2),
+            round(median * frameSeconds, 2),
+            round(pauses[(int) Math.ceil(count * 0.9) - 1] * frameSeconds, 2),
+            round(pauses[count - 1] * frameSeconds, 2),
+            distribution
+        );
+    }
+
+    /**
+     * Mean level per interval of at least a second, at most {@value #ENVELOPE_POINTS} points
+     */
+    private static float[] envelope(float[] levels, int count) {
+        int interval = envelopeInterval(count);
+        float[] envelope = new float[(count + interval - 1) / interval];
+        for (int point = 0; point < envelope.length; point++) {
+            int end = Math.min(count, (point + 1) * interval);
+            double power = 0;
+            for (int i = point * interval; i < end; i++) {
+                power += Math.pow(10, levels[i] / 10.0);
+            }
+            envelope[point] = (float) round(toDb(power / (end - point * interval)), 1);
+        }
+        return envelope;
+    }
+
+    private static int envelopeInterval(int count) {
+        return Math.max(FRAMES_PER_SECOND, (count + ENVELOPE_POINTS - 1) / ENVELOPE_POINTS);
+    }
+
+    /**
+     * Level averaged over the neighbouring frames, which merges the ripple within one syllable
+     */
+    private static float smoothed(float[] levels, int count, int index) {
+        float sum = 0;
+        int n = 0;
+        for (int i = Math.max(0, index - SMOOTHING_FRAMES); i <= Math.min(count - 1, index + SMOOTHING_FRAMES); i++) {
+            sum += levels[i];
+            n++;
+        }
+        return sum / n;
+    }
+
+    private static float percentile(int[] histogram, int count, double fraction) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int bin = 0; bin < histogram.length; bin++) {
+            seen += histogram[bin];
+            if (seen >= target) {
+                return bin + FLOOR_DB;
+            }
+        }
+        return 0;
+    }
+
+    private static int bin(float level) {
+        return Math.max(0, Math.min((int) -FLOOR_DB, (int) Math.floor(level - FLOOR_DB)));
+    }
+
+    private static float toDb(double power) {
+        return power > 1e-12 ? (float) (10 * Math.log10(power)) : FLOOR_DB;
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+}
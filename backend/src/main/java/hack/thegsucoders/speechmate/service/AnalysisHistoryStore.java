@@ -0,0 +1,499 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import hack.thegsucoders.speechmate.model.AnalysisSummary;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Per-user history of speech analyses, kept in an append-only log file. Each record holds
+ * a small binary summary followed by the deflated analysis JSON; the summaries of every
+ * record are indexed in memory by owner in time order, so history pages are served without
+ * reading the log, and a full analysis costs one positional read. Deletions are appended
+ * as tombstones; once deleted records make up enough of the log, it is rewritten with only
+ * the live ones. Ids are kept in the records, so they survive the rewrite. A torn record at
+ * the end of the log, e.g. after a crash, is truncated on startup.
+ *
+ * <p>The log is local to one instance, so history is off when several instances share
+ * traffic without sticky routing.
+ */
+@Service
+public class AnalysisHistoryStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisHistoryStore.class);
+
+    private static final byte ANALYSIS = 1;
+    private static final byte DELETION = 2;
+    /** Next id to hand out, written first by a compaction so ids of deleted records are not reused */
+    private static final byte SEQUENCE = 3;
+    private static final int NO_SCORE = Integer.MIN_VALUE;
+    /** Record length and CRC-32 of the record body */
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_TOPIC_LENGTH = 200;
+
+    /**
+     * One page of summaries, newest first
+     * @param nextCursor Cursor for the following page, or null if this is the last one
+     */
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Page(List<AnalysisSummary> items, String nextCursor) {
+    }
+
+    /**
+     * Position of a record in the log
+     * @param length Length of the record body
+     */
+    private record Entry(long id, long position, int length, long documentOffset, int documentLength, AnalysisSummary summary) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Path logFile;
+    private final boolean enabled;
+    private final int maxPageSize;
+    private final double compactionDeadRatio;
+    private final long compactionMinDeadSize;
+
+    private FileChannel log;
+    /** Entries of each owner in ascending id order; guarded by {@code this}. */
+    private final Map<String, List<Entry>> index = new HashMap<>();
+    private int entryCount;
+    /** Bytes of the log taken by indexed analyses; the rest is deleted records and tombstones */
+    private long liveBytes;
+    private long nextId;
+    private boolean compactionScheduled;
+
+    public AnalysisHistoryStore(ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${history.enabled:true}") boolean enabled,
+                                @Value("${history.dir:data/history}") Path directory,
+                                @Value("${history.page.max-size:50}") int maxPageSize,
+                                @Value("${history.compaction.dead-ratio:0.5}") double compactionDeadRatio,
+                                @Value("${history.compaction.min-dead-size:16MB}") DataSize compactionMinDeadSize,
+                                @Value("${deployment.multi-instance:false}") boolean multiInstance) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled && !multiInstance;
+        this.logFile = directory.resolve("analyses.log");
+        this.maxPageSize = maxPageSize;
+        this.compactionDeadRatio = compactionDeadRatio;
+        this.compactionMinDeadSize = compactionMinDeadSize.toBytes();
+
+        Gauge.builder("speechmate.history.entries", this, store -> store.entryCount)
+            .description("Analyses kept in the history log")
+            .register(meterRegistry);
+        Gauge.builder("speechmate.history.log.size", this, store -> store.log != null ? store.logSize() : 0)
+            .description("Size of the history log, including deleted records")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Open the log and rebuild the index from it, compacting it first if it is mostly deleted records
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(logFile.getParent());
+        load();
+        if (compactionDue()) {
+            compact();
+        }
+    }
+
+    private void load() throws IOException {
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        entryCount = 0;
+        liveBytes = 0;
+        nextId = 0;
+
+        long position = 0;
+        long size = log.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(log, header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(log, body, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            apply(position, body.array());
+            position += HEADER_SIZE + length;
+        }
+        if (position < size) {
+            LOGGER.warn("Truncating {} bytes of incomplete history records from {}", size - position, logFile);
+            log.truncate(position);
+        }
+    }
+
+    /**
+     * Whether analyses are kept; false if history is switched off or running as one of several instances
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Add an analysis to a user's history
+     * @param owner Email of the user
+     * @param topic Topic given with the analysis, if any
+     * @return Summary of the stored analysis, or empty if history is disabled
+     */
+    public Optional<AnalysisSummary> append(String owner, String topic, SpeechAnalysis analysis) throws IOException {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        // Serialized and compressed outside the lock; only the append itself is serialized
+        ByteArrayOutputStream document = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(document, new Deflater(Deflater.BEST_COMPRESSION), true)) {
+            objectMapper.writeValue(out, analysis);
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(document.size() + 256);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(ANALYSIS);
+        // Id placeholder, filled in under the lock
+        out.writeLong(0);
+        out.writeUTF(owner);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(topic != null ? topic.strip().substring(0, Math.min(topic.strip().length(), MAX_TOPIC_LENGTH)) : "");
+        out.writeInt(analysis.overallScore() != null ? analysis.overallScore() : NO_SCORE);
+        Map<String, SpeechAnalysis.Score> scores = analysis.scores() != null ? analysis.scores() : Map.of();
+        out.writeShort(scores.size());
+        for (Map.Entry<String, SpeechAnalysis.Score> score : scores.entrySet()) {
+            out.writeUTF(score.getKey());
+            out.writeInt(score.getValue() != null && score.getValue().score() != null ? score.getValue().score() : NO_SCORE);
+        }
+        out.writeInt(document.size());
+        document.writeTo(out);
+
+        byte[] record = body.toByteArray();
+        synchronized (this) {
+            ByteBuffer.wrap(record).putLong(1, nextId);
+            return Optional.of(apply(write(record), record).summary());
+        }
+    }
+
+    /**
+     * {@link #append} in the background, for callers that must not wait on disk; failures are logged
+     */
+    public void appendLater(String owner, String topic, SpeechAnalysis analysis) {
+        if (owner == null) {
+            return;
+        }
+        Mono.fromCallable(() -> append(owner, topic, analysis))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe(null, e -> LOGGER.warn("Failed to save analysis to history: {}", e.getMessage()));
+    }
+
+    /**
+     * A page of a user's history, newest first
+     * @param cursor Cursor from the previous page, or null for the first page
+     * @param limit Page size, capped at the configured maximum
+     */
+    public synchronized Page page(String owner, String cursor, int limit) {
+        List<Entry> entries = owner != null ? index.getOrDefault(owner, List.of()) : List.of();
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        // Walk backwards from the newest entry older than the cursor
+        int from = cursor == null ? entries.size() - 1 : insertionPoint(entries, parseId(cursor)) - 1;
+
+        List<AnalysisSummary> items = new ArrayList<>(Math.min(size, Math.max(0, from + 1)));
+        int i = from;
+        for (; i >= 0 && items.size() < size; i--) {
+            items.add(entries.get(i).summary());
+        }
+        String nextCursor = i >= 0 && !items.isEmpty() ? items.get(items.size() - 1).id() : null;
+        return new Page(items, nextCursor);
+    }
+
+    /**
+     * A stored analysis of the given user
+     * @return The analysis, or empty if it does not exist or belongs to someone else
+     */
+    public Optional<SpeechAnalysis> find(String owner, String id) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Entry entry;
+            FileChannel channel;
+            synchronized (this) {
+                entry = lookup(owner, id);
+                channel = log;
+            }
+            if (entry == null) {
+                return Optional.empty();
+            }
+            ByteBuffer document = ByteBuffer.allocate(entry.documentLength());
+            try {
+                readFully(channel, document, entry.documentOffset());
+            } catch (ClosedChannelException e) {
+                // A compaction replaced the log since the lookup; the entry has moved
+                if (attempt == 0) {
+                    continue;
+                }
+                throw e;
+            }
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(document.array()))) {
+                return Optional.of(objectMapper.readValue(in, SpeechAnalysis.class));
+            }
+        }
+    }
+
+    /**
+     * Remove an analysis from a user's history
+     * @return false if it does not exist or belongs to someone else
+     */
+    public synchronized boolean delete(String owner, String id) throws IOException {
+        Entry entry = lookup(owner, id);
+        if (entry == null) {
+            return false;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(DELETION);
+        out.writeUTF(owner);
+        out.writeLong(entry.id());
+        byte[] record = body.toByteArray();
+        apply(write(record), record);
+        if (compactionDue() && !compactionScheduled) {
+            compactionScheduled = true;
+            Mono.fromCallable(this::compactIfDue)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> LOGGER.warn("Failed to compact history log: {}", e.getMessage()));
+        }
+        return true;
+    }
+
+    private synchronized boolean compactIfDue() throws IOException {
+        compactionScheduled = false;
+        if (log == null || !log.isOpen() || !compactionDue()) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    private boolean compactionDue() throws IOException {
+        long size = log.size();
+        long dead = size - liveBytes;
+        return dead >= compactionMinDeadSize && dead >= size * compactionDeadRatio;
+    }
+
+    /**
+     * Rewrite the log with only the indexed analyses, then swap it in. Readers holding the
+     * old channel fail with {@link ClosedChannelException} once it is closed and look again.
+     */
+    private void compact() throws IOException {
+        long before = log.size();
+        Path compacted = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+            DataOutputStream sequenceOut = new DataOutputStream(sequence);
+            sequenceOut.writeByte(SEQUENCE);
+            sequenceOut.writeLong(nextId);
+            long position = write(out, 0, sequence.toByteArray());
+
+            for (List<Entry> entries : index.values()) {
+                for (Entry entry : entries) {
+                    ByteBuffer body = ByteBuffer.allocate(entry.length());
+                    readFully(log, body, entry.position() + HEADER_SIZE);
+                    position = write(out, position, body.array());
+                }
+            }
+            out.force(true);
+        }
+        Files.move(compacted, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.close();
+        load();
+        LOGGER.debug("Compacted history log {} from {} to {} bytes", logFile, before, log.size());
+    }
+
+    /**
+     * Append one record and flush it to disk
+     * @return Offset of the record
+     */
+    private long write(byte[] body) throws IOException {
+        long offset = log.size();
+        write(log, offset, body);
+        log.force(false);
+        return offset;
+    }
+
+    /**
+     * Write one record with its header at the given position
+     * @return Position after the record
+     */
+    private static long write(FileChannel channel, long position, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.length)
+            .putInt(body.length)
+            .putInt((int) crc.getValue())
+            .put(body)
+            .flip();
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        return position;
+    }
+
+    /**
+     * Update the index with one record; the analysis document is skipped, not parsed
+     * @return The indexed entry, or null for a deletion
+     */
+    private Entry apply(long offset, byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        if (type == SEQUENCE) {
+            nextId = Math.max(nextId, in.readLong());
+            return null;
+        }
+        if (type == DELETION) {
+            String owner = in.readUTF();
+            long deleted = in.readLong();
+            List<Entry> entries = index.get(owner);
+            int position = entries != null ? insertionPoint(entries, deleted) : 0;
+            if (entries != null && position < entries.size() && entries.get(position).id() == deleted) {
+                liveBytes -= HEADER_SIZE + entries.remove(position).length();
+                entryCount--;
+            }
+            return null;
+        }
+
+        long id = in.readLong();
+        String owner = in.readUTF();
+        Instant createdAt = Instant.ofEpochMilli(in.readLong());
+        String topic = in.readUTF();
+        int overallScore = in.readInt();
+        int scoreCount = in.readUnsignedShort();
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        for (int i = 0; i < scoreCount; i++) {
+            String name = in.readUTF();
+            int score = in.readInt();
+            if (score != NO_SCORE) {
+                scores.put(name, score);
+            }
+        }
+        int documentLength = in.readInt();
+        long documentOffset = offset + HEADER_SIZE + body.length - documentLength;
+
+        Entry entry = new Entry(id, offset, body.length, documentOffset, documentLength, new AnalysisSummary(
+            formatId(id),
+            createdAt,
+            topic.isEmpty() ? null : topic,
+            overallScore != NO_SCORE ? overallScore : null,
+            scores
+        ));
+        index.computeIfAbsent(owner, key -> new ArrayList<>()).add(entry);
+        entryCount++;
+        liveBytes += HEADER_SIZE + body.length;
+        nextId = Math.max(nextId, id + 1);
+        return entry;
+    }
+
+    private Entry lookup(String owner, String id) {
+        List<Entry> entries = index.get(owner);
+        long key = parseId(id);
+        if (entries == null || key < 0) {
+            return null;
+        }
+        int position = insertionPoint(entries, key);
+        return position < entries.size() && entries.get(position).id() == key ? entries.get(position) : null;
+    }
+
+    /**
+     * Index of the first entry at or after the id
+     */
+    private static int insertionPoint(List<Entry> entries, long id) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(middle).id() < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String formatId(long id) {
+        return Long.toString(id, 36);
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id, 36);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of history log");
+            }
+        }
+    }
+
+    private long logSize() {
+        try {
+            return log.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
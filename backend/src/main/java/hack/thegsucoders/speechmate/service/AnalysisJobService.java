@@ -0,0 +1,362 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.AcousticAnalysis;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs speech analyses in the background so the HTTP request returns as soon as the
+ * upload is spooled. Jobs run on virtual threads, capped at a configurable concurrency
+ * with a bounded queue in front; submissions beyond the queue depth are rejected.
+ *
+ * <p>Jobs live in the memory of the instance that accepted them, so the service is off
+ * when several instances share traffic without sticky routing.
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    /**
+     * A submitted analysis and its current state.
+     */
+    public static final class AnalysisJob {
+        private final String id;
+        private final String owner;
+        private final Path spoolDir;
+        private final Instant submittedAt = Instant.now();
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        private volatile Status status = Status.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile AcousticAnalysis acoustics;
+        private volatile SpeechAnalysis result;
+        private volatile String error;
+
+        private AnalysisJob(String id, String owner, Path spoolDir) {
+            this.id = id;
+            this.owner = owner;
+            this.spoolDir = spoolDir;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isFinished() {
+            return status == Status.SUCCEEDED || status == Status.FAILED;
+        }
+
+        /**
+         * Client-facing view of the job; the analysis is included once it has succeeded
+         */
+        public Map<String, Object> toView() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("jobId", id);
+            view.put("status", status);
+            view.put("submittedAt", submittedAt);
+            if (startedAt != null) {
+                view.put("startedAt", startedAt);
+            }
+            if (finishedAt != null) {
+                view.put("finishedAt", finishedAt);
+            }
+            if (acoustics != null) {
+                view.put("acoustics", acoustics);
+            }
+            if (result != null) {
+                view.put("result", result);
+            }
+            if (error != null) {
+                view.put("error", error);
+            }
+            return view;
+        }
+    }
+
+    private final GeminiService geminiService;
+    private final AcousticAnalyzer acousticAnalyzer;
+    private final AnalysisHistoryStore historyStore;
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+
+    private final Path spoolRoot;
+    private final Duration retention;
+    private final Duration eventTimeout;
+
+    private final Timer waitTimer;
+    private final Timer runTimerSucceeded;
+    private final Timer runTimerFailed;
+    private final Counter rejectedCounter;
+
+    public AnalysisJobService(GeminiService geminiService,
+                              AcousticAnalyzer acousticAnalyzer,
+                              AnalysisHistoryStore historyStore,
+                              MeterRegistry meterRegistry,
+                              @Value("${analysis.jobs.concurrency:8}") int concurrency,
+                              @Value("${analysis.jobs.queue-depth:32}") int queueDepth,
+                              @Value("${analysis.jobs.retention:30m}") Duration retention,
+                              @Value("${analysis.jobs.event-timeout:10m}") Duration eventTimeout,
+                              @Value("${gemini.spool-dir:${java.io.tmpdir}/speechmate-spool}") Path spoolDir,
+                              @Value("${deployment.multi-instance:false}") boolean multiInstance) {
+        this.enabled = !multiInstance;
+        this.geminiService = geminiService;
+        this.acousticAnalyzer = acousticAnalyzer;
+        this.historyStore = historyStore;
+        this.retention = retention;
+        this.eventTimeout = eventTimeout;
+        this.spoolRoot = spoolDir.resolve("jobs");
+
+        this.executor = new ThreadPoolExecutor(
+            concurrency, concurrency,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueDepth),
+            Thread.ofVirtual().name("analysis-job-", 0).factory(),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        Gauge.builder("speechmate.analysis.jobs.queued", executor, e -> e.getQueue().size())
+            .description("Analysis jobs waiting for a worker")
+            .register(meterRegistry);
+        Gauge.builder("speechmate.analysis.jobs.active", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Analysis jobs currently running")
+            .register(meterRegistry);
+        Gauge.builder("speechmate.analysis.jobs.capacity", executor, ThreadPoolExecutor::getMaximumPoolSize)
+            .description("Maximum number of concurrently running analysis jobs")
+            .register(meterRegistry);
+
+        this.waitTimer = Timer.builder("speechmate.analysis.jobs.wait")
+            .description("Time jobs spend queued before a worker picks them up")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.runTimerSucceeded = Timer.builder("speechmate.analysis.jobs.run")
+            .description("Time spent running an analysis job")
+            .tag("outcome", "success")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.runTimerFailed = Timer.builder("speechmate.analysis.jobs.run")
+            .description("Time spent running an analysis job")
+            .tag("outcome", "failure")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("speechmate.analysis.jobs.rejected")
+            .description("Submissions rejected because the job queue was full")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Whether jobs can be submitted and looked up; false when running as one of several instances
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Spool the uploads and queue an analysis
+     * @param owner Email of the authenticated user submitting the job; the analysis is saved to their history
+     * @return The queued job
+     * @throws IllegalArgumentException if a file type is unsupported
+     * @throws RejectedExecutionException if the queue is full
+     * @throws IllegalStateException if jobs are disabled
+     */
+    public AnalysisJob submit(String owner,
+                              List<MultipartFile> files,
+                              String topic,
+                              String audience,
+                              Integer duration,
+                              String goals) throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("Analysis jobs are disabled on multi-instance deployments");
+        }
+        geminiService.validateFiles(files);
+
+        if (executor.getQueue().remainingCapacity() == 0) {
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Analysis queue is full");
+        }
+
+        String id = UUID.randomUUID().toString();
+        Path jobDir = Files.createDirectories(spoolRoot.resolve(id));
+        AnalysisJob job = new AnalysisJob(id, owner, jobDir);
+
+        List<MultipartFile> spooled = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                spooled.add(SpooledMultipartFile.spool(files.get(i), jobDir.resolve("part-" + i)));
+            }
+
+            // Measured straight away, independent of the queue, and shown on the job once ready
+            Mono<Optional<AcousticAnalysis>> acoustics = acousticAnalyzer.analyze(spooled)
+                .doOnNext(measured -> measured.ifPresent(analysis -> {
+                    job.acoustics = analysis;
+                    publish(job);
+                }))
+                .cache();
+            acoustics.subscribe();
+
+            jobs.put(id, job);
+            executor.execute(() -> run(job, spooled, topic, audience, duration, goals, acoustics));
+        } catch (IOException | RuntimeException e) {
+            jobs.remove(id);
+            deleteSpool(job);
+            if (e instanceof RejectedExecutionException) {
+                rejectedCounter.increment();
+            }
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Look up a job, visible only to the principal that submitted it
+     */
+    public Optional<AnalysisJob> find(String id, String owner) {
+        AnalysisJob job = jobs.get(id);
+        if (job == null || owner == null || !owner.equals(job.owner)) {
+            return Optional.empty();
+        }
+        return Optional.of(job);
+    }
+
+    /**
+     * Stream status changes of a job as server-sent events. The current state is sent
+     * immediately and the stream completes once the job has finished.
+     */
+    public SseEmitter subscribe(AnalysisJob job) {
+        SseEmitter emitter = new SseEmitter(eventTimeout.toMillis());
+        job.emitters.add(emitter);
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(e -> job.emitters.remove(emitter));
+
+        send(job, emitter);
+        return emitter;
+    }
+
+    private void run(AnalysisJob job, List<MultipartFile> files, String topic, String audience, Integer duration, String goals,
+                     Mono<Optional<AcousticAnalysis>> acoustics) {
+        job.startedAt = Instant.now();
+        waitTimer.record(Duration.between(job.submittedAt, job.startedAt));
+        job.status = Status.RUNNING;
+        publish(job);
+
+        long start = System.nanoTime();
+        try {
+            // Job workers are virtual threads, so waiting on the reactive call is cheap here
+            job.result = geminiService.analyzeSpeechPerformance(files, topic, audience, duration, goals, acoustics).block();
+            // Set before the terminal status, which readers and eviction take as the sign it is there
+            job.finishedAt = Instant.now();
+            job.status = Status.SUCCEEDED;
+            historyStore.appendLater(job.owner, topic, job.result);
+            runTimerSucceeded.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            LOGGER.warn("Analysis job {} failed: {}", job.id, e.toString());
+            job.error = clientError(e);
+            job.finishedAt = Instant.now();
+            job.status = Status.FAILED;
+            runTimerFailed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } finally {
+            deleteSpool(job);
+            publish(job);
+        }
+    }
+
+    /**
+     * What a client is told about a failed job. Exception messages can carry upstream URLs and
+     * response bodies, so they stay in the server log.
+     */
+    static String clientError(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return "The analysis timed out, please try again";
+            }
+            if (UpstreamResilience.isTransient(cause)) {
+                return "The analysis service is temporarily unavailable, please try again shortly";
+            }
+            if (cause instanceof IllegalArgumentException) {
+                return "The uploaded files could not be analyzed; check that they are supported audio, video, image or PDF files";
+            }
+        }
+        return "The analysis failed, please try again";
+    }
+
+    private void publish(AnalysisJob job) {
+        for (SseEmitter emitter : job.emitters) {
+            send(job, emitter);
+        }
+    }
+
+    private void send(AnalysisJob job, SseEmitter emitter) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(job.toView()));
+            if (job.isFinished()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the emitter already completed
+            job.emitters.remove(emitter);
+        }
+    }
+
+    private void deleteSpool(AnalysisJob job) {
+        try {
+            FileSystemUtils.deleteRecursively(job.spoolDir);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete spool for job {}: {}", job.id, e.getMessage());
+        }
+    }
+
+    /**
+     * Forget finished jobs once clients have had the retention window to collect them
+     */
+    @Scheduled(fixedDelayString = "${analysis.jobs.eviction-interval:60s}")
+    public void evictFinishedJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt.isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
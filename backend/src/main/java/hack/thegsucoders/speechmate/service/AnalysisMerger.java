@@ -0,0 +1,266 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Combines the analyses of consecutive recording segments into one analysis of the
+ * whole recording. Scores are averaged weighted by segment length, filler counts are
+ * summed, quote timestamps are shifted from segment time to recording time, and list
+ * fields are interleaved by rank so each segment's top items come first.
+ */
+final class AnalysisMerger {
+
+    private static final Pattern TIMESTAMP = Pattern.compile("(?<!\\d)(?:(\\d{1,2}):)?(\\d{1,2}):(\\d{2})(?!\\d)");
+    private static final Pattern PRIORITY = Pattern.compile("^\\s*Priority\\s+\\d+\\s*:\\s*", Pattern.CASE_INSENSITIVE);
+
+    private static final int MAX_STRENGTHS = 6;
+    private static final int MAX_IMPROVEMENTS = 6;
+    private static final int MAX_RESOURCES = 4;
+    private static final int MAX_FILLER_WORDS = 5;
+
+    private AnalysisMerger() {
+    }
+
+    /**
+     * @param analyses One analysis per window, in window order
+     * @param windows The windows the analyses cover
+     */
+    static SpeechAnalysis merge(List<SpeechAnalysis> analyses, List<RecordingSegmenter.Window> windows) {
+        if (analyses.size() == 1) {
+            return analyses.get(0);
+        }
+        double total = windows.get(windows.size() - 1).end();
+
+        List<SpeechAnalysis.StatementFeedback> statements = new ArrayList<>();
+        for (int i = 0; i < analyses.size(); i++) {
+            for (SpeechAnalysis.StatementFeedback statement : nonNull(analyses.get(i).specificStatementsFeedback())) {
+                statements.add(new SpeechAnalysis.StatementFeedback(statement.quote(),
+                    absoluteTimestamp(statement.timestamp(), windows.get(i)),
+                    statement.effectiveness(), statement.deliveryNotes(), statement.suggestion()));
+            }
+        }
+
+        int actionPlanSize = analyses.stream().mapToInt(analysis -> nonNull(analysis.actionPlan()).size()).max().orElse(0);
+        List<String> actionPlan = interleave(
+            analyses.stream().map(analysis -> nonNull(analysis.actionPlan()).stream()
+                .map(item -> PRIORITY.matcher(item).replaceFirst("")).toList()).toList(),
+            item -> item.toLowerCase(Locale.ROOT), actionPlanSize);
+        for (int i = 0; actionPlan != null && i < actionPlan.size(); i++) {
+            actionPlan.set(i, "Priority " + (i + 1) + ": " + actionPlan.get(i));
+        }
+
+        return new SpeechAnalysis(
+            weightedScore(analyses, windows, SpeechAnalysis::overallScore),
+            join(analyses, SpeechAnalysis::summary),
+            join(analyses, SpeechAnalysis::speechContentSummary),
+            mostCommon(analyses, SpeechAnalysis::languageDetected),
+            first(analyses, SpeechAnalysis::accentAnalysis),
+            first(analyses, SpeechAnalysis::intonationAnalysis),
+            scores(analyses, windows),
+            interleave(analyses.stream().map(analysis -> nonNull(analysis.strengths())).toList(),
+                strength -> strength.toLowerCase(Locale.ROOT), MAX_STRENGTHS),
+            statements,
+            interleave(analyses.stream().map(analysis -> nonNull(analysis.areasForImprovement())).toList(),
+                improvement -> Objects.toString(improvement.category(), "").toLowerCase(Locale.ROOT), MAX_IMPROVEMENTS),
+            detailedFeedback(analyses, total),
+            interleave(analyses.stream().map(analysis -> nonNull(analysis.youtubeResources())).toList(),
+                resource -> Objects.toString(resource.area(), "").toLowerCase(Locale.ROOT), MAX_RESOURCES),
+            actionPlan
+        );
+    }
+
+    /**
+     * Average each score over the segments that reported it, weighted by segment length
+     */
+    private static Map<String, SpeechAnalysis.Score> scores(List<SpeechAnalysis> analyses, List<RecordingSegmenter.Window> windows) {
+        Set<String> names = new LinkedHashSet<>();
+        analyses.forEach(analysis -> {
+            if (analysis.scores() != null) {
+                names.addAll(analysis.scores().keySet());
+            }
+        });
+        Map<String, SpeechAnalysis.Score> scores = new LinkedHashMap<>();
+        for (String name : names) {
+            Integer score = weightedScore(analyses, windows, analysis -> {
+                SpeechAnalysis.Score value = analysis.scores() != null ? analysis.scores().get(name) : null;
+                return value != null ? value.score() : null;
+            });
+            if (score != null) {
+                scores.put(name, new SpeechAnalysis.Score(score, label(score)));
+            }
+        }
+        return scores.isEmpty() ? null : scores;
+    }
+
+    private static Integer weightedScore(List<SpeechAnalysis> analyses, List<RecordingSegmenter.Window> windows,
+                                         Function<SpeechAnalysis, Integer> score) {
+        double sum = 0;
+        double weight = 0;
+        for (int i = 0; i < analyses.size(); i++) {
+            Integer value = score.apply(analyses.get(i));
+            if (value != null) {
+                sum += value * windows.get(i).length();
+                weight += windows.get(i).length();
+            }
+        }
+        return weight > 0 ? (int) Math.round(sum / weight) : null;
+    }
+
+    /**
+     * Same bands the prompt asks the model to use
+     */
+    private static String label(int score) {
+        if (score >= 85) {
+            return "Excellent";
+        }
+        if (score >= 70) {
+            return "Good";
+        }
+        if (score >= 50) {
+            return "Fair";
+        }
+        return "Needs Work";
+    }
+
+    private static SpeechAnalysis.DetailedFeedback detailedFeedback(List<SpeechAnalysis> analyses, double total) {
+        List<SpeechAnalysis.DetailedFeedback> details = analyses.stream()
+            .map(SpeechAnalysis::detailedFeedback)
+            .filter(Objects::nonNull)
+            .toList();
+        if (details.isEmpty()) {
+            return null;
+        }
+        return new SpeechAnalysis.DetailedFeedback(
+            join(details, SpeechAnalysis.DetailedFeedback::contentSummary),
+            join(details, SpeechAnalysis.DetailedFeedback::topicAdherence),
+            fillerWords(details.stream().map(SpeechAnalysis.DetailedFeedback::fillerWords).filter(Objects::nonNull).toList(), total),
+            join(details, SpeechAnalysis.DetailedFeedback::vocalAnalysis),
+            join(details, SpeechAnalysis.DetailedFeedback::intonationDetails),
+            join(details, SpeechAnalysis.DetailedFeedback::bodyLanguageNotes),
+            join(details, SpeechAnalysis.DetailedFeedback::slideFeedback),
+            join(details, SpeechAnalysis.DetailedFeedback::languageNotes)
+        );
+    }
+
+    /**
+     * Sum the counts, recompute the frequency over the whole recording and rank the words
+     * by how many segments listed them, then by their best position in a segment's list
+     */
+    private static SpeechAnalysis.FillerWords fillerWords(List<SpeechAnalysis.FillerWords> fillers, double total) {
+        if (fillers.isEmpty()) {
+            return null;
+        }
+        int count = fillers.stream().mapToInt(filler -> filler.count() != null ? filler.count() : 0).sum();
+
+        Map<String, Integer> segments = new HashMap<>();
+        Map<String, Integer> bestRank = new LinkedHashMap<>();
+        for (SpeechAnalysis.FillerWords filler : fillers) {
+            List<String> words = nonNull(filler.mostCommon());
+            for (int rank = 0; rank < words.size(); rank++) {
+                String word = words.get(rank).strip().toLowerCase(Locale.ROOT);
+                segments.merge(word, 1, Integer::sum);
+                bestRank.merge(word, rank, Math::min);
+            }
+        }
+        List<String> mostCommon = bestRank.keySet().stream()
+            .sorted((a, b) -> segments.get(a).equals(segments.get(b))
+                ? Integer.compare(bestRank.get(a), bestRank.get(b))
+                : Integer.compare(segments.get(b), segments.get(a)))
+            .limit(MAX_FILLER_WORDS)
+            .toList();
+
+        String frequency = count > 0 ? "once per " + Math.round(total / count) + " seconds" : "none";
+        return new SpeechAnalysis.FillerWords(count, frequency, mostCommon, join(fillers, SpeechAnalysis.FillerWords::context));
+    }
+
+    /**
+     * Shift every {@code M:SS} or {@code H:MM:SS} time in a segment-relative timestamp by the
+     * segment start; a timestamp without a recognizable time becomes the segment's range
+     */
+    private static String absoluteTimestamp(String timestamp, RecordingSegmenter.Window window) {
+        Matcher matcher = TIMESTAMP.matcher(timestamp != null ? timestamp : "");
+        StringBuilder shifted = new StringBuilder();
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            long seconds = (matcher.group(1) != null ? Long.parseLong(matcher.group(1)) * 3600 : 0)
+                + Long.parseLong(matcher.group(2)) * 60
+                + Long.parseLong(matcher.group(3));
+            matcher.appendReplacement(shifted, formatTime(Math.round(window.start()) + seconds));
+        }
+        if (!found) {
+            return formatTime(Math.round(window.start())) + "-" + formatTime(Math.round(window.end()));
+        }
+        matcher.appendTail(shifted);
+        return shifted.toString();
+    }
+
+    static String formatTime(long seconds) {
+        return seconds >= 3600
+            ? String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60)
+            : String.format(Locale.ROOT, "%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Take the first item of every list, then the second, and so on, skipping items
+     * already taken under the same key
+     */
+    private static <T> List<T> interleave(List<List<T>> lists, Function<T, String> key, int limit) {
+        List<T> merged = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        int longest = lists.stream().mapToInt(List::size).max().orElse(0);
+        for (int rank = 0; rank < longest && merged.size() < limit; rank++) {
+            for (List<T> list : lists) {
+                if (rank < list.size() && merged.size() < limit && seen.add(key.apply(list.get(rank)))) {
+                    merged.add(list.get(rank));
+                }
+            }
+        }
+        return merged.isEmpty() ? null : merged;
+    }
+
+    /**
+     * Distinct non-blank values in segment order, joined as one text
+     */
+    private static <T> String join(Collection<T> items, Function<T, String> field) {
+        Set<String> parts = new LinkedHashSet<>();
+        for (T item : items) {
+            String value = field.apply(item);
+            if (value != null && !value.isBlank()) {
+                parts.add(value.strip());
+            }
+        }
+        return parts.isEmpty() ? null : String.join(" ", parts);
+    }
+
+    private static String mostCommon(List<SpeechAnalysis> analyses, Function<SpeechAnalysis, String> field) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        analyses.stream().map(field).filter(Objects::nonNull).forEach(value -> counts.merge(value, 1, Integer::sum));
+        return counts.entrySet().stream()
+            .reduce((a, b) -> b.getValue() > a.getValue() ? b : a)
+            .map(Map.Entry::getKey)
+            .orElse(null);
+    }
+
+    private static <T> T first(List<SpeechAnalysis> analyses, Function<SpeechAnalysis, T> field) {
+        return analyses.stream().map(field).filter(Objects::nonNull).findFirst().orElse(null);
+    }
+
+    private static <T> List<T> nonNull(List<T> list) {
+        return list != null ? list : List.of();
+    }
+}
@@ -0,0 +1,274 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Disk-backed cache of speech analyses, keyed by the content of the uploaded files and
+ * the normalized request context, so re-submitting the same recording is answered
+ * without calling Gemini. Entries expire after a TTL and the directory is bounded in
+ * size, evicting the least recently used analyses first.
+ */
+@Service
+public class AnalysisResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisResultCache.class);
+
+    private static final String SUFFIX = ".json";
+
+    /** Size and store time of an entry on disk */
+    private record Entry(long size, long storedAt) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long diskLimit;
+    private final long ttlMillis;
+    private final boolean enabled;
+
+    /** Access-ordered index of the files on disk; guarded by {@code this}. */
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private volatile long diskBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter expirations;
+
+    public AnalysisResultCache(ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${analysis.cache.enabled:true}") boolean enabled,
+                               @Value("${analysis.cache.dir:${java.io.tmpdir}/speechmate-analysis-cache}") Path directory,
+                               @Value("${analysis.cache.disk-size:256MB}") DataSize diskLimit,
+                               @Value("${analysis.cache.ttl:24h}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.diskLimit = diskLimit.toBytes();
+        this.ttlMillis = ttl.toMillis();
+
+        this.hits = Counter.builder("speechmate.analysis.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("speechmate.analysis.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("speechmate.analysis.cache.evictions").tag("cause", "size").register(meterRegistry);
+        this.expirations = Counter.builder("speechmate.analysis.cache.evictions").tag("cause", "expired").register(meterRegistry);
+        Gauge.builder("speechmate.analysis.cache.size", this, cache -> cache.diskBytes).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Rebuild the index from the cache directory, least recently used first, dropping expired entries
+     */
+    @PostConstruct
+    public void loadIndex() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = new ArrayList<>(listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).toList());
+        }
+        files.sort((a, b) -> lastAccessed(a).compareTo(lastAccessed(b)));
+
+        synchronized (this) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                index.put(name.substring(0, name.length() - SUFFIX.length()),
+                    new Entry(Files.size(file), lastModified(file).toMillis()));
+                diskBytes += Files.size(file);
+            }
+            purgeExpired();
+            evict();
+        }
+    }
+
+    /**
+     * Cache key for an analysis request
+     * @param sha256 Content hashes of the uploaded files, in upload order
+     * @param mimeTypes MIME types of the files, in the same order
+     * @param salt Anything else the result depends on, e.g. the model and its instructions
+     */
+    public static String key(List<String> sha256, List<String> mimeTypes,
+                             String topic, String audience, Integer duration, String goals, String salt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < sha256.size(); i++) {
+                update(digest, sha256.get(i));
+                update(digest, mimeTypes.get(i));
+            }
+            update(digest, normalize(topic));
+            update(digest, normalize(audience));
+            update(digest, duration != null ? duration.toString() : "");
+            update(digest, normalize(goals));
+            update(digest, salt);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Look up an analysis; expired entries count as misses and are removed
+     */
+    public Optional<SpeechAnalysis> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            if (System.currentTimeMillis() - entry.storedAt() > ttlMillis) {
+                remove(key);
+                expirations.increment();
+                misses.increment();
+                return Optional.empty();
+            }
+        }
+
+        try {
+            Path file = path(key);
+            SpeechAnalysis analysis = objectMapper.readValue(file.toFile(), SpeechAnalysis.class);
+            // Recency survives a restart in the access time; the modification time stays the store time the TTL counts from
+            Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(null, FileTime.fromMillis(System.currentTimeMillis()), null);
+            hits.increment();
+            return Optional.of(analysis);
+        } catch (IOException e) {
+            // Evicted underneath us, or unreadable
+            synchronized (this) {
+                remove(key);
+            }
+            misses.increment();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Store an analysis; failures are logged and otherwise ignored
+     */
+    public void put(String key, SpeechAnalysis analysis) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path temp = Files.createTempFile(directory, "partial-", ".tmp");
+            Files.write(temp, objectMapper.writeValueAsBytes(analysis));
+            Path file = path(key);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(file);
+            synchronized (this) {
+                Entry previous = index.put(key, new Entry(size, System.currentTimeMillis()));
+                diskBytes += size - (previous != null ? previous.size() : 0);
+                evict();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write analysis cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Drop expired entries even if nobody asks for them again
+     */
+    @Scheduled(fixedDelayString = "${analysis.cache.purge-interval:10m}")
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> entries = index.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Entry> entry = entries.next();
+            if (now - entry.getValue().storedAt() > ttlMillis) {
+                deleteFile(entry.getKey());
+                diskBytes -= entry.getValue().size();
+                entries.remove();
+                expirations.increment();
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = index.entrySet().iterator();
+        while (diskBytes > diskLimit && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            deleteFile(entry.getKey());
+            diskBytes -= entry.getValue().size();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = index.remove(key);
+        if (entry != null) {
+            diskBytes -= entry.size();
+            deleteFile(key);
+        }
+    }
+
+    private void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(path(key));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete analysis cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    private Path path(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((value != null ? value : "").getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static FileTime lastAccessed(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).lastAccessTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package hack.thegsucoders.speechmate.service;
+
+import java.time.Duration;
+
+/**
+ * Count-based circuit breaker. Opens when the failure rate over the last calls crosses
+ * the threshold, rejects calls while open, then lets a single trial call through; the
+ * trial's outcome closes the circuit again or re-opens it for another wait.
+ *
+ * <p>Every state change starts a new generation, and each permitted call carries the
+ * generation it was admitted in. Outcomes from an earlier generation are ignored, so a
+ * slow call admitted while closed can neither close nor re-open the circuit behind the
+ * trial's back.
+ */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Admission of one call, handed back with its outcome
+     */
+    record Permit(long generation) {
+    }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+
+    /** All fields below are guarded by {@code this}. */
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long generation;
+    /** Shared by all calls admitted in the current closed generation */
+    private Permit closedPermit = new Permit(0);
+
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Ask to make a call. Every permitted call must be followed by {@link #onSuccess},
+     * {@link #onFailure} or {@link #onCancel} with the permit.
+     * @return The permit, or null if the call is rejected
+     */
+    synchronized Permit tryAcquire() {
+        switch (state) {
+            case CLOSED -> {
+                return closedPermit;
+            }
+            case OPEN -> {
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                return trial();
+            }
+            default -> {
+                return trialInFlight ? null : trial();
+            }
+        }
+    }
+
+    synchronized void onSuccess(Permit permit) {
+        if (permit.generation() != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            reset();
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure(Permit permit) {
+        if (permit.generation() != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    /**
+     * A permitted call was abandoned without an outcome, e.g. it lost a hedge race
+     */
+    synchronized void onCancel(Permit permit) {
+        if (permit.generation() == generation && state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Time until a trial call will be let through, zero if the circuit is not open
+     */
+    synchronized Duration remainingOpen() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openNanos - (System.nanoTime() - openedAt)));
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    /**
+     * Each trial gets a generation of its own, so only its outcome decides the half-open circuit
+     */
+    private Permit trial() {
+        generation++;
+        trialInFlight = true;
+        return new Permit(generation);
+    }
+
+    private void open() {
+        generation++;
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+    }
+
+    private void reset() {
+        generation++;
+        closedPermit = new Permit(generation);
+        state = State.CLOSED;
+        trialInFlight = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,113 @@
+package hack.thegsucoders.speechmate.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the calls in flight to an upstream across every request. Calls beyond the limit
+ * wait in arrival order without holding a thread; one still waiting after the queue
+ * timeout fails with {@link UpstreamUnavailableException}.
+ */
+class ConcurrencyLimiter {
+
+    private final String upstream;
+    private final int limit;
+    private final Duration queueTimeout;
+
+    /** All fields below are guarded by {@code this}. */
+    private int inFlight;
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+
+    private record Waiter(MonoSink<Permit> sink, Permit permit) {
+    }
+
+    ConcurrencyLimiter(String upstream, int limit, Duration queueTimeout) {
+        this.upstream = upstream;
+        this.limit = limit;
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Run the call once a permit is free; the permit is returned when the call terminates or is cancelled
+     */
+    <T> Mono<T> limit(Mono<T> call) {
+        return Mono.usingWhen(acquire(), permit -> call, Permit::release, (permit, e) -> permit.release(), Permit::release);
+    }
+
+    /**
+     * As {@link #limit(Mono)}, holding the permit until the stream ends
+     */
+    <T> Flux<T> limit(Flux<T> call) {
+        return Flux.usingWhen(acquire(), permit -> call, Permit::release, (permit, e) -> permit.release(), Permit::release);
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return waiting.size();
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+                Waiter waiter = new Waiter(sink, new Permit());
+                boolean granted;
+                synchronized (this) {
+                    granted = inFlight < limit;
+                    if (granted) {
+                        inFlight++;
+                    } else {
+                        waiting.add(waiter);
+                    }
+                }
+                // Registered once the waiter is queued or granted; runs at once if already cancelled
+                sink.onCancel(() -> {
+                    synchronized (this) {
+                        if (waiting.remove(waiter)) {
+                            return;
+                        }
+                    }
+                    // Granted while being cancelled; nobody else will return it
+                    waiter.permit().release().subscribe();
+                });
+                if (granted) {
+                    sink.success(waiter.permit());
+                }
+            })
+            .timeout(queueTimeout)
+            .onErrorMap(TimeoutException.class, e -> new UpstreamUnavailableException(upstream, queueTimeout, e));
+    }
+
+    private void release() {
+        Waiter next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+        // The permit passes straight to the next caller
+        next.sink().success(next.permit());
+    }
+
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Mono<Void> release() {
+            return Mono.fromRunnable(() -> {
+                if (released.compareAndSet(false, true)) {
+                    ConcurrencyLimiter.this.release();
+                }
+            });
+        }
+    }
+}
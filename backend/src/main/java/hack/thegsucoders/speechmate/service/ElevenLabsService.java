@@ -1,69 +1,349 @@
 package hack.thegsucoders.speechmate.service;
 
+import hack.thegsucoders.speechmate.model.TtsBatchRequest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 @Service
 public class ElevenLabsService {
 
+	private static final String CACHE_STATUS_HEADER = "X-Cache";
+
+	/** Model and endpoint tags for upstream metrics; voice and model ids are user input and stay out of tags. */
+	private static final String ELEVENLABS = "elevenlabs";
+	private static final String SYNTHESIZE = "text-to-speech";
+	private static final String SYNTHESIZE_STREAM = "text-to-speech/stream";
+
+	/** Upstream chunks requested ahead of what has been written to the client. */
+	private static final int STREAM_PREFETCH = 4;
+
+	/** Number of chunks a batch request was split into, so clients can show progress. */
+	private static final String CHUNKS_HEADER = "X-Tts-Chunks";
+
 	@Value("${ELEVENLABS_API_KEY}")
 	private String apiKey;
 
+	@Value("${tts.batch.chunk-chars:1200}")
+	private int batchChunkChars;
+
+	@Value("${tts.batch.parallelism:6}")
+	private int batchParallelism;
+
+	@Value("${tts.batch.max-chars:50000}")
+	private int batchMaxChars;
+
 	private final WebClient webClient;
+	private final TtsAudioCache audioCache;
+	private final UpstreamResilience resilience;
+	private final UpstreamMetrics upstreamMetrics;
+	private final DistributionSummary batchChunks;
+	/** Syntheses in flight across all requests, batch chunks included, held within the plan's concurrency limit. */
+	private final ConcurrencyLimiter limiter;
 
-	public ElevenLabsService(WebClient.Builder webClientBuilder) {
-		this.webClient = webClientBuilder
-			.baseUrl("https://api.elevenlabs.io/v1")
-			.build();
+	public ElevenLabsService(@Qualifier("elevenLabsWebClient") WebClient webClient,
+							 TtsAudioCache audioCache,
+							 UpstreamResilience resilience,
+							 UpstreamMetrics upstreamMetrics,
+							 MeterRegistry meterRegistry,
+							 @Value("${tts.upstream.max-concurrency:10}") int maxConcurrency,
+							 @Value("${tts.upstream.queue-timeout:20s}") Duration queueTimeout) {
+		this.webClient = webClient;
+		this.resilience = resilience;
+		this.upstreamMetrics = upstreamMetrics;
+		this.audioCache = audioCache;
+		this.limiter = new ConcurrencyLimiter(ELEVENLABS, maxConcurrency, queueTimeout);
+		this.batchChunks = DistributionSummary.builder("speechmate.tts.batch.chunks")
+			.description("Chunks per batch text-to-speech request")
+			.register(meterRegistry);
+		Gauge.builder("speechmate.tts.upstream.in-flight", limiter, ConcurrencyLimiter::inFlight)
+			.description("Syntheses in flight to ElevenLabs")
+			.register(meterRegistry);
+		Gauge.builder("speechmate.tts.upstream.queued", limiter, ConcurrencyLimiter::queued)
+			.description("Syntheses waiting for a free ElevenLabs slot")
+			.register(meterRegistry);
 	}
 
-	public ResponseEntity<?> generateSpeechFromRequest(Map<String, String> params) {
-		try {
-			String text = params.get("text");
-			if (text == null || text.isBlank()) {
-				return ResponseEntity.badRequest().body(Map.of("error", "text is required"));
-			}
-			
-			if (apiKey == null || apiKey.isBlank() || apiKey.equals("${ELEVENLABS_API_KEY}")) {
-				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
-						.body(Map.of("error", "Text-to-speech service is not configured"));
+	public Mono<ResponseEntity<?>> generateSpeechFromRequest(Map<String, String> params) {
+		ResponseEntity<?> invalid = validate(params);
+		if (invalid != null) {
+			return Mono.just(invalid);
+		}
+		
+		String text = params.get("text");
+		String voiceId = params.getOrDefault("voiceId", "21m00Tcm4TlvDq8ikWAM");
+		String modelId = params.getOrDefault("modelId", "eleven_monolingual_v1");
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("audio/mpeg"));
+		headers.setContentDispositionFormData("attachment", "speech.mp3");
+		
+		// Replays of the same text, voice and model are served from the cache
+		String cacheKey = TtsAudioCache.key(text, voiceId, modelId);
+		Mono<ResponseEntity<?>> cached = Mono.fromCallable(() -> audioCache.get(cacheKey))
+			.subscribeOn(Schedulers.boundedElastic())
+			.flatMap(Mono::justOrEmpty)
+			.map(resource -> {
+				headers.set(CACHE_STATUS_HEADER, "HIT");
+				return ResponseEntity.ok()
+					.headers(headers)
+					.body(resource);
+			});
+		
+		Mono<ResponseEntity<?>> synthesized = synthesize(text, voiceId, modelId, UpstreamResilience.Policy.SINGLE)
+			.publishOn(Schedulers.boundedElastic())
+			.map(audioBytes -> {
+				if (audioBytes.length > 0) {
+					audioCache.put(cacheKey, audioBytes);
+				}
+				headers.set(CACHE_STATUS_HEADER, "MISS");
+				return ResponseEntity.ok()
+					.headers(headers)
+					.body(audioBytes);
+			});
+		
+		return cached
+			.switchIfEmpty(synthesized)
+			.onErrorResume(UpstreamUnavailableException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+				.body(Map.of("error", e.getMessage()))))
+			.onErrorResume(e -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+				.body(Map.of("error", "Failed to generate speech: " + e.getMessage()))));
+	}
+
+	/**
+	 * Synthesize a whole speech as one MP3 stream. The outline sections and text are split
+	 * into chunks at section and sentence boundaries, up to {@code tts.batch.parallelism}
+	 * chunks are synthesized at once, within the limit shared by all requests, and each chunk is written as soon as it and all
+	 * chunks before it are ready, so the wait approaches that of the slowest chunk rather
+	 * than the sum of all of them. Chunks are cached individually, so after an edit only
+	 * the changed chunks are synthesized again.
+	 */
+	public ResponseEntity<?> streamBatchFromRequest(TtsBatchRequest request) {
+		List<String> passages = new ArrayList<>();
+		if (request.sections() != null) {
+			request.sections().stream()
+				.filter(Objects::nonNull)
+				.map(SpeechChunker::narrate)
+				.filter(passage -> !passage.isEmpty())
+				.forEach(passages::add);
+		}
+		if (request.text() != null) {
+			passages.addAll(SpeechChunker.paragraphs(request.text()));
+		}
+		Map<String, String> params = new HashMap<>();
+		params.put("text", String.join("\n\n", passages));
+		ResponseEntity<?> invalid = validate(params);
+		if (invalid != null) {
+			return invalid;
+		}
+		int length = passages.stream().mapToInt(String::length).sum();
+		if (length > batchMaxChars) {
+			return ResponseEntity.badRequest().body(Map.of("error", "text is longer than " + batchMaxChars + " characters"));
+		}
+
+		String voiceId = Optional.ofNullable(request.voiceId()).orElse("21m00Tcm4TlvDq8ikWAM");
+		String modelId = Optional.ofNullable(request.modelId()).orElse("eleven_monolingual_v1");
+		List<String> chunks = SpeechChunker.chunk(passages, batchChunkChars);
+		batchChunks.record(chunks.size());
+
+		Flux<byte[]> audio = Flux.fromIterable(chunks)
+			.flatMapSequential(chunk -> cachedOrSynthesized(chunk, voiceId, modelId), batchParallelism, 1);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("audio/mpeg"));
+		headers.set(CHUNKS_HEADER, String.valueOf(chunks.size()));
+		StreamingResponseBody body = outputStream -> {
+			// Closing the stream cancels the chunks still in flight, e.g. when the client left
+			try (Stream<byte[]> clips = audio.toStream(batchParallelism)) {
+				Iterator<byte[]> iterator = clips.iterator();
+				boolean first = true;
+				while (iterator.hasNext()) {
+					byte[] clip = iterator.next();
+					int offset = first ? 0 : id3TagLength(clip);
+					outputStream.write(clip, offset, clip.length - offset);
+					outputStream.flush();
+					first = false;
+				}
 			}
-			
-			String voiceId = params.getOrDefault("voiceId", "21m00Tcm4TlvDq8ikWAM");
-			String modelId = params.getOrDefault("modelId", "eleven_monolingual_v1");
-			
-			Map<String, Object> requestBody = Map.of(
-				"text", text,
-				"model_id", modelId
-			);
-
-			byte[] audioBytes = webClient.post()
+		};
+		return ResponseEntity.ok()
+			.headers(headers)
+			.body(body);
+	}
+
+	private Mono<byte[]> cachedOrSynthesized(String text, String voiceId, String modelId) {
+		String cacheKey = TtsAudioCache.key(text, voiceId, modelId);
+		return Mono.fromCallable(() -> {
+				Optional<Resource> cached = audioCache.get(cacheKey);
+				return cached.isPresent() ? cached.get().getContentAsByteArray() : null;
+			})
+			.subscribeOn(Schedulers.boundedElastic())
+			.switchIfEmpty(Mono.defer(() -> synthesize(text, voiceId, modelId, UpstreamResilience.Policy.RETRY)
+				.publishOn(Schedulers.boundedElastic())
+				.doOnNext(audioBytes -> {
+					if (audioBytes.length > 0) {
+						audioCache.put(cacheKey, audioBytes);
+					}
+				})));
+	}
+
+	private Mono<byte[]> synthesize(String text, String voiceId, String modelId, UpstreamResilience.Policy policy) {
+		Map<String, Object> requestBody = Map.of(
+			"text", text,
+			"model_id", modelId
+		);
+
+		upstreamMetrics.requestBytes(ELEVENLABS, SYNTHESIZE, text.getBytes(StandardCharsets.UTF_8).length);
+		Mono<byte[]> call = upstreamMetrics.timed(ELEVENLABS, SYNTHESIZE, webClient.post()
 				.uri("/text-to-speech/" + voiceId)
 				.header("xi-api-key", apiKey)
 				.contentType(MediaType.APPLICATION_JSON)
 				.accept(MediaType.parseMediaType("audio/mpeg"))
 				.bodyValue(requestBody)
 				.retrieve()
-				.bodyToMono(byte[].class)
-				.block();
-			
-			HttpHeaders headers = new HttpHeaders();
-			headers.setContentType(MediaType.parseMediaType("audio/mpeg"));
-			headers.setContentDispositionFormData("attachment", "speech.mp3");
-			
+				.bodyToMono(byte[].class))
+			.doOnNext(audioBytes -> upstreamMetrics.responseBytes(ELEVENLABS, SYNTHESIZE, audioBytes.length));
+		// Limited outside the retries, so waiting for a slot never counts against the circuit
+		return limiter.limit(resilience.execute(ELEVENLABS + ":" + SYNTHESIZE, policy, call));
+	}
+
+	/**
+	 * Length of a leading ID3v2 tag, which must not reappear in the middle of a joined MP3
+	 */
+	static int id3TagLength(byte[] clip) {
+		if (clip.length < 10 || clip[0] != 'I' || clip[1] != 'D' || clip[2] != '3') {
+			return 0;
+		}
+		int size = (clip[6] & 0x7f) << 21 | (clip[7] & 0x7f) << 14 | (clip[8] & 0x7f) << 7 | (clip[9] & 0x7f);
+		int footer = (clip[5] & 0x10) != 0 ? 10 : 0;
+		return Math.min(clip.length, 10 + size + footer);
+	}
+
+	/**
+	 * Relay synthesized audio to the client as it is generated, using the ElevenLabs
+	 * streaming endpoint. The upstream request is cancelled if the client disconnects,
+	 * and a completely received clip is added to the cache for later replays.
+	 */
+	public ResponseEntity<?> streamSpeechFromRequest(Map<String, String> params) {
+		ResponseEntity<?> invalid = validate(params);
+		if (invalid != null) {
+			return invalid;
+		}
+		
+		String text = params.get("text");
+		String voiceId = params.getOrDefault("voiceId", "21m00Tcm4TlvDq8ikWAM");
+		String modelId = params.getOrDefault("modelId", "eleven_monolingual_v1");
+		
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("audio/mpeg"));
+		
+		String cacheKey = TtsAudioCache.key(text, voiceId, modelId);
+		Optional<Resource> cached = audioCache.get(cacheKey);
+		if (cached.isPresent()) {
+			headers.set(CACHE_STATUS_HEADER, "HIT");
 			return ResponseEntity.ok()
 				.headers(headers)
-				.body(audioBytes);
-		} catch (Exception e) {
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-					.body(Map.of("error", "Failed to generate speech: " + e.getMessage()));
+				.body(cached.get());
+		}
+		headers.set(CACHE_STATUS_HEADER, "MISS");
+		
+		upstreamMetrics.requestBytes(ELEVENLABS, SYNTHESIZE_STREAM, text.getBytes(StandardCharsets.UTF_8).length);
+		AtomicLong received = new AtomicLong();
+		Flux<DataBuffer> audio = limiter.limit(upstreamMetrics.timed(ELEVENLABS, SYNTHESIZE_STREAM, webClient.post()
+				.uri("/text-to-speech/" + voiceId + "/stream")
+				.header("xi-api-key", apiKey)
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.parseMediaType("audio/mpeg"))
+				.bodyValue(Map.of(
+					"text", text,
+					"model_id", modelId
+				))
+				.retrieve()
+				.bodyToFlux(DataBuffer.class)))
+			.doOnNext(chunk -> received.addAndGet(chunk.readableByteCount()))
+			.doFinally(signal -> upstreamMetrics.responseBytes(ELEVENLABS, SYNTHESIZE_STREAM, received.get()));
+		
+		StreamingResponseBody body = outputStream -> relay(audio, outputStream, cacheKey);
+		return ResponseEntity.ok()
+			.headers(headers)
+			.body(body);
+	}
+
+	private void relay(Flux<DataBuffer> audio, OutputStream outputStream, String cacheKey) throws IOException {
+		Path temp = audioCache.newTempFile();
+		boolean complete = false;
+		
+		// Closing the stream cancels the upstream subscription, e.g. when a write fails because the client left
+		try (Stream<DataBuffer> chunks = audio.toStream(STREAM_PREFETCH);
+			 OutputStream cacheFile = Files.newOutputStream(temp)) {
+			Iterator<DataBuffer> iterator = chunks.iterator();
+			byte[] copy = new byte[8192];
+			while (iterator.hasNext()) {
+				DataBuffer chunk = iterator.next();
+				try {
+					while (chunk.readableByteCount() > 0) {
+						int length = Math.min(copy.length, chunk.readableByteCount());
+						chunk.read(copy, 0, length);
+						outputStream.write(copy, 0, length);
+						cacheFile.write(copy, 0, length);
+					}
+				} finally {
+					DataBufferUtils.release(chunk);
+				}
+				outputStream.flush();
+			}
+			complete = true;
+		} finally {
+			if (complete) {
+				audioCache.putFile(cacheKey, temp);
+			} else {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	private ResponseEntity<?> validate(Map<String, String> params) {
+		String text = params.get("text");
+		if (text == null || text.isBlank()) {
+			return ResponseEntity.badRequest().body(Map.of("error", "text is required"));
+		}
+		
+		if (apiKey == null || apiKey.isBlank() || apiKey.equals("${ELEVENLABS_API_KEY}")) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.body(Map.of("error", "Text-to-speech service is not configured"));
 		}
+		return null;
 	}
 }
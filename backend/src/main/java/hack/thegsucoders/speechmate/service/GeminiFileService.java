@@ -0,0 +1,210 @@
+package hack.thegsucoders.speechmate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Uploads media to the Gemini Files API using the resumable upload protocol.
+ * Files are streamed from their multipart temp file one chunk at a time, so heap
+ * use per upload is bounded by the chunk size rather than the file size.
+ */
+@Service
+public class GeminiFileService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeminiFileService.class);
+
+    private static final String UPLOAD_URL_HEADER = "X-Goog-Upload-URL";
+
+    /** Model tag used for Files API metrics. */
+    private static final String FILES = "files";
+
+    /** Resumable uploads require every chunk except the last to be a multiple of 256 KiB. */
+    private static final int CHUNK_GRANULARITY = 256 * 1024;
+
+    @Value("${GEMINI_API_KEY}")
+    private String apiKey;
+
+    @Value("${gemini.files.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    @Value("${gemini.files.poll-interval:2s}")
+    private Duration pollInterval;
+
+    @Value("${gemini.files.activation-timeout:120s}")
+    private Duration activationTimeout;
+
+    private final WebClient webClient;
+    private final UpstreamMetrics upstreamMetrics;
+
+    public GeminiFileService(@Qualifier("geminiBulkWebClient") WebClient webClient, UpstreamMetrics upstreamMetrics) {
+        this.webClient = webClient;
+        this.upstreamMetrics = upstreamMetrics;
+    }
+
+    /**
+     * A file stored by the Files API, referenced from generateContent via {@code file_data}.
+     */
+    public record UploadedFile(String name, String uri, String mimeType) {
+    }
+
+    /**
+     * Stream a multipart file to the Files API and wait until it is ready to be referenced
+     * @param file Uploaded file (read through its input stream, never fully buffered)
+     * @return Handle of the stored file
+     */
+    public Mono<UploadedFile> upload(MultipartFile file) {
+        String mimeType = file.getContentType();
+        long size = file.getSize();
+
+        return startUpload(file.getOriginalFilename(), mimeType, size)
+            .flatMap(uploadUrl -> uploadChunks(uploadUrl, file, size))
+            .flatMap(stored -> awaitActive(stored)
+                .timeout(activationTimeout)
+                // The finalized file exists remotely even if the caller never gets a handle to delete it
+                .onErrorResume(e -> delete(toUploadedFile(stored)).then(Mono.error(e)))
+                .doOnCancel(() -> delete(toUploadedFile(stored)).subscribe()));
+    }
+
+    /**
+     * Delete a previously uploaded file. Failures are ignored since the Files API
+     * expires uploads on its own after 48 hours.
+     */
+    public Mono<Void> delete(UploadedFile file) {
+        return upstreamMetrics.timed(FILES, "delete", webClient.delete()
+                .uri("/v1beta/" + file.name())
+                .header("x-goog-api-key", apiKey)
+                .retrieve()
+                .toBodilessEntity())
+            .then()
+            .onErrorResume(e -> {
+                LOGGER.warn("Failed to delete Gemini file {}: {}", file.name(), e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private Mono<String> startUpload(String displayName, String mimeType, long size) {
+        return upstreamMetrics.timed(FILES, "upload.start", webClient.post()
+            .uri("/upload/v1beta/files")
+            .header("x-goog-api-key", apiKey)
+            .header("X-Goog-Upload-Protocol", "resumable")
+            .header("X-Goog-Upload-Command", "start")
+            .header("X-Goog-Upload-Header-Content-Length", String.valueOf(size))
+            .header("X-Goog-Upload-Header-Content-Type", mimeType)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(Map.of("file", Map.of("display_name", displayName != null ? displayName : "upload")))
+            .retrieve()
+            .toBodilessEntity())
+            .mapNotNull(response -> response.getHeaders().getFirst(UPLOAD_URL_HEADER))
+            .switchIfEmpty(Mono.error(() -> new IllegalStateException("Gemini Files API did not return an upload URL")));
+    }
+
+    /**
+     * One slice of the file and its position in the upload
+     */
+    private record Chunk(long offset, byte[] bytes, boolean last) {
+    }
+
+    private Mono<Map<String, Object>> uploadChunks(String uploadUrl, MultipartFile file, long size) {
+        int chunkBytes = Math.max(CHUNK_GRANULARITY, (int) (chunkSize.toBytes() / CHUNK_GRANULARITY) * CHUNK_GRANULARITY);
+        URI target = URI.create(uploadUrl);
+
+        // Chunks are read on demand and sent one at a time, so at most one or two are in memory
+        Flux<Chunk> chunks = Flux.using(
+            file::getInputStream,
+            in -> Flux.<Chunk, Long>generate(() -> 0L, (offset, sink) -> {
+                try {
+                    byte[] bytes = in.readNBytes((int) Math.min(chunkBytes, Math.max(size - offset, 0)));
+                    boolean last = offset + bytes.length >= size;
+                    if (bytes.length == 0 && !last) {
+                        sink.error(new IOException("Upload stream ended after " + offset + " of " + size + " bytes"));
+                        return offset;
+                    }
+                    sink.next(new Chunk(offset, bytes, last));
+                    if (last) {
+                        sink.complete();
+                    }
+                    return offset + bytes.length;
+                } catch (IOException e) {
+                    sink.error(e);
+                    return offset;
+                }
+            }),
+            in -> {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+            }
+        ).subscribeOn(Schedulers.boundedElastic());
+
+        return chunks
+            .concatMap(chunk -> {
+                upstreamMetrics.requestBytes(FILES, "upload.chunk", chunk.bytes().length);
+                return upstreamMetrics.timed(FILES, "upload.chunk", webClient.post()
+                        .uri(target)
+                        .header("X-Goog-Upload-Command", chunk.last() ? "upload, finalize" : "upload")
+                        .header("X-Goog-Upload-Offset", String.valueOf(chunk.offset()))
+                        .contentLength(chunk.bytes().length)
+                        .bodyValue(chunk.bytes())
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}))
+                    .defaultIfEmpty(Map.of());
+            }, 1)
+            .last()
+            .flatMap(response -> {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> stored = (Map<String, Object>) response.get("file");
+                return stored != null
+                    ? Mono.just(stored)
+                    : Mono.error(new IllegalStateException("Gemini Files API did not acknowledge the finalized upload"));
+            });
+    }
+
+    /**
+     * Video and audio files are processed asynchronously by the Files API and can
+     * only be referenced once their state becomes ACTIVE.
+     */
+    private Mono<UploadedFile> awaitActive(Map<String, Object> current) {
+        if ("PROCESSING".equals(current.get("state"))) {
+            return Mono.delay(pollInterval)
+                .then(upstreamMetrics.timed(FILES, "get", webClient.get()
+                    .uri("/v1beta/" + current.get("name"))
+                    .header("x-goog-api-key", apiKey)
+                    .retrieve()
+                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Gemini Files API returned no metadata for " + current.get("name"))))
+                .flatMap(this::awaitActive);
+        }
+
+        if ("FAILED".equals(current.get("state"))) {
+            return Mono.error(new IllegalStateException("Gemini failed to process uploaded file " + current.get("name")));
+        }
+
+        return Mono.just(toUploadedFile(current));
+    }
+
+    private static UploadedFile toUploadedFile(Map<String, Object> stored) {
+        return new UploadedFile(
+            (String) stored.get("name"),
+            (String) stored.get("uri"),
+            (String) stored.get("mimeType")
+        );
+    }
+}
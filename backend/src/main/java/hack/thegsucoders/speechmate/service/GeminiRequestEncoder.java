@@ -0,0 +1,160 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a generateContent request body as a stream of small buffers instead of
+ * serializing a {@code Map} graph in memory. Inline media is base64-encoded straight
+ * from disk through a {@link FileChannel}, so peak memory per request is a few
+ * chunks no matter how large the files are.
+ */
+@Component
+public class GeminiRequestEncoder {
+
+    /** Raw bytes read per step; a multiple of 3 so only the final chunk carries base64 padding. */
+    private static final int RAW_CHUNK_SIZE = 3 * 16 * 1024;
+
+    private static final Base64.Encoder BASE64 = Base64.getEncoder();
+
+    private final ObjectMapper objectMapper;
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    public GeminiRequestEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * A single entry of the {@code parts} array.
+     */
+    public sealed interface Part permits JsonPart, InlineFilePart {
+    }
+
+    /**
+     * A small part serialized as-is, e.g. {@code {"text": ...}} or {@code {"file_data": ...}}.
+     */
+    public record JsonPart(Map<String, Object> value) implements Part {
+    }
+
+    /**
+     * Media sent as {@code inline_data}, read from a file on disk while the request is written.
+     */
+    public record InlineFilePart(Path file, String mimeType) implements Part {
+    }
+
+    /**
+     * The encoded body together with its exact length, so the request can be sent
+     * with a Content-Length header rather than chunked transfer encoding.
+     */
+    public record EncodedRequest(Flux<DataBuffer> body, long contentLength) {
+    }
+
+    /**
+     * Encode a single-turn generateContent request
+     * @param parts Content parts in the order they should appear
+     * @param generationConfig Generation settings (temperature, maxOutputTokens, ...)
+     * @return Streaming body and its length in bytes
+     */
+    public EncodedRequest encode(List<Part> parts, Map<String, Object> generationConfig) throws IOException {
+        return encode(parts, generationConfig, Map.of());
+    }
+
+    /**
+     * Encode a single-turn generateContent request with extra top-level fields
+     * @param fields Small fields written before {@code contents}, e.g. {@code systemInstruction} or {@code cachedContent}
+     */
+    public EncodedRequest encode(List<Part> parts, Map<String, Object> generationConfig, Map<String, Object> fields) throws IOException {
+        List<Flux<DataBuffer>> segments = new ArrayList<>();
+        long length = 0;
+
+        StringBuilder head = new StringBuilder("{");
+        fields.forEach((name, value) -> head.append(toJson(name)).append(':').append(toJson(value)).append(','));
+        length += addBytes(segments, head.append("\"contents\":[{\"parts\":[").toString());
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                length += addBytes(segments, ",");
+            }
+            Part part = parts.get(i);
+            if (part instanceof JsonPart json) {
+                length += addBytes(segments, toJson(json.value()));
+            } else if (part instanceof InlineFilePart inline) {
+                length += addBytes(segments, "{\"inline_data\":{\"mime_type\":" + toJson(inline.mimeType()) + ",\"data\":\"");
+                segments.add(base64(inline.file()));
+                length += base64Length(Files.size(inline.file()));
+                length += addBytes(segments, "\"}}");
+            }
+        }
+        length += addBytes(segments, "]}],\"generationConfig\":" + toJson(generationConfig) + "}");
+
+        return new EncodedRequest(Flux.concat(segments), length);
+    }
+
+    private long addBytes(List<Flux<DataBuffer>> segments, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        segments.add(Flux.defer(() -> Flux.just(bufferFactory.wrap(bytes))));
+        return bytes.length;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Flux<DataBuffer> base64(Path file) {
+        Flux<DataBuffer> chunks = Flux.using(
+            () -> FileChannel.open(file, StandardOpenOption.READ),
+            channel -> Flux.<DataBuffer, ByteBuffer>generate(() -> ByteBuffer.allocate(RAW_CHUNK_SIZE), (buffer, sink) -> {
+                try {
+                    buffer.clear();
+                    while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                        // keep filling until the chunk is full or the file ends
+                    }
+                    buffer.flip();
+                    if (buffer.hasRemaining()) {
+                        sink.next(bufferFactory.wrap(BASE64.encode(buffer)));
+                    } else {
+                        sink.complete();
+                    }
+                } catch (IOException e) {
+                    sink.error(e);
+                }
+                return buffer;
+            }),
+            channel -> {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+            }
+        );
+        // File reads block, so keep them off the event loop that writes the request
+        return chunks.subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static long base64Length(long rawLength) {
+        return 4 * ((rawLength + 2) / 3);
+    }
+}
@@ -0,0 +1,179 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.model.GeminiResponse;
+import hack.thegsucoders.speechmate.model.UsageMetadata;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Pulls the candidate text and token usage out of a generateContent response with the
+ * Jackson streaming parser. Safety ratings, citation metadata and every other part of
+ * the envelope are skipped token by token rather than materialized as maps.
+ */
+@Component
+public class GeminiResponseParser {
+
+    private final ObjectMapper objectMapper;
+
+    public GeminiResponseParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Parse a response body; the buffer is released once read
+     */
+    public GeminiResponse parse(DataBuffer body) {
+        try (InputStream in = body.asInputStream(true)) {
+            return parse(objectMapper.getFactory().createParser(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Gemini response", e);
+        }
+    }
+
+    /**
+     * Parse a response delivered as a string, e.g. a single server-sent event of a streamed response
+     */
+    public GeminiResponse parse(String body) {
+        try {
+            return parse(objectMapper.getFactory().createParser(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Gemini response", e);
+        }
+    }
+
+    /**
+     * Read the JSON object the model was asked to produce into a typed value. Models
+     * sometimes wrap the object in markdown fences or a sentence, so only the outermost
+     * braces are parsed.
+     * @throws IllegalStateException if the text contains no parseable object
+     */
+    public <T> T readPayload(String text, Class<T> type) {
+        int start = text != null ? text.indexOf('{') : -1;
+        int end = text != null ? text.lastIndexOf('}') : -1;
+        if (start < 0 || end <= start) {
+            throw new IllegalStateException("Gemini response did not contain a JSON object");
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(text.substring(start, end + 1))) {
+            return objectMapper.readValue(parser, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Gemini returned invalid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private GeminiResponse parse(JsonParser parser) throws IOException {
+        try (parser) {
+            String text = null;
+            String finishReason = null;
+            UsageMetadata usage = UsageMetadata.EMPTY;
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "candidates" -> {
+                        if (parser.currentToken() != JsonToken.START_ARRAY) {
+                            parser.skipChildren();
+                            break;
+                        }
+                        // Only the first candidate is used; the rest are skipped
+                        boolean first = true;
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            if (first) {
+                                Candidate candidate = parseCandidate(parser);
+                                text = candidate.text();
+                                finishReason = candidate.finishReason();
+                                first = false;
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    case "usageMetadata" -> usage = parseUsage(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new GeminiResponse(text, finishReason, usage);
+        }
+    }
+
+    private record Candidate(String text, String finishReason) {
+    }
+
+    private Candidate parseCandidate(JsonParser parser) throws IOException {
+        String text = null;
+        String finishReason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "content" -> text = parseContent(parser);
+                case "finishReason" -> finishReason = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return new Candidate(text, finishReason);
+    }
+
+    private String parseContent(JsonParser parser) throws IOException {
+        String single = null;
+        StringBuilder combined = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!"parts".equals(field) || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String partField = parser.currentName();
+                    parser.nextToken();
+                    if (!"text".equals(partField)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    // Most responses have a single text part, which needs no builder
+                    String value = parser.getText();
+                    if (single == null) {
+                        single = value;
+                    } else {
+                        if (combined == null) {
+                            combined = new StringBuilder(single);
+                        }
+                        combined.append(value);
+                    }
+                }
+            }
+        }
+        return combined != null ? combined.toString() : single;
+    }
+
+    private UsageMetadata parseUsage(JsonParser parser) throws IOException {
+        int prompt = 0;
+        int candidates = 0;
+        int cached = 0;
+        int total = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "promptTokenCount" -> prompt = parser.getValueAsInt();
+                case "candidatesTokenCount" -> candidates = parser.getValueAsInt();
+                case "cachedContentTokenCount" -> cached = parser.getValueAsInt();
+                case "totalTokenCount" -> total = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        return new UsageMetadata(prompt, candidates, cached, total);
+    }
+}
@@ -1,99 +1,292 @@
 package hack.thegsucoders.speechmate.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.config.WebClientConfig;
+import hack.thegsucoders.speechmate.model.AcousticAnalysis;
+import hack.thegsucoders.speechmate.model.GeminiResponse;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import hack.thegsucoders.speechmate.model.SpeechOutline;
+import hack.thegsucoders.speechmate.model.SpeechTips;
+import hack.thegsucoders.speechmate.model.UsageMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Base64;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class GeminiService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeminiService.class);
+
+    private static final String GENERATE = "generateContent";
+    private static final String STREAM = "streamGenerateContent";
+
     @Value("${GEMINI_API_KEY}")
     private String apiKey;
 
+    @Value("${gemini.files.enabled:true}")
+    private boolean filesApiEnabled;
+
+    @Value("${gemini.files.inline-threshold:4MB}")
+    private DataSize inlineThreshold;
+
     private final WebClient webClient;
+    private final WebClient bulkWebClient;
+    private final GeminiFileService geminiFileService;
+    private final GeminiRequestEncoder geminiRequestEncoder;
+    private final MediaReducer mediaReducer;
+    private final RecordingSegmenter segmenter;
+    private final AcousticAnalyzer acousticAnalyzer;
+    private final AnalysisResultCache resultCache;
+    private final Timer outlineFirstTokenTimer;
+    private final GeminiResponseParser responseParser;
+    private final SingleFlightCache<OutlineKey, SpeechOutline> outlineCache;
+    private final Duration encouragementTimeout;
+    private final UpstreamResilience resilience;
+    private final ModelRouter router;
+    private final UpstreamMetrics upstreamMetrics;
+    private final ObjectMapper objectMapper;
 
-    public GeminiService(WebClient.Builder webClientBuilder) {
-        this.webClient = webClientBuilder
-            .baseUrl("https://generativelanguage.googleapis.com")
-            .build();
+    public GeminiService(@Qualifier("geminiWebClient") WebClient webClient,
+                         @Qualifier("geminiBulkWebClient") WebClient bulkWebClient,
+                         GeminiFileService geminiFileService,
+                         GeminiRequestEncoder geminiRequestEncoder,
+                         MediaReducer mediaReducer,
+                         RecordingSegmenter segmenter,
+                         AcousticAnalyzer acousticAnalyzer,
+                         AnalysisResultCache resultCache,
+                         GeminiResponseParser responseParser,
+                         UpstreamResilience resilience,
+                         ModelRouter router,
+                         UpstreamMetrics upstreamMetrics,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${gemini.encouragement.timeout:10s}") Duration encouragementTimeout,
+                         @Value("${outline.cache.ttl:10m}") Duration outlineCacheTtl,
+                         @Value("${outline.cache.max-entries:1000}") int outlineCacheMaxEntries) {
+        this.webClient = webClient;
+        this.bulkWebClient = bulkWebClient;
+        this.encouragementTimeout = encouragementTimeout;
+        this.geminiFileService = geminiFileService;
+        this.geminiRequestEncoder = geminiRequestEncoder;
+        this.mediaReducer = mediaReducer;
+        this.segmenter = segmenter;
+        this.acousticAnalyzer = acousticAnalyzer;
+        this.resultCache = resultCache;
+        this.responseParser = responseParser;
+        this.resilience = resilience;
+        this.router = router;
+        this.upstreamMetrics = upstreamMetrics;
+        this.objectMapper = objectMapper;
+        this.outlineFirstTokenTimer = Timer.builder("speechmate.outline.stream.first-token")
+            .description("Time from request to the first streamed outline text")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+
+        Map<SingleFlightCache.Source, Counter> outlineRequests = new EnumMap<>(SingleFlightCache.Source.class);
+        for (SingleFlightCache.Source source : SingleFlightCache.Source.values()) {
+            outlineRequests.put(source, Counter.builder("speechmate.outline.requests")
+                .description("Outline requests by how they were served")
+                .tag("source", source.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry));
+        }
+        this.outlineCache = new SingleFlightCache<>(outlineCacheTtl, outlineCacheMaxEntries,
+            source -> outlineRequests.get(source).increment());
     }
 
     /**
-     * Generate speech outline using Gemini 2.0 Flash
+     * Generate speech outline using the outline models (Gemini 2.0 Flash by default)
      * Frontend fields: topic, tone, style, audience, keyMessage, seconds
      */
-    public Map<String, Object> generateOutline(Map<String, Object> params) {
+    public Mono<SpeechOutline> generateOutline(Map<String, Object> params) {
+        // Identical requests in flight share one upstream call; results are reused for a short TTL.
+        // The future is shared, so one caller cancelling must not cancel it for the others.
+        return Mono.fromFuture(() -> outlineCache.get(OutlineKey.from(params), () -> requestOutline(params).toFuture()), true);
+    }
+
+    /**
+     * Outline parameters normalized for coalescing: case and whitespace differences
+     * do not produce a separate upstream call.
+     */
+    private record OutlineKey(String topic, String tone, String style, String audience, String keyMessage, int seconds) {
+
+        static OutlineKey from(Map<String, Object> params) {
+            Object secondsObj = params.get("seconds");
+            return new OutlineKey(
+                normalize(param(params, "topic", "A speech topic")),
+                normalize(param(params, "tone", "professional")),
+                normalize(param(params, "style", "informative")),
+                normalize(param(params, "audience", "general audience")),
+                normalize(param(params, "keyMessage", "")),
+                secondsObj != null ? ((Number) secondsObj).intValue() : 300
+            );
+        }
+
+        private static String normalize(Object value) {
+            return value == null ? "" : value.toString().strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private Mono<SpeechOutline> requestOutline(Map<String, Object> params) {
+        Map<String, Object> requestBody = buildOutlineRequest(params);
+        
+        ModelRouter.Route route = router.route(ModelRouter.Task.OUTLINE, GENERATE);
+        return router.execute(route, model -> {
+                byte[] body = encode(model, GENERATE, requestBody);
+                Mono<GeminiResponse> call = upstreamMetrics.timed(model, GENERATE, webClient.post()
+                        .uri("/v1beta/models/" + model + ":" + GENERATE)
+                        .header("x-goog-api-key", apiKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(DataBuffer.class))
+                    .map(buffer -> parse(model, GENERATE, buffer));
+                return resilience.execute(model + ":" + GENERATE, ModelRouter.Task.OUTLINE.tag(), UpstreamResilience.Policy.RETRY, call);
+            })
+            .map(response -> responseParser.readPayload(response.text(), SpeechOutline.class))
+            .onErrorMap(GeminiService::isWrappable, e -> new RuntimeException("Failed to generate outline: " + e.getMessage(), e));
+    }
+
+    /**
+     * Stream a speech outline from the outline models as it is generated
+     * Same fields as {@link #generateOutline}; cancelling the returned Flux cancels the upstream call.
+     * A model that has sent nothing by the outline deadline, or is overloaded, hands over to the next.
+     * @return Text deltas in generation order
+     */
+    public Flux<String> streamOutline(Map<String, Object> params) {
+        Map<String, Object> requestBody = buildOutlineRequest(params);
+        long start = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+
+        // Streams do not pass through UpstreamResilience, so a model's generateContent health stands in for it
+        ModelRouter.Route route = router.route(ModelRouter.Task.OUTLINE, GENERATE);
+        return router.executeMany(route, model -> {
+                // Every event repeats the running usage totals, so only the last one is counted
+                AtomicReference<UsageMetadata> usage = new AtomicReference<>(UsageMetadata.EMPTY);
+                byte[] body = encode(model, STREAM, requestBody);
+                return upstreamMetrics.timed(model, STREAM, webClient.post()
+                        .uri("/v1beta/models/" + model + ":" + STREAM + "?alt=sse")
+                        .header("x-goog-api-key", apiKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {}))
+                    .mapNotNull(ServerSentEvent::data)
+                    .map(responseParser::parse)
+                    .doOnNext(response -> {
+                        if (response.usage().totalTokenCount() > 0) {
+                            usage.set(response.usage());
+                        }
+                    })
+                    .doFinally(signal -> upstreamMetrics.usage(model, usage.get()))
+                    .mapNotNull(GeminiResponse::text)
+                    .filter(text -> !text.isEmpty());
+            })
+            .doOnNext(text -> {
+                if (firstToken.compareAndSet(true, false)) {
+                    outlineFirstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            })
+            .onErrorMap(e -> new RuntimeException("Failed to stream outline: " + e.getMessage(), e));
+    }
+
+    private static final PromptTemplate OUTLINE_PROMPT = PromptTemplate.compile(
+        "You are a professional speech coach. Generate a detailed speech outline for the following specifications:\n\n" +
+        "Topic: ${topic}\n" +
+        "Audience: ${audience}\n" +
+        "Duration: ${minutes} minutes (${seconds} seconds)\n" +
+        "Tone: ${tone}\n" +
+        "Style: ${style}\n" +
+        "${keyMessageLine}" +
+        "\n" +
+        "Generate a structured speech outline in JSON format with this exact structure:\n" +
+        "{\n" +
+        "  \"title\": \"compelling speech title\",\n" +
+        "  \"goal_minutes\": ${minutes},\n" +
+        "  \"thesis\": \"clear main thesis statement\",\n" +
+        "  \"sections\": [\n" +
+        "    {\n" +
+        "      \"heading\": \"Introduction\",\n" +
+        "      \"purpose\": \"Hook the audience and present thesis\",\n" +
+        "      \"talking_points\": [\"attention grabber\", \"thesis statement\", \"preview main points\"],\n" +
+        "      \"evidence\": [\"relevant statistic or anecdote\"],\n" +
+        "      \"time_hint_sec\": 45\n" +
+        "    },\n" +
+        "    {\n" +
+        "      \"heading\": \"Main Point 1\",\n" +
+        "      \"purpose\": \"develop first key argument\",\n" +
+        "      \"talking_points\": [\"specific points to cover\"],\n" +
+        "      \"evidence\": [\"supporting facts, examples, or data\"],\n" +
+        "      \"time_hint_sec\": 90\n" +
+        "    }\n" +
+        "    // Include 2-4 main sections based on duration\n" +
+        "  ],\n" +
+        "  \"closing\": {\n" +
+        "    \"call_to_action\": \"what you want audience to do\",\n" +
+        "    \"takeaway\": \"memorable final thought\"\n" +
+        "  }\n" +
+        "}\n\n" +
+        "Ensure time_hint_sec values add up to approximately ${seconds} seconds total. " +
+        "Make the outline specific, actionable, and tailored to the ${tone} tone and ${style} style. " +
+        "Return ONLY valid JSON, no additional text."
+    );
+
+    static Map<String, Object> buildOutlineRequest(Map<String, Object> params) {
         // Extract parameters from frontend
-        String topic = (String) params.getOrDefault("topic", "A speech topic");
-        String tone = (String) params.getOrDefault("tone", "professional");
-        String style = (String) params.getOrDefault("style", "informative");
-        String audience = (String) params.getOrDefault("audience", "general audience");
-        String keyMessage = (String) params.getOrDefault("keyMessage", "");
+        String topic = param(params, "topic", "A speech topic");
+        String tone = param(params, "tone", "professional");
+        String style = param(params, "style", "informative");
+        String audience = param(params, "audience", "general audience");
+        String keyMessage = param(params, "keyMessage", "");
         
         Object secondsObj = params.get("seconds");
         int seconds = secondsObj != null ? ((Number) secondsObj).intValue() : 300; // Default 5 minutes
         int minutes = seconds / 60;
         
         // Build comprehensive prompt for outline generation
-        String prompt = String.format(
-            "You are a professional speech coach. Generate a detailed speech outline for the following specifications:\n\n" +
-            "Topic: %s\n" +
-            "Audience: %s\n" +
-            "Duration: %d minutes (%d seconds)\n" +
-            "Tone: %s\n" +
-            "Style: %s\n" +
-            "%s" +
-            "\n" +
-            "Generate a structured speech outline in JSON format with this exact structure:\n" +
-            "{\n" +
-            "  \"title\": \"compelling speech title\",\n" +
-            "  \"goal_minutes\": %d,\n" +
-            "  \"thesis\": \"clear main thesis statement\",\n" +
-            "  \"sections\": [\n" +
-            "    {\n" +
-            "      \"heading\": \"Introduction\",\n" +
-            "      \"purpose\": \"Hook the audience and present thesis\",\n" +
-            "      \"talking_points\": [\"attention grabber\", \"thesis statement\", \"preview main points\"],\n" +
-            "      \"evidence\": [\"relevant statistic or anecdote\"],\n" +
-            "      \"time_hint_sec\": 45\n" +
-            "    },\n" +
-            "    {\n" +
-            "      \"heading\": \"Main Point 1\",\n" +
-            "      \"purpose\": \"develop first key argument\",\n" +
-            "      \"talking_points\": [\"specific points to cover\"],\n" +
-            "      \"evidence\": [\"supporting facts, examples, or data\"],\n" +
-            "      \"time_hint_sec\": 90\n" +
-            "    }\n" +
-            "    // Include 2-4 main sections based on duration\n" +
-            "  ],\n" +
-            "  \"closing\": {\n" +
-            "    \"call_to_action\": \"what you want audience to do\",\n" +
-            "    \"takeaway\": \"memorable final thought\"\n" +
-            "  }\n" +
-            "}\n\n" +
-            "Ensure time_hint_sec values add up to approximately %d seconds total. " +
-            "Make the outline specific, actionable, and tailored to the %s tone and %s style. " +
-            "Return ONLY valid JSON, no additional text.",
-            topic, 
-            audience, 
-            minutes, 
-            seconds, 
-            tone, 
-            style, 
-            keyMessage.isEmpty() ? "" : "Key Message: " + keyMessage + "\n",
-            minutes, 
-            seconds, 
-            tone, 
-            style
-        );
+        String prompt = OUTLINE_PROMPT.render(Map.of(
+            "topic", topic,
+            "audience", audience,
+            "minutes", minutes,
+            "seconds", seconds,
+            "tone", tone,
+            "style", style,
+            "keyMessageLine", keyMessage.isEmpty() ? "" : "Key Message: " + keyMessage + "\n"
+        ));
         
         // Build request body for Gemini API with explicit types
         Map<String, Object> textPart = Map.of("text", prompt);
@@ -110,49 +303,36 @@ public class GeminiService {
         generationConfig.put("maxOutputTokens", 2048);
         requestBody.put("generationConfig", generationConfig);
         
-        try {
-            // Call Gemini 2.0 Flash API
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = (Map<String, Object>) webClient.post()
-                .uri("/v1beta/models/gemini-2.0-flash-exp:generateContent?key=" + apiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-            
-            return response;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to generate outline: " + e.getMessage(), e);
-        }
+        return requestBody;
     }
 
 
+    private static final PromptTemplate TIPS_PROMPT = PromptTemplate.compile(
+        "Generate ${count} practical, actionable public speaking tips. " +
+        "Each tip should be 1-2 sentences, covering areas like: " +
+        "body language, vocal variety, pacing, confidence, audience engagement, " +
+        "storytelling, slide design, handling nerves, time management, and delivery techniques.\n\n" +
+        "Return as a JSON array:\n" +
+        "{\n" +
+        "  \"tips\": [\n" +
+        "    \"Maintain eye contact with different sections of the audience for 3-5 seconds at a time.\",\n" +
+        "    \"Pause for 2-3 seconds after making a key point to let it sink in.\",\n" +
+        "    ...\n" +
+        "  ]\n" +
+        "}\n\n" +
+        "Make tips specific, memorable, and immediately actionable. Return ONLY valid JSON."
+    );
+
     /**
-     * Generate quick speech tips using Gemini 2.0 Flash-Lite (fastest, cheapest model)
-     * Perfect for pre-generating on login and caching
+     * Generate quick speech tips using the tips models (Gemini 2.0 Flash-Lite, fastest and cheapest, by default)
+     * Called in batches by {@link SpeechTipPool}, which serves the tips endpoint
      * @param count Number of tips to generate (default 20)
      * @return List of speech tips
      */
-    public Map<String, Object> generateSpeechTips(Integer count) {
+    public Mono<List<String>> generateSpeechTips(Integer count) {
         int tipCount = count != null ? count : 20;
         
-        String prompt = String.format(
-            "Generate %d practical, actionable public speaking tips. " +
-            "Each tip should be 1-2 sentences, covering areas like: " +
-            "body language, vocal variety, pacing, confidence, audience engagement, " +
-            "storytelling, slide design, handling nerves, time management, and delivery techniques.\n\n" +
-            "Return as a JSON array:\n" +
-            "{\n" +
-            "  \"tips\": [\n" +
-            "    \"Maintain eye contact with different sections of the audience for 3-5 seconds at a time.\",\n" +
-            "    \"Pause for 2-3 seconds after making a key point to let it sink in.\",\n" +
-            "    ...\n" +
-            "  ]\n" +
-            "}\n\n" +
-            "Make tips specific, memorable, and immediately actionable. Return ONLY valid JSON.",
-            tipCount
-        );
+        String prompt = TIPS_PROMPT.render(Map.of("count", tipCount));
         
         // Build request body with explicit types
         Map<String, Object> textPart = Map.of("text", prompt);
@@ -167,38 +347,42 @@ public class GeminiService {
         generationConfig.put("maxOutputTokens", 1024);
         requestBody.put("generationConfig", generationConfig);
         
-        try {
-            // Call Gemini 2.0 Flash-Lite (fastest model)
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = (Map<String, Object>) webClient.post()
-                .uri("/v1beta/models/gemini-2.0-flash-lite:generateContent?key=" + apiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-            
-            return response;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to generate speech tips: " + e.getMessage(), e);
-        }
+        ModelRouter.Route route = router.route(ModelRouter.Task.TIPS, GENERATE);
+        return router.execute(route, model -> {
+                byte[] body = encode(model, GENERATE, requestBody);
+                Mono<GeminiResponse> call = upstreamMetrics.timed(model, GENERATE, webClient.post()
+                        .uri("/v1beta/models/" + model + ":" + GENERATE)
+                        .header("x-goog-api-key", apiKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(DataBuffer.class))
+                    .map(buffer -> parse(model, GENERATE, buffer));
+                return resilience.execute(model + ":" + GENERATE, ModelRouter.Task.TIPS.tag(), UpstreamResilience.Policy.RETRY_HEDGED, call);
+            })
+            .map(response -> {
+                SpeechTips tips = responseParser.readPayload(response.text(), SpeechTips.class);
+                return tips.tips() != null ? tips.tips() : List.<String>of();
+            })
+            .onErrorMap(GeminiService::isWrappable, e -> new RuntimeException("Failed to generate speech tips: " + e.getMessage(), e));
     }
 
+    private static final PromptTemplate ENCOURAGEMENT_PROMPT = PromptTemplate.compile(
+        "Generate a very short (5-8 words maximum), encouraging message for ${name} who is about to record their speech. " +
+        "Be positive, warm, and motivating. Examples: 'You got this, ${name}!', 'Good luck, ${name}! You'll do great!', 'Shine bright, ${name}!'. " +
+        "Return ONLY the encouragement message, nothing else."
+    );
+
     /**
      * Generate a short encouraging message for the user before recording
-     * Uses Gemini 2.0 Flash-Lite for fastest response
+     * Uses the encouragement models (Gemini 2.0 Flash-Lite by default) for fastest response
      * @param userName User's first name
      * @return Encouraging message
      */
-    public String generateEncouragement(String userName) {
+    public Mono<String> generateEncouragement(String userName) {
         String name = userName != null && !userName.isEmpty() ? userName : "there";
         
-        String prompt = String.format(
-            "Generate a very short (5-8 words maximum), encouraging message for %s who is about to record their speech. " +
-            "Be positive, warm, and motivating. Examples: 'You got this, %s!', 'Good luck, %s! You'll do great!', 'Shine bright, %s!'. " +
-            "Return ONLY the encouragement message, nothing else.",
-            name, name, name, name
-        );
+        String prompt = ENCOURAGEMENT_PROMPT.render(Map.of("name", name));
         
         // Build request body
         Map<String, Object> textPart = Map.of("text", prompt);
@@ -213,278 +397,539 @@ public class GeminiService {
         generationConfig.put("maxOutputTokens", 32);
         requestBody.put("generationConfig", generationConfig);
         
-        try {
-            // Call Gemini 2.0 Flash-Lite for fastest response
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = (Map<String, Object>) webClient.post()
-                .uri("/v1beta/models/gemini-2.0-flash-lite:generateContent?key=" + apiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-            
-            // Extract text from response
-            if (response != null && response.containsKey("candidates")) {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.get("candidates");
-                if (!candidates.isEmpty()) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> candidate = candidates.get(0);
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> contentMap = (Map<String, Object>) candidate.get("content");
-                    @SuppressWarnings("unchecked")
-                    List<Map<String, Object>> parts = (List<Map<String, Object>>) contentMap.get("parts");
-                    if (!parts.isEmpty()) {
-                        return (String) parts.get(0).get("text");
-                    }
-                }
+        String fallback = "You got this, " + name + "!";
+        
+        // A slow answer is not worth waiting for; an open circuit on the last model fails fast straight into the fallback
+        ModelRouter.Route route = router.route(ModelRouter.Task.ENCOURAGEMENT, GENERATE);
+        return router.execute(route, model -> {
+                byte[] body = encode(model, GENERATE, requestBody);
+                Mono<GeminiResponse> call = upstreamMetrics.timed(model, GENERATE, webClient.post()
+                        .uri("/v1beta/models/" + model + ":" + GENERATE)
+                        .header("x-goog-api-key", apiKey)
+                        .httpRequest(WebClientConfig.responseTimeout(encouragementTimeout))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(DataBuffer.class))
+                    .map(buffer -> parse(model, GENERATE, buffer));
+                return resilience.execute(model + ":" + GENERATE, ModelRouter.Task.ENCOURAGEMENT.tag(), UpstreamResilience.Policy.RETRY_HEDGED, call);
+            })
+            .mapNotNull(GeminiResponse::text)
+            .map(String::strip)
+            .filter(text -> !text.isEmpty())
+            .defaultIfEmpty(fallback)
+            .onErrorResume(e -> {
+                LOGGER.warn("Failed to generate encouragement: {}", e.getMessage());
+                return Mono.just(fallback);
+            });
+    }
+
+    /**
+     * Check that every uploaded file is a type the Gemini analysis models can take
+     * @param files Uploaded files
+     * @throws IllegalArgumentException if any file has an unsupported MIME type
+     */
+    public void validateFiles(List<MultipartFile> files) {
+        // Gemini 2.5 supports: audio, images, video, PDF
+        List<String> supportedMimeTypes = List.of(
+            "audio/", "image/", "video/", "application/pdf"
+        );
+        
+        for (MultipartFile file : files) {
+            String mimeType = file.getContentType();
+            if (mimeType == null || supportedMimeTypes.stream().noneMatch(mimeType::startsWith)) {
+                throw new IllegalArgumentException(
+                    "Unsupported file type: " + mimeType + ". " +
+                    "Supported types: audio files (mp3, wav, etc.), images (jpg, png, etc.), " +
+                    "video files (mp4, webm, etc.), and PDF documents. " +
+                    "Word documents (.docx) are not supported - please convert to PDF first."
+                );
             }
-            
-            return "You got this, " + name + "!";
-        } catch (Exception e) {
-            System.err.println("Failed to generate encouragement: " + e.getMessage());
-            return "You got this, " + name + "!";
         }
     }
 
     /**
-     * Analyze uploaded speech materials (video, slides, documents, images) using Gemini 2.5 Pro
+     * Analyze uploaded speech materials (video, slides, documents, images) using Gemini 2.5 Pro, or a
+     * lighter model for small uploads without audio or video
      * Provides comprehensive feedback on delivery, content, and areas for improvement
      * @param files List of uploaded files (video, ppt, pdf, images, etc.)
      * @param topic Optional speech topic
      * @param audience Optional target audience
      * @param duration Optional speech duration in seconds
      * @param goals Optional speaker's improvement goals
-     * @return Detailed analysis with scores, feedback, and YouTube recommendations
+     * @return Detailed analysis with scores, feedback, and YouTube recommendations; fails with
+     *         IllegalArgumentException if a file type is unsupported
      */
-    public Map<String, Object> analyzeSpeechPerformance(
+    public Mono<SpeechAnalysis> analyzeSpeechPerformance(
             List<MultipartFile> files, 
             String topic, 
             String audience, 
             Integer duration, 
             String goals) {
-        try {
-            // Validate file types - Gemini 2.5 Pro supports: audio, images, video, PDF
-            List<String> supportedMimeTypes = List.of(
-                "audio/", "image/", "video/", "application/pdf"
-            );
-            
-            for (MultipartFile file : files) {
-                String mimeType = file.getContentType();
-                if (mimeType == null || supportedMimeTypes.stream().noneMatch(mimeType::startsWith)) {
-                    throw new IllegalArgumentException(
-                        "Unsupported file type: " + mimeType + ". " +
-                        "Supported types: audio files (mp3, wav, etc.), images (jpg, png, etc.), " +
-                        "video files (mp4, webm, etc.), and PDF documents. " +
-                        "Word documents (.docx) are not supported - please convert to PDF first."
-                    );
-                }
-            }
-            
-            // Set defaults for optional parameters
-            String speechTopic = topic != null ? topic : "unknown topic";
-            String targetAudience = audience != null ? audience : "general audience";
-            int durationSeconds = duration != null ? duration : 0;
-            String speakerGoals = goals != null ? goals : "improve public speaking skills";
-
-            // Build comprehensive analysis prompt
-            String prompt = String.format(
-                "You are an expert speech coach and communication analyst with expertise in linguistics, accent analysis, and cross-cultural communication. " +
-                "Analyze the provided materials (video, slides, documents, images) for a speech/presentation with the following context:\n\n" +
-                "Topic: %s\n" +
-                "Target Audience: %s\n" +
-                "Duration: %d seconds\n" +
-                "Speaker's Goals: %s\n\n" +
-                "Perform a comprehensive and detailed analysis covering:\n\n" +
-                "1. **Speech Content & Message Analysis**:\n" +
-                "   - Provide a detailed summary of what the speech was about - capture the main theme, key arguments, and central message\n" +
-                "   - Identify and quote 3-5 specific statements or phrases the speaker used (use actual quotes from the video)\n" +
-                "   - Analyze how well they stayed on topic and maintained focus\n" +
-                "   - Evaluate the logical flow, structure, and organization of ideas\n" +
-                "   - Assess the quality and relevance of evidence, examples, and supporting details\n" +
-                "   - Comment on the opening and closing effectiveness\n\n" +
-                "2. **Language & Accent Analysis**:\n" +
-                "   - Identify the primary language(s) spoken (e.g., English, Spanish, French, code-switching)\n" +
-                "   - If speaking in a non-native or different language, note this explicitly\n" +
-                "   - Detect and describe the speaker's accent (e.g., American Southern, British RP, Indian English, Spanish accent in English, native accent)\n" +
-                "   - Analyze pronunciation clarity and any pronunciation challenges\n" +
-                "   - Comment on vocabulary richness and appropriateness for the audience\n\n" +
-                "3. **Intonation & Vocal Analysis**:\n" +
-                "   - Analyze intonation patterns (rising, falling, flat, varied)\n" +
-                "   - Evaluate pitch variation and monotone vs. dynamic delivery\n" +
-                "   - Assess vocal qualities: pace, volume, tone, energy, enthusiasm\n" +
-                "   - Identify emotional inflection and emphasis on key points\n" +
-                "   - Note any vocal strengths or weaknesses (e.g., 'rising intonation made questions engaging', 'flat tone during key statistics')\n\n" +
-                "4. **Filler Words & Speech Patterns**:\n" +
-                "   - Count and list filler words with frequency (um, uh, like, you know, so, actually, etc.)\n" +
-                "   - Identify any repeated phrases or verbal tics\n" +
-                "   - Note where in the speech fillers appeared most frequently\n\n" +
-                "5. **Delivery & Non-Verbal Communication** (if video provided):\n" +
-                "   - Body language: posture, gestures, movement, use of space\n" +
-                "   - Eye contact patterns and engagement with audience/camera\n" +
-                "   - Facial expressions and emotional authenticity\n" +
-                "   - Confidence level, nervousness indicators, stage presence\n" +
-                "   - Hand gestures: purposeful vs. distracting\n\n" +
-                "6. **Visual Aids Analysis** (if slides/documents provided):\n" +
-                "   - Slide design effectiveness and professional appearance\n" +
-                "   - Text-to-visual ratio and readability\n" +
-                "   - Alignment with verbal content and timing\n\n" +
-                "7. **Timing & Pacing**:\n" +
-                "   - Speaking pace (estimate words per minute)\n" +
-                "   - Strategic use of pauses and silence\n" +
-                "   - Time management and pacing throughout speech\n\n" +
-                "8. **Specific Statement Feedback**:\n" +
-                "   - Quote at least 3-5 specific statements from the speech\n" +
-                "   - For each statement, provide feedback on: effectiveness, impact, delivery quality, and suggestions for improvement\n" +
-                "   - Example: 'When you said \"[exact quote]\", this was effective because... However, consider...'\n\n" +
-                "Return analysis in this exact JSON structure:\n" +
-                "{\n" +
-                "  \"overall_score\": 0-100,\n" +
-                "  \"summary\": \"2-3 sentence overall assessment\",\n" +
-                "  \"speech_content_summary\": \"Detailed 3-4 sentence summary of what the speech was actually about, including main theme and key points discussed\",\n" +
-                "  \"language_detected\": \"Primary language(s) spoken (e.g., 'English', 'Spanish', 'English with Spanish code-switching')\",\n" +
-                "  \"accent_analysis\": {\n" +
-                "    \"accent_type\": \"Specific accent description (e.g., 'American Southern', 'British RP', 'Indian English', 'Native Spanish accent when speaking English', 'Standard American')\",\n" +
-                "    \"clarity\": \"Assessment of pronunciation clarity\",\n" +
-                "    \"notes\": \"Detailed notes on accent impact and any pronunciation strengths or challenges\"\n" +
-                "  },\n" +
-                "  \"intonation_analysis\": {\n" +
-                "    \"pattern\": \"Overall intonation pattern (e.g., 'varied and dynamic', 'mostly flat', 'rising at sentence ends')\",\n" +
-                "    \"pitch_variation\": \"High/Medium/Low pitch variation\",\n" +
-                "    \"emotional_inflection\": \"Quality of emotional expression through tone\",\n" +
-                "    \"specific_examples\": \"Examples of strong or weak intonation moments with timestamps if possible\"\n" +
-                "  },\n" +
-                "  \"scores\": {\n" +
-                "    \"content_quality\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
-                "    \"delivery\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
-                "    \"vocal_variety\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
-                "    \"intonation\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
-                "    \"body_language\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
-                "    \"visual_aids\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
-                "    \"engagement\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"}\n" +
-                "  },\n" +
-                "  \"strengths\": [\n" +
-                "    \"Specific strength with example from the speech\",\n" +
-                "    \"Another strength with concrete evidence\"\n" +
-                "  ],\n" +
-                "  \"specific_statements_feedback\": [\n" +
-                "    {\n" +
-                "      \"quote\": \"Exact quote from the speaker\",\n" +
-                "      \"timestamp\": \"Approximate time in speech (if determinable)\",\n" +
-                "      \"effectiveness\": \"What worked well about this statement\",\n" +
-                "      \"delivery_notes\": \"How it was delivered (tone, emphasis, body language)\",\n" +
-                "      \"suggestion\": \"How this statement could be improved or built upon\"\n" +
-                "    }\n" +
-                "  ],\n" +
-                "  \"areas_for_improvement\": [\n" +
-                "    {\n" +
-                "      \"category\": \"Filler Words\",\n" +
-                "      \"issue\": \"Used 'um' 23 times (approximately once every 15 seconds)\",\n" +
-                "      \"impact\": \"Reduces credibility and distracts from message\",\n" +
-                "      \"suggestion\": \"Practice pausing instead of using filler words. Record yourself and count fillers to build awareness.\"\n" +
-                "    },\n" +
-                "    {\n" +
-                "      \"category\": \"Pacing\",\n" +
-                "      \"issue\": \"Speaking too quickly at ~180 words per minute\",\n" +
-                "      \"impact\": \"Audience may struggle to follow complex points\",\n" +
-                "      \"suggestion\": \"Slow down to 140-160 wpm. Use strategic pauses after key points.\"\n" +
-                "    }\n" +
-                "  ],\n" +
-                "  \"detailed_feedback\": {\n" +
-                "    \"content_summary\": \"What the speech was about - main theme, arguments, and message in detail\",\n" +
-                "    \"topic_adherence\": \"Detailed analysis of how well speaker stayed on topic, with specific examples\",\n" +
-                "    \"filler_words\": {\"count\": 23, \"frequency\": \"once per 15 seconds\", \"most_common\": [\"um\", \"uh\", \"like\"], \"context\": \"Where fillers appeared most (e.g., during transitions, technical explanations)\"},\n" +
-                "    \"vocal_analysis\": \"Detailed notes on pace (estimate WPM), volume, tone, energy levels, and vocal strengths/weaknesses\",\n" +
-                "    \"intonation_details\": \"Specific analysis of pitch patterns, emphasis, emotional expression through voice\",\n" +
-                "    \"body_language_notes\": \"Specific observations about posture, gestures, movement, eye contact\",\n" +
-                "    \"slide_feedback\": \"Specific feedback on visual aids if provided\",\n" +
-                "    \"language_notes\": \"Notes on language use, vocabulary level, any non-native language observations\"\n" +
-                "  },\n" +
-                "  \"youtube_resources\": [\n" +
-                "    {\n" +
-                "      \"area\": \"Eliminating Filler Words\",\n" +
-                "      \"search_query\": \"how to stop saying um and uh public speaking\",\n" +
-                "      \"recommended_channels\": [\"Charisma on Command\", \"Stanford Graduate School of Business\"],\n" +
-                "      \"why\": \"Your filler word usage is above average. These resources teach awareness and replacement techniques.\"\n" +
-                "    },\n" +
-                "    {\n" +
-                "      \"area\": \"Body Language\",\n" +
-                "      \"search_query\": \"confident body language for presentations\",\n" +
-                "      \"recommended_channels\": [\"TEDx Talks\", \"Communication Coach Alexander Lyon\"],\n" +
-                "      \"why\": \"To build more commanding stage presence and confident posture.\"\n" +
-                "    }\n" +
-                "  ],\n" +
-                "  \"action_plan\": [\n" +
-                "    \"Priority 1: Focus on eliminating filler words through awareness and pausing\",\n" +
-                "    \"Priority 2: Slow down pacing to 140-160 words per minute\",\n" +
-                "    \"Priority 3: Improve body language with more purposeful gestures\"\n" +
-                "  ]\n" +
-                "}\n\n" +
-                "IMPORTANT INSTRUCTIONS:\n" +
-                "- Be HIGHLY SPECIFIC about what the speech was actually about - don't just say 'the topic', describe the actual content and arguments\n" +
-                "- ALWAYS include at least 3-5 direct quotes from the speaker with detailed feedback on each\n" +
-                "- MUST identify the language(s) spoken and provide detailed accent analysis\n" +
-                "- MUST provide comprehensive intonation analysis with specific examples\n" +
-                "- If the speaker uses a different language or has a non-native accent, explicitly note this with supportive details\n" +
-                "- Provide exact counts and frequencies for filler words, not just estimates\n" +
-                "- Reference specific moments, statements, or sections of the speech in your feedback\n" +
-                "- Be constructive and actionable - every criticism should include a specific suggestion\n" +
-                "- Tailor YouTube recommendations to address the speaker's most critical weaknesses\n" +
-                "- Return ONLY valid JSON with no additional text or markdown formatting.",
-                speechTopic, targetAudience, durationSeconds, speakerGoals
-            );
+        return analyzeSpeechPerformance(files, topic, audience, duration, goals, acousticAnalyzer.analyze(files));
+    }
 
-            // Build multimodal content parts
-            List<Map<String, Object>> parts = new ArrayList<>();
-            
-            // Add the prompt as first part
-            parts.add(Map.of("text", prompt));
+    /**
+     * As {@link #analyzeSpeechPerformance(List, String, String, Integer, String)}, with acoustic
+     * measurements the caller has already started, e.g. to show them while the analysis runs
+     * @param acoustics Measurements of the recording, added to the prompt; resolved before the
+     *                  uploads are spooled, since spooling moves them
+     */
+    public Mono<SpeechAnalysis> analyzeSpeechPerformance(
+            List<MultipartFile> files,
+            String topic,
+            String audience,
+            Integer duration,
+            String goals,
+            Mono<Optional<AcousticAnalysis>> acoustics) {
+        return Mono.defer(() -> {
+            validateFiles(files);
 
-            // Process each file and add to parts
-            for (MultipartFile file : files) {
-                String mimeType = file.getContentType();
-                byte[] fileBytes = file.getBytes();
-                String base64Data = Base64.getEncoder().encodeToString(fileBytes);
+            List<GeminiFileService.UploadedFile> uploadedFiles = new CopyOnWriteArrayList<>();
+            List<Path> spooledFiles = new CopyOnWriteArrayList<>();
 
-                Map<String, Object> inlineData = new HashMap<>();
-                inlineData.put("mime_type", mimeType);
-                inlineData.put("data", base64Data);
+            // Uploads are spooled and hashed first, so a re-submitted recording with the same
+            // context is answered from the result cache without reducing or sending anything
+            files.forEach(file -> upstreamMetrics.upload(file.getContentType(), file.getSize()));
+            return acoustics
+                .map(measured -> buildAnalysisPrompt(topic, audience, duration, goals)
+                    + measured.map(GeminiService::buildAcousticsPrompt).orElse(""))
+                .flatMap(prompt -> mediaReducer.spool(files).flatMap(spooled -> {
+                    spooled.files().forEach(file -> spooledFiles.add(file.getPath()));
+                    List<String> contentTypes = spooled.files().stream().map(MultipartFile::getContentType).toList();
+                    ModelRouter.Route route = router.route(ModelRouter.Task.ANALYSIS, GENERATE,
+                        spooled.files().stream().mapToLong(MultipartFile::getSize).sum(), contentTypes);
+                    String cacheKey = AnalysisResultCache.key(spooled.sha256(), contentTypes,
+                        topic, audience, duration, goals, route.preferred() + "\n" + ANALYSIS_INSTRUCTIONS);
+                    return Mono.fromCallable(() -> resultCache.get(cacheKey))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(cached -> cached.map(Mono::just).orElseGet(() ->
+                            requestAnalysis(spooled, prompt, duration, route, uploadedFiles, spooledFiles)
+                                // An answer from a fallback model is served but not kept in place of the preferred one's
+                                .doOnNext(analysis -> {
+                                    if (!route.degraded()) {
+                                        Mono.fromRunnable(() -> resultCache.put(cacheKey, analysis))
+                                            .subscribeOn(Schedulers.boundedElastic())
+                                            .subscribe();
+                                    }
+                                })));
+                }))
+                .onErrorMap(GeminiService::isWrappable, e -> new RuntimeException("Failed to analyze speech performance: " + e.getMessage(), e))
+                .doFinally(signal -> {
+                    Flux.fromIterable(uploadedFiles).flatMap(geminiFileService::delete).subscribe();
+                    Mono.fromRunnable(() -> spooledFiles.forEach(GeminiService::deleteQuietly))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .subscribe();
+                });
+        });
+    }
 
-                parts.add(Map.of("inline_data", inlineData));
-            }
+    /**
+     * Reduce spooled uploads and ask the routed model for an analysis. Long recordings are
+     * analyzed in time windows in parallel and the results merged; everything else in one request.
+     */
+    private Mono<SpeechAnalysis> requestAnalysis(MediaReducer.Spooled spooled,
+                                                 String prompt,
+                                                 Integer duration,
+                                                 ModelRouter.Route route,
+                                                 List<GeminiFileService.UploadedFile> uploadedFiles,
+                                                 List<Path> spooledFiles) {
+        return mediaReducer.reduce(spooled)
+            .flatMap(reduced -> {
+                reduced.files().forEach(file -> spooledFiles.add(file.getPath()));
+                return segmenter.plan(reduced.files(), duration, filesApiEnabled)
+                    .flatMap(plan -> plan.isPresent()
+                        ? requestSegmentedAnalysis(plan.get(), prompt, route, uploadedFiles, spooledFiles)
+                        : Flux.concat(Mono.just(textPart(prompt)), Flux.fromIterable(reduced.files())
+                                .concatMap(file -> toPart(file, uploadedFiles)))
+                            .collectList()
+                            .flatMap(parts -> requestAnalysis(parts, UpstreamResilience.Policy.SINGLE, route)));
+            });
+    }
+
+    /**
+     * Analyze each window of a long recording on its own, with bounded parallelism, and merge
+     * the results. Each segment is cheap enough to retry by itself, so one failing window does
+     * not cost the others; slides and other files are sent with the first window only.
+     */
+    private Mono<SpeechAnalysis> requestSegmentedAnalysis(RecordingSegmenter.Plan plan,
+                                                          String prompt,
+                                                          ModelRouter.Route route,
+                                                          List<GeminiFileService.UploadedFile> uploadedFiles,
+                                                          List<Path> spooledFiles) {
+        plan.pieces().forEach(piece -> spooledFiles.add(piece.getPath()));
+        List<RecordingSegmenter.Window> windows = plan.windows();
 
-            // Build request body
-            Map<String, Object> content = Map.of("parts", parts);
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("contents", List.of(content));
-
-            // Configuration for detailed analysis
-            Map<String, Object> generationConfig = new HashMap<>();
-            generationConfig.put("temperature", 0.4); // Lower temperature for more analytical/consistent output
-            generationConfig.put("topK", 40);
-            generationConfig.put("topP", 0.95);
-            generationConfig.put("maxOutputTokens", 8192); // Allow long detailed response
-            requestBody.put("generationConfig", generationConfig);
-
-            // Call Gemini 2.5 Pro (best for multimodal analysis)
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = (Map<String, Object>) webClient.post()
-                .uri("/v1/models/gemini-2.5-pro:generateContent?key=" + apiKey)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(requestBody)
-                .retrieve()
-                .onStatus(
-                    status -> status.is4xxClientError() || status.is5xxServerError(),
-                    clientResponse -> clientResponse.bodyToMono(String.class)
-                        .map(errorBody -> new RuntimeException("Gemini API error: " + errorBody))
-                )
-                .bodyToMono(Map.class)
-                .block();
-
-            return response;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to analyze speech performance: " + e.getMessage(), e);
+        // A recording that was not split is uploaded once and every window clips it by offset
+        Mono<Optional<GeminiFileService.UploadedFile>> source = plan.pieces().isEmpty()
+            ? geminiFileService.upload(plan.recording()).doOnNext(uploadedFiles::add).map(Optional::of)
+            : Mono.just(Optional.empty());
+
+        return source.flatMap(uploaded -> Flux.fromIterable(windows)
+            .flatMapSequential(window -> {
+                Mono<GeminiRequestEncoder.Part> media = uploaded
+                    .map(file -> Mono.<GeminiRequestEncoder.Part>just(clipPart(file, plan.recording().getContentType(),
+                        window, window.index() == windows.size() - 1)))
+                    .orElseGet(() -> toPart(plan.pieces().get(window.index()), uploadedFiles));
+                Flux<GeminiRequestEncoder.Part> others = window.index() == 0
+                    ? Flux.fromIterable(plan.others()).concatMap(file -> toPart(file, uploadedFiles))
+                    : Flux.empty();
+                String segmentPrompt = prompt + SEGMENT_PROMPT.render(Map.of(
+                    "number", window.index() + 1,
+                    "count", windows.size(),
+                    "start", AnalysisMerger.formatTime(Math.round(window.start())),
+                    "end", AnalysisMerger.formatTime(Math.round(window.end()))
+                ));
+
+                return Flux.concat(Mono.just(textPart(segmentPrompt)), media, others)
+                    .collectList()
+                    // Transient upstream failures are retried by the policy; a malformed answer once more here
+                    .flatMap(parts -> requestAnalysis(parts, UpstreamResilience.Policy.RETRY, route)
+                        .retryWhen(Retry.max(1).filter(e -> e instanceof IllegalStateException)));
+            }, segmenter.parallelism())
+            .collectList()
+            .map(analyses -> AnalysisMerger.merge(analyses, windows)));
+    }
+
+    /**
+     * Content part for a spooled file. Large files are streamed to the Files API and referenced
+     * by URI; the rest are base64-encoded from their spool files while the request is written,
+     * so neither is ever held in memory.
+     */
+    private Mono<GeminiRequestEncoder.Part> toPart(SpooledMultipartFile file, List<GeminiFileService.UploadedFile> uploadedFiles) {
+        String mimeType = file.getContentType();
+
+        if (filesApiEnabled && file.getSize() > inlineThreshold.toBytes()) {
+            return geminiFileService.upload(file).map(uploaded -> {
+                uploadedFiles.add(uploaded);
+
+                Map<String, Object> fileData = new HashMap<>();
+                fileData.put("mime_type", mimeType);
+                fileData.put("file_uri", uploaded.uri());
+
+                return new GeminiRequestEncoder.JsonPart(Map.of("file_data", fileData));
+            });
+        }
+
+        return Mono.just(new GeminiRequestEncoder.InlineFilePart(file.getPath(), mimeType));
+    }
+
+    /**
+     * Reference to one window of an uploaded video; the last window is left open-ended in case
+     * the reported duration is short
+     */
+    private static GeminiRequestEncoder.Part clipPart(GeminiFileService.UploadedFile file, String mimeType,
+                                                      RecordingSegmenter.Window window, boolean last) {
+        Map<String, Object> offsets = new HashMap<>();
+        offsets.put("start_offset", Math.round(window.start()) + "s");
+        if (!last) {
+            offsets.put("end_offset", Math.round(window.end()) + "s");
+        }
+        return new GeminiRequestEncoder.JsonPart(Map.of(
+            "file_data", Map.of("mime_type", mimeType, "file_uri", file.uri()),
+            "video_metadata", offsets
+        ));
+    }
+
+    private static GeminiRequestEncoder.Part textPart(String text) {
+        return new GeminiRequestEncoder.JsonPart(Map.of("text", text));
+    }
+
+    /**
+     * Ask the route's models in turn for an analysis of the given parts: the speech context
+     * followed by the files
+     */
+    private Mono<SpeechAnalysis> requestAnalysis(List<GeminiRequestEncoder.Part> parts,
+                                                 UpstreamResilience.Policy policy,
+                                                 ModelRouter.Route route) {
+        return router.execute(route, model -> requestAnalysis(model, parts, ANALYSIS_GENERATION_CONFIG, policy))
+            .map(response -> responseParser.readPayload(response.text(), SpeechAnalysis.class));
+    }
+
+    /**
+     * Send one analysis request to a Gemini model (2.5 Pro is best for multimodal analysis). A
+     * whole recording is too expensive to retry, but a failing model still trips its circuit so
+     * later requests fail fast.
+     * @param policy {@link UpstreamResilience.Policy#SINGLE} for whole recordings, retries for segments
+     */
+    private Mono<GeminiResponse> requestAnalysis(String model,
+                                                 List<GeminiRequestEncoder.Part> parts,
+                                                 Map<String, Object> generationConfig,
+                                                 UpstreamResilience.Policy policy) {
+        // Build request body as a stream of buffers
+        return Mono.fromCallable(() -> geminiRequestEncoder.encode(parts, generationConfig, ANALYSIS_SYSTEM_INSTRUCTION))
+            .doOnNext(requestBody -> upstreamMetrics.requestBytes(model, GENERATE, requestBody.contentLength()))
+            .flatMap(requestBody -> resilience.execute(model + ":" + GENERATE, ModelRouter.Task.ANALYSIS.tag(), policy,
+                upstreamMetrics.timed(model, GENERATE, bulkWebClient.post()
+                    .uri("/v1beta/models/" + model + ":" + GENERATE)
+                    .header("x-goog-api-key", apiKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .contentLength(requestBody.contentLength())
+                    .body(BodyInserters.fromDataBuffers(requestBody.body()))
+                    .retrieve()
+                    .onStatus(
+                        status -> status.is4xxClientError() || status.is5xxServerError(),
+                        clientResponse -> clientResponse.bodyToMono(String.class)
+                            .map(errorBody -> new WebClientResponseException("Gemini API error: " + errorBody,
+                                clientResponse.statusCode().value(), "", clientResponse.headers().asHttpHeaders(), null, null))
+                    )
+                    .bodyToMono(DataBuffer.class))))
+            .map(buffer -> parse(model, GENERATE, buffer));
+    }
+
+    /**
+     * Static part of the analysis prompt: what to assess and the JSON shape to return. Sent
+     * as the system instruction, so every analysis request starts with the same prefix.
+     */
+    static final String ANALYSIS_INSTRUCTIONS =
+        "You are an expert speech coach and communication analyst with expertise in linguistics, accent analysis, and cross-cultural communication. " +
+        "Analyze the provided materials (video, slides, documents, images) for a speech/presentation, using the speech context given with them.\n\n" +
+        "Perform a comprehensive and detailed analysis covering:\n\n" +
+        "1. **Speech Content & Message Analysis**:\n" +
+        "   - Provide a detailed summary of what the speech was about - capture the main theme, key arguments, and central message\n" +
+        "   - Identify and quote 3-5 specific statements or phrases the speaker used (use actual quotes from the video)\n" +
+        "   - Analyze how well they stayed on topic and maintained focus\n" +
+        "   - Evaluate the logical flow, structure, and organization of ideas\n" +
+        "   - Assess the quality and relevance of evidence, examples, and supporting details\n" +
+        "   - Comment on the opening and closing effectiveness\n\n" +
+        "2. **Language & Accent Analysis**:\n" +
+        "   - Identify the primary language(s) spoken (e.g., English, Spanish, French, code-switching)\n" +
+        "   - If speaking in a non-native or different language, note this explicitly\n" +
+        "   - Detect and describe the speaker's accent (e.g., American Southern, British RP, Indian English, Spanish accent in English, native accent)\n" +
+        "   - Analyze pronunciation clarity and any pronunciation challenges\n" +
+        "   - Comment on vocabulary richness and appropriateness for the audience\n\n" +
+        "3. **Intonation & Vocal Analysis**:\n" +
+        "   - Analyze intonation patterns (rising, falling, flat, varied)\n" +
+        "   - Evaluate pitch variation and monotone vs. dynamic delivery\n" +
+        "   - Assess vocal qualities: pace, volume, tone, energy, enthusiasm\n" +
+        "   - Identify emotional inflection and emphasis on key points\n" +
+        "   - Note any vocal strengths or weaknesses (e.g., 'rising intonation made questions engaging', 'flat tone during key statistics')\n\n" +
+        "4. **Filler Words & Speech Patterns**:\n" +
+        "   - Count and list filler words with frequency (um, uh, like, you know, so, actually, etc.)\n" +
+        "   - Identify any repeated phrases or verbal tics\n" +
+        "   - Note where in the speech fillers appeared most frequently\n\n" +
+        "5. **Delivery & Non-Verbal Communication** (if video provided):\n" +
+        "   - Body language: posture, gestures, movement, use of space\n" +
+        "   - Eye contact patterns and engagement with audience/camera\n" +
+        "   - Facial expressions and emotional authenticity\n" +
+        "   - Confidence level, nervousness indicators, stage presence\n" +
+        "   - Hand gestures: purposeful vs. distracting\n\n" +
+        "6. **Visual Aids Analysis** (if slides/documents provided):\n" +
+        "   - Slide design effectiveness and professional appearance\n" +
+        "   - Text-to-visual ratio and readability\n" +
+        "   - Alignment with verbal content and timing\n\n" +
+        "7. **Timing & Pacing**:\n" +
+        "   - Speaking pace (estimate words per minute)\n" +
+        "   - Strategic use of pauses and silence\n" +
+        "   - Time management and pacing throughout speech\n\n" +
+        "8. **Specific Statement Feedback**:\n" +
+        "   - Quote at least 3-5 specific statements from the speech\n" +
+        "   - For each statement, provide feedback on: effectiveness, impact, delivery quality, and suggestions for improvement\n" +
+        "   - Example: 'When you said \"[exact quote]\", this was effective because... However, consider...'\n\n" +
+        "Return analysis in this exact JSON structure:\n" +
+        "{\n" +
+        "  \"overall_score\": 0-100,\n" +
+        "  \"summary\": \"2-3 sentence overall assessment\",\n" +
+        "  \"speech_content_summary\": \"Detailed 3-4 sentence summary of what the speech was actually about, including main theme and key points discussed\",\n" +
+        "  \"language_detected\": \"Primary language(s) spoken (e.g., 'English', 'Spanish', 'English with Spanish code-switching')\",\n" +
+        "  \"accent_analysis\": {\n" +
+        "    \"accent_type\": \"Specific accent description (e.g., 'American Southern', 'British RP', 'Indian English', 'Native Spanish accent when speaking English', 'Standard American')\",\n" +
+        "    \"clarity\": \"Assessment of pronunciation clarity\",\n" +
+        "    \"notes\": \"Detailed notes on accent impact and any pronunciation strengths or challenges\"\n" +
+        "  },\n" +
+        "  \"intonation_analysis\": {\n" +
+        "    \"pattern\": \"Overall intonation pattern (e.g., 'varied and dynamic', 'mostly flat', 'rising at sentence ends')\",\n" +
+        "    \"pitch_variation\": \"High/Medium/Low pitch variation\",\n" +
+        "    \"emotional_inflection\": \"Quality of emotional expression through tone\",\n" +
+        "    \"specific_examples\": \"Examples of strong or weak intonation moments with timestamps if possible\"\n" +
+        "  },\n" +
+        "  \"scores\": {\n" +
+        "    \"content_quality\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
+        "    \"delivery\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
+        "    \"vocal_variety\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
+        "    \"intonation\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
+        "    \"body_language\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
+        "    \"visual_aids\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"},\n" +
+        "    \"engagement\": {\"score\": 0-100, \"label\": \"Excellent/Good/Fair/Needs Work\"}\n" +
+        "  },\n" +
+        "  \"strengths\": [\n" +
+        "    \"Specific strength with example from the speech\",\n" +
+        "    \"Another strength with concrete evidence\"\n" +
+        "  ],\n" +
+        "  \"specific_statements_feedback\": [\n" +
+        "    {\n" +
+        "      \"quote\": \"Exact quote from the speaker\",\n" +
+        "      \"timestamp\": \"Approximate time in speech (if determinable)\",\n" +
+        "      \"effectiveness\": \"What worked well about this statement\",\n" +
+        "      \"delivery_notes\": \"How it was delivered (tone, emphasis, body language)\",\n" +
+        "      \"suggestion\": \"How this statement could be improved or built upon\"\n" +
+        "    }\n" +
+        "  ],\n" +
+        "  \"areas_for_improvement\": [\n" +
+        "    {\n" +
+        "      \"category\": \"Filler Words\",\n" +
+        "      \"issue\": \"Used 'um' 23 times (approximately once every 15 seconds)\",\n" +
+        "      \"impact\": \"Reduces credibility and distracts from message\",\n" +
+        "      \"suggestion\": \"Practice pausing instead of using filler words. Record yourself and count fillers to build awareness.\"\n" +
+        "    },\n" +
+        "    {\n" +
+        "      \"category\": \"Pacing\",\n" +
+        "      \"issue\": \"Speaking too quickly at ~180 words per minute\",\n" +
+        "      \"impact\": \"Audience may struggle to follow complex points\",\n" +
+        "      \"suggestion\": \"Slow down to 140-160 wpm. Use strategic pauses after key points.\"\n" +
+        "    }\n" +
+        "  ],\n" +
+        "  \"detailed_feedback\": {\n" +
+        "    \"content_summary\": \"What the speech was about - main theme, arguments, and message in detail\",\n" +
+        "    \"topic_adherence\": \"Detailed analysis of how well speaker stayed on topic, with specific examples\",\n" +
+        "    \"filler_words\": {\"count\": 23, \"frequency\": \"once per 15 seconds\", \"most_common\": [\"um\", \"uh\", \"like\"], \"context\": \"Where fillers appeared most (e.g., during transitions, technical explanations)\"},\n" +
+        "    \"vocal_analysis\": \"Detailed notes on pace (estimate WPM), volume, tone, energy levels, and vocal strengths/weaknesses\",\n" +
+        "    \"intonation_details\": \"Specific analysis of pitch patterns, emphasis, emotional expression through voice\",\n" +
+        "    \"body_language_notes\": \"Specific observations about posture, gestures, movement, eye contact\",\n" +
+        "    \"slide_feedback\": \"Specific feedback on visual aids if provided\",\n" +
+        "    \"language_notes\": \"Notes on language use, vocabulary level, any non-native language observations\"\n" +
+        "  },\n" +
+        "  \"youtube_resources\": [\n" +
+        "    {\n" +
+        "      \"area\": \"Eliminating Filler Words\",\n" +
+        "      \"search_query\": \"how to stop saying um and uh public speaking\",\n" +
+        "      \"recommended_channels\": [\"Charisma on Command\", \"Stanford Graduate School of Business\"],\n" +
+        "      \"why\": \"Your filler word usage is above average. These resources teach awareness and replacement techniques.\"\n" +
+        "    },\n" +
+        "    {\n" +
+        "      \"area\": \"Body Language\",\n" +
+        "      \"search_query\": \"confident body language for presentations\",\n" +
+        "      \"recommended_channels\": [\"TEDx Talks\", \"Communication Coach Alexander Lyon\"],\n" +
+        "      \"why\": \"To build more commanding stage presence and confident posture.\"\n" +
+        "    }\n" +
+        "  ],\n" +
+        "  \"action_plan\": [\n" +
+        "    \"Priority 1: Focus on eliminating filler words through awareness and pausing\",\n" +
+        "    \"Priority 2: Slow down pacing to 140-160 words per minute\",\n" +
+        "    \"Priority 3: Improve body language with more purposeful gestures\"\n" +
+        "  ]\n" +
+        "}\n\n" +
+        "IMPORTANT INSTRUCTIONS:\n" +
+        "- Be HIGHLY SPECIFIC about what the speech was actually about - don't just say 'the topic', describe the actual content and arguments\n" +
+        "- ALWAYS include at least 3-5 direct quotes from the speaker with detailed feedback on each\n" +
+        "- MUST identify the language(s) spoken and provide detailed accent analysis\n" +
+        "- MUST provide comprehensive intonation analysis with specific examples\n" +
+        "- If the speaker uses a different language or has a non-native accent, explicitly note this with supportive details\n" +
+        "- Provide exact counts and frequencies for filler words, not just estimates\n" +
+        "- Reference specific moments, statements, or sections of the speech in your feedback\n" +
+        "- Be constructive and actionable - every criticism should include a specific suggestion\n" +
+        "- Tailor YouTube recommendations to address the speaker's most critical weaknesses\n" +
+        "- Return ONLY valid JSON with no additional text or markdown formatting.";
+
+    /** Lower temperature for more analytical, consistent output; room for a long detailed response */
+    private static final Map<String, Object> ANALYSIS_GENERATION_CONFIG = Map.of(
+        "temperature", 0.4,
+        "topK", 40,
+        "topP", 0.95,
+        "maxOutputTokens", 8192
+    );
+
+    private static final Map<String, Object> ANALYSIS_SYSTEM_INSTRUCTION =
+        Map.of("systemInstruction", Map.of("parts", List.of(Map.of("text", ANALYSIS_INSTRUCTIONS))));
+
+    private static final PromptTemplate ANALYSIS_PROMPT = PromptTemplate.compile(
+        "Speech context:\n\n" +
+        "Topic: ${topic}\n" +
+        "Target Audience: ${audience}\n" +
+        "Duration: ${duration} seconds\n" +
+        "Speaker's Goals: ${goals}"
+    );
+
+    /** Appended to the speech context when a long recording is analyzed one window at a time */
+    private static final PromptTemplate SEGMENT_PROMPT = PromptTemplate.compile(
+        "\n\nRecording segment: ${number} of ${count}, covering ${start} to ${end} of the full recording. " +
+        "Analyze only this segment. Give every timestamp as MM:SS from the start of this segment. " +
+        "Slides and documents, if any, are provided with the first segment only; in other segments " +
+        "omit the visual_aids score and slide_feedback."
+    );
+
+    /** Appended to the speech context when the recording could be measured locally */
+    private static final PromptTemplate ACOUSTICS_PROMPT = PromptTemplate.compile(
+        "\n\nMeasured from the audio signal (use these numbers for pacing, pauses and volume):\n" +
+        "Recording length: ${duration} seconds, of which ${speaking} seconds speaking (${ratio}%)\n" +
+        "Pauses of ${minPause} seconds or longer: ${pauses} (median ${median} s, longest ${longest} s)\n" +
+        "Estimated pace: ${syllables} syllables per second, about ${wpm} words per minute\n" +
+        "Loudness while speaking: ${loudness} dBFS on average, ${range} dB dynamic range"
+    );
+
+    static String buildAcousticsPrompt(AcousticAnalysis acoustics) {
+        AcousticAnalysis.Pauses pauses = acoustics.pauses();
+        return ACOUSTICS_PROMPT.render(Map.ofEntries(
+            Map.entry("duration", acoustics.durationSeconds()),
+            Map.entry("speaking", acoustics.speakingSeconds()),
+            Map.entry("ratio", Math.round(acoustics.speakingRatio() * 100)),
+            Map.entry("minPause", pauses.minSeconds()),
+            Map.entry("pauses", pauses.count()),
+            Map.entry("median", pauses.medianSeconds()),
+            Map.entry("longest", pauses.longestSeconds()),
+            Map.entry("syllables", acoustics.syllablesPerSecond()),
+            Map.entry("wpm", acoustics.estimatedWordsPerMinute()),
+            Map.entry("loudness", acoustics.loudness().meanDbfs()),
+            Map.entry("range", acoustics.loudness().dynamicRangeDb())
+        ));
+    }
+
+    /**
+     * A text field of a request, or the default if it is missing or null
+     */
+    private static String param(Map<String, Object> params, String name, String defaultValue) {
+        Object value = params.get(name);
+        return value != null ? value.toString() : defaultValue;
+    }
+
+    /**
+     * Per-request part of the analysis prompt, sent ahead of the files; defaults fill in missing context
+     */
+    static String buildAnalysisPrompt(String topic, String audience, Integer duration, String goals) {
+        return ANALYSIS_PROMPT.render(Map.of(
+            "topic", topic != null ? topic : "unknown topic",
+            "audience", audience != null ? audience : "general audience",
+            "duration", duration != null ? duration : 0,
+            "goals", goals != null ? goals : "improve public speaking skills"
+        ));
+    }
+
+    /**
+     * Serialize a request body up front so its size can be recorded
+     */
+    private byte[] encode(String model, String endpoint, Object requestBody) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(requestBody);
+            upstreamMetrics.requestBytes(model, endpoint, body.length);
+            return body;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize Gemini request", e);
+        }
+    }
+
+    /**
+     * Parse a generateContent response, recording its size and token usage
+     */
+    private GeminiResponse parse(String model, String endpoint, DataBuffer body) {
+        upstreamMetrics.responseBytes(model, endpoint, body.readableByteCount());
+        GeminiResponse response = responseParser.parse(body);
+        upstreamMetrics.usage(model, response.usage());
+        return response;
+    }
+
+    /**
+     * Errors worth wrapping with context; unavailability passes through so callers can tell clients to retry
+     * later, and rejected input so they can answer 400
+     */
+    private static boolean isWrappable(Throwable error) {
+        return !(error instanceof UpstreamUnavailableException || error instanceof IllegalArgumentException);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete spooled file {}: {}", path, e.getMessage());
         }
     }
 }
@@ -0,0 +1,336 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shrinks uploads before they are sent for analysis, using only in-JVM codecs. Images
+ * larger than the configured resolution are downscaled, PCM WAV audio is downmixed to
+ * mono and resampled to a speech rate, and files whose bytes duplicate an earlier
+ * upload in the same request are dropped. Files are processed in parallel; a reduced
+ * copy is only used if it is actually smaller than the original.
+ */
+@Component
+public class MediaReducer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaReducer.class);
+
+    /**
+     * Uploads moved into the spool directory, without byte-identical duplicates
+     * @param files Spooled uploads in their original order; the caller deletes them
+     * @param sha256 Hex SHA-256 of each file's content, in the same order
+     * @param originalBytes Total size of the uploads as received, duplicates included
+     */
+    public record Spooled(List<SpooledMultipartFile> files, List<String> sha256, long originalBytes) {
+    }
+
+    /**
+     * Uploads ready to be sent, in their original order
+     * @param files Spooled uploads, reduced where that helped; the caller deletes them
+     * @param originalBytes Total size of the uploads as received
+     * @param bytesSaved Bytes removed by reduction and deduplication
+     */
+    public record Result(List<SpooledMultipartFile> files, long originalBytes, long bytesSaved) {
+    }
+
+    private enum Action {
+        DOWNSCALED, RESAMPLED, DEDUPLICATED, UNCHANGED
+    }
+
+    private record Hashed(SpooledMultipartFile file, String sha256) {
+    }
+
+    private record Reduced(SpooledMultipartFile file, Action action) {
+    }
+
+    @Value("${gemini.spool-dir:${java.io.tmpdir}/speechmate-spool}")
+    private Path spoolDir;
+
+    private final boolean enabled;
+    private final int parallelism;
+    private final int maxImageDimension;
+    private final long maxImagePixels;
+    private final float jpegQuality;
+    private final int audioSampleRate;
+
+    private final DistributionSummary bytesSaved;
+    private final Meter.MeterProvider<Counter> files;
+
+    public MediaReducer(MeterRegistry meterRegistry,
+                        @Value("${media.reduction.enabled:true}") boolean enabled,
+                        @Value("${media.reduction.parallelism:4}") int parallelism,
+                        @Value("${media.image.max-dimension:2048}") int maxImageDimension,
+                        @Value("${media.image.max-pixels:50000000}") long maxImagePixels,
+                        @Value("${media.image.jpeg-quality:0.85}") float jpegQuality,
+                        @Value("${media.audio.sample-rate:16000}") int audioSampleRate) {
+        this.enabled = enabled;
+        this.parallelism = parallelism;
+        this.maxImageDimension = maxImageDimension;
+        this.maxImagePixels = maxImagePixels;
+        this.jpegQuality = jpegQuality;
+        this.audioSampleRate = audioSampleRate;
+        this.bytesSaved = DistributionSummary.builder("speechmate.media.reduction.saved")
+            .description("Bytes removed from an analysis request's uploads before sending")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.files = Counter.builder("speechmate.media.reduction.files")
+            .description("Uploaded files by what the reduction stage did with them")
+            .withRegistry(meterRegistry);
+    }
+
+    /**
+     * Move the uploads of one request into the spool directory, hashing each one and
+     * dropping byte-identical duplicates. The uploads must not be read afterwards.
+     */
+    public Mono<Spooled> spool(List<MultipartFile> uploads) {
+        // Spooled so far, deleted if the request fails or is cancelled before the caller owns them
+        List<Path> spooled = new CopyOnWriteArrayList<>();
+        return Flux.fromIterable(uploads)
+            .flatMapSequential(upload -> Mono.fromCallable(() -> spool(upload)).subscribeOn(Schedulers.boundedElastic()), parallelism)
+            .doOnNext(hashed -> spooled.add(hashed.file().getPath()))
+            .collectList()
+            .map(hashed -> {
+                long originalBytes = hashed.stream().mapToLong(entry -> entry.file().getSize()).sum();
+                List<Hashed> unique = enabled ? deduplicate(hashed) : hashed;
+                return new Spooled(
+                    unique.stream().map(Hashed::file).toList(),
+                    unique.stream().map(Hashed::sha256).toList(),
+                    originalBytes
+                );
+            })
+            .doOnError(e -> deleteAllQuietly(spooled))
+            .doOnCancel(() -> deleteAllQuietly(spooled));
+    }
+
+    /**
+     * Reduce spooled uploads in parallel. Replaced spool files are deleted; the caller
+     * owns the returned ones.
+     * @return The reduced uploads; fails with IllegalArgumentException if an image has more
+     *         pixels than allowed
+     */
+    public Mono<Result> reduce(Spooled spooled) {
+        // Reduced copies made so far, deleted if another file fails before the caller owns them
+        List<Path> created = new CopyOnWriteArrayList<>();
+        return Flux.fromIterable(spooled.files())
+            .flatMapSequential(file -> Mono.fromCallable(() -> reduce(file)).subscribeOn(Schedulers.boundedElastic()), parallelism)
+            .doOnNext(reduced -> {
+                files.withTags("action", reduced.action().name().toLowerCase(Locale.ROOT)).increment();
+                if (reduced.action() != Action.UNCHANGED) {
+                    created.add(reduced.file().getPath());
+                }
+            })
+            .doOnError(e -> deleteAllQuietly(created))
+            .map(Reduced::file)
+            .collectList()
+            .map(reduced -> {
+                long saved = spooled.originalBytes() - reduced.stream().mapToLong(SpooledMultipartFile::getSize).sum();
+                bytesSaved.record(saved);
+                return new Result(reduced, spooled.originalBytes(), saved);
+            });
+    }
+
+    /**
+     * Move an upload into the spool directory and hash it. Uploads are already on disk,
+     * so the move is a rename and the digest is computed in one streaming pass over the file.
+     */
+    private Hashed spool(MultipartFile upload) throws IOException {
+        Files.createDirectories(spoolDir);
+        SpooledMultipartFile spooled = SpooledMultipartFile.spool(upload, Files.createTempFile(spoolDir, "upload-", ".bin"));
+        return new Hashed(spooled, sha256(spooled.getPath()));
+    }
+
+    /**
+     * Keep the first of each set of byte-identical uploads, deleting the rest
+     */
+    private List<Hashed> deduplicate(List<Hashed> hashed) {
+        List<Hashed> unique = new ArrayList<>(hashed.size());
+        Set<String> seen = new HashSet<>();
+        for (Hashed entry : hashed) {
+            if (seen.add(entry.sha256())) {
+                unique.add(entry);
+            } else {
+                files.withTags("action", Action.DEDUPLICATED.name().toLowerCase(Locale.ROOT)).increment();
+                deleteQuietly(entry.file().getPath());
+            }
+        }
+        return unique;
+    }
+
+    private Reduced reduce(SpooledMultipartFile file) {
+        String mimeType = file.getContentType() != null ? file.getContentType().toLowerCase(Locale.ROOT) : "";
+        if (!enabled) {
+            return new Reduced(file, Action.UNCHANGED);
+        }
+        Path target = null;
+        try {
+            target = Files.createTempFile(spoolDir, "reduced-", ".bin");
+            Action action;
+            String targetType;
+            if (mimeType.startsWith("image/") && downscale(file.getPath(), target, mimeType)) {
+                action = Action.DOWNSCALED;
+                targetType = mimeType.equals("image/jpeg") ? mimeType : "image/png";
+            } else if (WavReducer.isWav(mimeType) && WavReducer.reduce(file.getPath(), target, audioSampleRate)) {
+                action = Action.RESAMPLED;
+                targetType = "audio/wav";
+            } else {
+                deleteQuietly(target);
+                return new Reduced(file, Action.UNCHANGED);
+            }
+
+            if (Files.size(target) >= file.getSize()) {
+                deleteQuietly(target);
+                return new Reduced(file, Action.UNCHANGED);
+            }
+            deleteQuietly(file.getPath());
+            return new Reduced(file.withContent(target, targetType), action);
+        } catch (IllegalArgumentException e) {
+            // Too large to decode safely, and not worth sending as uploaded either
+            if (target != null) {
+                deleteQuietly(target);
+            }
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // A file the codecs cannot handle is still worth analyzing as uploaded
+            LOGGER.warn("Failed to reduce {}: {}", file.getOriginalFilename(), e.getMessage());
+            if (target != null) {
+                deleteQuietly(target);
+            }
+            return new Reduced(file, Action.UNCHANGED);
+        }
+    }
+
+    /**
+     * Write a downscaled copy of an image whose longer side exceeds the limit. JPEGs stay
+     * JPEG; other formats are written as PNG to keep slide text sharp. The size is read from
+     * the header first and large images are decoded subsampled, so a full-size raster is
+     * never allocated.
+     * @return false if the image is small enough already or not readable by ImageIO
+     * @throws IllegalArgumentException if the image has more pixels than allowed
+     */
+    private boolean downscale(Path source, Path target, String mimeType) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : Collections.emptyIterator();
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if ((long) sourceWidth * sourceHeight > maxImagePixels) {
+                    throw new IllegalArgumentException("Image is " + sourceWidth + "x" + sourceHeight
+                        + " pixels; images of up to " + maxImagePixels / 1_000_000 + " megapixels are supported");
+                }
+                int longerSide = Math.max(sourceWidth, sourceHeight);
+                if (longerSide <= maxImageDimension) {
+                    return false;
+                }
+                // Every n-th row and column, keeping at least the target size for the smooth scaling below
+                int step = Math.max(1, longerSide / maxImageDimension);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        double scale = (double) maxImageDimension / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        boolean jpeg = mimeType.equals("image/jpeg");
+        BufferedImage scaled = new BufferedImage(width, height,
+            jpeg || !image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        if (!jpeg) {
+            return ImageIO.write(scaled, "png", target.toFile());
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(scaled, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return true;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteAllQuietly(List<Path> paths) {
+        Mono.fromRunnable(() -> paths.forEach(MediaReducer::deleteQuietly))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete spooled file {}: {}", path, e.getMessage());
+        }
+    }
+}
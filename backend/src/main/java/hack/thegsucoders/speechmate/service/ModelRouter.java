@@ -0,0 +1,245 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Chooses which Gemini model answers a request. Each task has an ordered list of models,
+ * best first, and a deadline. Models whose circuit is open or whose recent p95 for the
+ * task already exceeds the deadline are skipped up front; at run time a model that misses the deadline
+ * or answers 429/5xx hands the request to the next one. The last model is always kept and
+ * is never cut short, so an overloaded tier degrades answers instead of failing them.
+ *
+ * <p>A skipped model gets no new latency samples, so its p95 lapses with the timer's
+ * percentile window and it is tried again a few minutes later.
+ */
+@Component
+public class ModelRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModelRouter.class);
+
+    public enum Task {
+        OUTLINE, TIPS, ENCOURAGEMENT, ANALYSIS;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record Tier(List<String> models, Duration deadline) {
+    }
+
+    /**
+     * The models one request may use, in order, and whether it was answered by a model
+     * other than the one the task prefers
+     */
+    public static final class Route {
+        private final Task task;
+        private final String preferred;
+        private final List<String> models;
+        private volatile boolean degraded;
+
+        private Route(Task task, String preferred, List<String> models) {
+            this.task = task;
+            this.preferred = preferred;
+            this.models = models;
+        }
+
+        /**
+         * The model this kind of request is meant for, whether or not it ends up answering
+         */
+        public String preferred() {
+            return preferred;
+        }
+
+        /**
+         * Whether any part of the answer came from a fallback model
+         */
+        public boolean degraded() {
+            return degraded;
+        }
+
+        private void answeredBy(String model) {
+            if (!model.equals(preferred)) {
+                degraded = true;
+            }
+        }
+    }
+
+    private final UpstreamResilience resilience;
+    private final Meter.MeterProvider<Counter> decisions;
+    private final Meter.MeterProvider<Counter> fallbacks;
+    private final Map<Task, Tier> tiers = new EnumMap<>(Task.class);
+    private final List<String> lightAnalysisModels;
+    private final long lightAnalysisMaxBytes;
+
+    public ModelRouter(UpstreamResilience resilience,
+                       MeterRegistry meterRegistry,
+                       @Value("${routing.outline.models:gemini-2.0-flash-exp,gemini-2.0-flash-lite}") List<String> outlineModels,
+                       @Value("${routing.outline.deadline:20s}") Duration outlineDeadline,
+                       @Value("${routing.tips.models:gemini-2.0-flash-lite,gemini-2.0-flash}") List<String> tipsModels,
+                       @Value("${routing.tips.deadline:15s}") Duration tipsDeadline,
+                       @Value("${routing.encouragement.models:gemini-2.0-flash-lite}") List<String> encouragementModels,
+                       @Value("${routing.encouragement.deadline:10s}") Duration encouragementDeadline,
+                       @Value("${routing.analysis.models:gemini-2.5-pro,gemini-2.5-flash}") List<String> analysisModels,
+                       @Value("${routing.analysis.deadline:3m}") Duration analysisDeadline,
+                       @Value("${routing.analysis.light-models:gemini-2.5-flash,gemini-2.0-flash}") List<String> lightAnalysisModels,
+                       @Value("${routing.analysis.light-max-size:8MB}") DataSize lightAnalysisMaxSize) {
+        this.resilience = resilience;
+        this.decisions = Counter.builder("speechmate.routing.decisions")
+            .description("Model chosen first for a request, and why")
+            .withRegistry(meterRegistry);
+        this.fallbacks = Counter.builder("speechmate.routing.fallbacks")
+            .description("Requests handed to the next model after a missed deadline or an overloaded upstream")
+            .withRegistry(meterRegistry);
+        this.tiers.put(Task.OUTLINE, tier(Task.OUTLINE, outlineModels, outlineDeadline));
+        this.tiers.put(Task.TIPS, tier(Task.TIPS, tipsModels, tipsDeadline));
+        this.tiers.put(Task.ENCOURAGEMENT, tier(Task.ENCOURAGEMENT, encouragementModels, encouragementDeadline));
+        this.tiers.put(Task.ANALYSIS, tier(Task.ANALYSIS, analysisModels, analysisDeadline));
+        this.lightAnalysisModels = List.copyOf(lightAnalysisModels);
+        this.lightAnalysisMaxBytes = lightAnalysisMaxSize.toBytes();
+    }
+
+    /**
+     * Route a text-only request
+     * @param endpoint Gemini endpoint whose health and latency decide, e.g. generateContent
+     */
+    public Route route(Task task, String endpoint) {
+        return route(task, endpoint, 0, List.of());
+    }
+
+    /**
+     * Route a request by what it carries. An analysis without audio or video that fits the
+     * light size limit goes to the light models, so it never waits behind long recordings.
+     * @param payloadBytes Total size of the uploaded files
+     * @param mimeTypes Content types of the uploaded files
+     */
+    public Route route(Task task, String endpoint, long payloadBytes, Collection<String> mimeTypes) {
+        Tier tier = tiers.get(task);
+        List<String> models = tier.models();
+        String reason = "preferred";
+        if (task == Task.ANALYSIS && !lightAnalysisModels.isEmpty()
+                && payloadBytes <= lightAnalysisMaxBytes && mimeTypes.stream().noneMatch(ModelRouter::isTimeBased)) {
+            models = lightAnalysisModels;
+            reason = "light";
+        }
+
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            String model = models.get(i);
+            String upstream = model + ":" + endpoint;
+            boolean last = i == models.size() - 1;
+            if (!last && resilience.isOpen(upstream)) {
+                reason = candidates.isEmpty() ? "circuit_open" : reason;
+                continue;
+            }
+            Optional<Duration> p95 = resilience.p95(upstream, task.tag());
+            if (!last && p95.isPresent() && p95.get().compareTo(tier.deadline()) > 0) {
+                reason = candidates.isEmpty() ? "slow" : reason;
+                continue;
+            }
+            candidates.add(model);
+        }
+
+        decisions.withTags("task", task.tag(), "model", candidates.get(0), "reason", reason).increment();
+        return new Route(task, models.get(0), List.copyOf(candidates));
+    }
+
+    /**
+     * Call the route's models in turn until one answers
+     * @param call Builds the lazy upstream call for a model
+     * @return The first answer; fails with the last model's error, or with any error that is
+     *         not worth another model, such as a 400
+     */
+    public <T> Mono<T> execute(Route route, Function<String, Mono<T>> call) {
+        return attempt(route, 0, call);
+    }
+
+    /**
+     * As {@link #execute}, for a streamed answer. A stream only moves to the next model
+     * before its first element; after that, part of the answer has already gone out.
+     */
+    public <T> Flux<T> executeMany(Route route, Function<String, Flux<T>> call) {
+        return attemptMany(route, 0, call);
+    }
+
+    private <T> Mono<T> attempt(Route route, int index, Function<String, Mono<T>> call) {
+        String model = route.models.get(index);
+        Mono<T> answer = Mono.defer(() -> call.apply(model));
+        if (index == route.models.size() - 1) {
+            return answer.doOnSuccess(value -> route.answeredBy(model));
+        }
+        return answer
+            .timeout(tiers.get(route.task).deadline())
+            .doOnSuccess(value -> route.answeredBy(model))
+            .onErrorResume(ModelRouter::isFallback, e -> {
+                fellBack(route, index, e);
+                return attempt(route, index + 1, call);
+            });
+    }
+
+    private <T> Flux<T> attemptMany(Route route, int index, Function<String, Flux<T>> call) {
+        String model = route.models.get(index);
+        boolean last = index == route.models.size() - 1;
+        return Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            Flux<T> answer = call.apply(model).doOnNext(item -> {
+                if (started.compareAndSet(false, true)) {
+                    route.answeredBy(model);
+                }
+            });
+            if (last) {
+                return answer;
+            }
+            return answer
+                .timeout(Mono.delay(tiers.get(route.task).deadline()), item -> Mono.never())
+                .onErrorResume(e -> !started.get() && isFallback(e), e -> {
+                    fellBack(route, index, e);
+                    return attemptMany(route, index + 1, call);
+                });
+        });
+    }
+
+    private void fellBack(Route route, int index, Throwable error) {
+        String from = route.models.get(index);
+        String to = route.models.get(index + 1);
+        String cause = error instanceof TimeoutException ? "timeout" : "unavailable";
+        LOGGER.warn("Gemini {} falling back from {} to {} ({}): {}", route.task.tag(), from, to, cause, error.getMessage());
+        fallbacks.withTags("task", route.task.tag(), "from", from, "to", to, "cause", cause).increment();
+    }
+
+    private static boolean isFallback(Throwable error) {
+        return UpstreamResilience.isTransient(error);
+    }
+
+    private static boolean isTimeBased(String mimeType) {
+        return mimeType == null || mimeType.startsWith("audio/") || mimeType.startsWith("video/");
+    }
+
+    private static Tier tier(Task task, List<String> models, Duration deadline) {
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("routing." + task.tag() + ".models must name at least one model");
+        }
+        return new Tier(List.copyOf(models), deadline);
+    }
+}
@@ -0,0 +1,91 @@
+package hack.thegsucoders.speechmate.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prompt parsed once into literal text and {@code ${name}} placeholders. Rendering
+ * appends the segments into a presized builder, with no format-string parsing or
+ * regex work per request. JSON braces in the text need no escaping.
+ */
+public final class PromptTemplate {
+
+    private sealed interface Segment permits Literal, Variable {
+    }
+
+    private record Literal(String text) implements Segment {
+    }
+
+    private record Variable(String name) implements Segment {
+    }
+
+    private final Segment[] segments;
+    /** Initial builder capacity: the literal text plus a typical value per placeholder */
+    private final int sizeHint;
+
+    private PromptTemplate(Segment[] segments, int literalLength, int variables) {
+        this.segments = segments;
+        this.sizeHint = literalLength + 32 * variables;
+    }
+
+    /**
+     * Parse a template
+     * @throws IllegalArgumentException if a placeholder is not closed or has no name
+     */
+    public static PromptTemplate compile(String template) {
+        List<Segment> segments = new ArrayList<>();
+        int literalLength = 0;
+        int variables = 0;
+        int position = 0;
+        while (position < template.length()) {
+            int start = template.indexOf("${", position);
+            if (start < 0) {
+                start = template.length();
+            }
+            if (start > position) {
+                segments.add(new Literal(template.substring(position, start)));
+                literalLength += start - position;
+            }
+            if (start == template.length()) {
+                break;
+            }
+            int end = template.indexOf('}', start + 2);
+            if (end < 0 || end == start + 2) {
+                throw new IllegalArgumentException("Malformed placeholder at offset " + start);
+            }
+            segments.add(new Variable(template.substring(start + 2, end)));
+            variables++;
+            position = end + 1;
+        }
+        return new PromptTemplate(segments.toArray(Segment[]::new), literalLength, variables);
+    }
+
+    /**
+     * Render with the given values; each value is appended with {@link String#valueOf(Object)}
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    public String render(Map<String, ?> values) {
+        StringBuilder out = new StringBuilder(sizeHint);
+        for (Segment segment : segments) {
+            if (segment instanceof Literal literal) {
+                out.append(literal.text());
+            } else if (segment instanceof Variable variable) {
+                Object value = values.get(variable.name());
+                if (value == null && !values.containsKey(variable.name())) {
+                    throw new IllegalArgumentException("No value for placeholder " + variable.name());
+                }
+                out.append(value);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * The template text when it has no placeholders, e.g. static instructions
+     * @throws IllegalArgumentException if the template has placeholders
+     */
+    public String text() {
+        return render(Map.of());
+    }
+}
@@ -0,0 +1,151 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Decides whether a long recording is analyzed in time windows rather than in one
+ * request, and prepares the windows. PCM WAV audio is split into one file per window;
+ * video is left whole and clipped by start and end offsets on the uploaded file, since
+ * its containers cannot be cut without a decoder. Other audio formats and requests with
+ * more than one recording are analyzed whole.
+ */
+@Component
+public class RecordingSegmenter {
+
+    /**
+     * A time window of the recording
+     * @param index Position of the window, from 0
+     * @param start Start in seconds from the beginning of the recording
+     * @param end End in seconds; the last window extends to the end of the recording
+     */
+    public record Window(int index, double start, double end) {
+        public double length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * How a request is analyzed in segments
+     * @param recording The recording being segmented
+     * @param others Remaining uploads, e.g. slides; sent with the first segment only
+     * @param windows Time windows covering the recording, in order
+     * @param pieces One file per window if the recording was split, otherwise empty and
+     *               the windows are clipped from the recording; the caller deletes them
+     */
+    public record Plan(SpooledMultipartFile recording,
+                       List<SpooledMultipartFile> others,
+                       List<Window> windows,
+                       List<SpooledMultipartFile> pieces) {
+    }
+
+    @Value("${gemini.spool-dir:${java.io.tmpdir}/speechmate-spool}")
+    private Path spoolDir;
+
+    private final boolean enabled;
+    private final double minDuration;
+    private final double window;
+    private final int parallelism;
+
+    private final DistributionSummary segments;
+
+    public RecordingSegmenter(MeterRegistry meterRegistry,
+                              @Value("${analysis.segments.enabled:true}") boolean enabled,
+                              @Value("${analysis.segments.min-duration:10m}") Duration minDuration,
+                              @Value("${analysis.segments.window:5m}") Duration window,
+                              @Value("${analysis.segments.parallelism:4}") int parallelism) {
+        this.enabled = enabled;
+        this.minDuration = minDuration.toSeconds();
+        this.window = window.toSeconds();
+        this.parallelism = parallelism;
+        this.segments = DistributionSummary.builder("speechmate.analysis.segments")
+            .description("Number of segments a long recording was analyzed in")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Most segments analyzed at once for one request
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Plan a segmented analysis of reduced uploads
+     * @param declaredDuration Recording length reported by the client, in seconds; used for
+     *                         video, whose length cannot be read without a decoder
+     * @param canClip Whether video can be uploaded once and clipped by offset, i.e. the Files API is enabled
+     * @return The plan, or empty if the uploads should be analyzed in a single request
+     */
+    public Mono<Optional<Plan>> plan(List<SpooledMultipartFile> files, Integer declaredDuration, boolean canClip) {
+        if (!enabled) {
+            return Mono.just(Optional.empty());
+        }
+        List<SpooledMultipartFile> recordings = files.stream().filter(RecordingSegmenter::isRecording).toList();
+        if (recordings.size() != 1) {
+            return Mono.just(Optional.empty());
+        }
+        SpooledMultipartFile recording = recordings.get(0);
+        List<SpooledMultipartFile> others = files.stream().filter(file -> file != recording).toList();
+
+        return Mono.fromCallable(() -> Optional.ofNullable(plan(recording, others, declaredDuration, canClip)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnNext(plan -> plan.ifPresent(p -> segments.record(p.windows().size())));
+    }
+
+    private Plan plan(SpooledMultipartFile recording, List<SpooledMultipartFile> others,
+                      Integer declaredDuration, boolean canClip) throws IOException {
+        String mimeType = recording.getContentType().toLowerCase(Locale.ROOT);
+        if (WavReducer.isWav(mimeType)) {
+            double duration = WavReducer.duration(recording.getPath());
+            if (duration < minDuration) {
+                return null;
+            }
+            List<Window> windows = windows(duration);
+            Files.createDirectories(spoolDir);
+            List<SpooledMultipartFile> pieces = new ArrayList<>(windows.size());
+            for (Path piece : WavReducer.split(recording.getPath(), spoolDir, windows)) {
+                pieces.add(recording.withContent(piece, "audio/wav"));
+            }
+            return pieces.size() == windows.size() ? new Plan(recording, others, windows, pieces) : null;
+        }
+        if (mimeType.startsWith("video/") && canClip && declaredDuration != null && declaredDuration >= minDuration) {
+            return new Plan(recording, others, windows(declaredDuration), List.of());
+        }
+        return null;
+    }
+
+    /**
+     * Split a duration into equal windows no longer than the configured window, with
+     * boundaries on whole seconds
+     */
+    private List<Window> windows(double duration) {
+        int count = (int) Math.ceil(duration / window);
+        List<Window> windows = new ArrayList<>(count);
+        double start = 0;
+        for (int i = 0; i < count; i++) {
+            double end = i == count - 1 ? duration : Math.round(duration * (i + 1) / count);
+            windows.add(new Window(i, start, end));
+            start = end;
+        }
+        return windows;
+    }
+
+    private static boolean isRecording(SpooledMultipartFile file) {
+        String mimeType = file.getContentType() != null ? file.getContentType().toLowerCase(Locale.ROOT) : "";
+        return mimeType.startsWith("audio/") || mimeType.startsWith("video/");
+    }
+}
@@ -0,0 +1,121 @@
+package hack.thegsucoders.speechmate.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key into a single call and keeps completed
+ * values for a fixed time-to-live. Unrelated keys never contend: the only shared
+ * structure is a {@link ConcurrentHashMap} and loads are asynchronous, so no thread
+ * is held while a load is in flight.
+ */
+class SingleFlightCache<K, V> {
+
+    /**
+     * How a {@link #get} call was satisfied
+     */
+    enum Source { UPSTREAM, COALESCED, CACHED }
+
+    /**
+     * Callback invoked once per {@link #get} call, e.g. to count coalesced requests
+     */
+    interface Listener {
+        void onRequest(Source source);
+    }
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        volatile long expiresAt = Long.MAX_VALUE;
+
+        boolean isExpired(long now) {
+            return future.isDone() && now - expiresAt >= 0;
+        }
+    }
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Listener listener;
+
+    SingleFlightCache(Duration ttl, int maxEntries, Listener listener) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.listener = listener;
+    }
+
+    /**
+     * Return the cached value for the key, join an in-flight load of it, or start a
+     * new load. The loader runs at most once per key at a time; failed loads are not cached.
+     */
+    CompletableFuture<V> get(K key, Supplier<CompletableFuture<V>> loader) {
+        while (true) {
+            long now = System.nanoTime();
+            Entry<V> existing = entries.get(key);
+            if (existing != null) {
+                if (existing.isExpired(now)) {
+                    entries.remove(key, existing);
+                    continue;
+                }
+                listener.onRequest(existing.future.isDone() ? Source.CACHED : Source.COALESCED);
+                return existing.future;
+            }
+
+            Entry<V> created = new Entry<>();
+            if (entries.putIfAbsent(key, created) != null) {
+                continue;
+            }
+
+            listener.onRequest(Source.UPSTREAM);
+            CompletableFuture<V> load;
+            try {
+                load = loader.get();
+            } catch (RuntimeException e) {
+                load = CompletableFuture.failedFuture(e);
+            }
+            load.whenComplete((value, error) -> {
+                if (error != null) {
+                    entries.remove(key, created);
+                    created.future.completeExceptionally(unwrap(error));
+                } else {
+                    created.expiresAt = System.nanoTime() + ttlNanos;
+                    created.future.complete(value);
+                    trim();
+                }
+            });
+            return created.future;
+        }
+    }
+
+    /**
+     * Drop expired entries once the cache grows past its bound, then the entries closest to expiry
+     */
+    private void trim() {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+
+        while (entries.size() > maxEntries) {
+            Map.Entry<K, Entry<V>> oldest = null;
+            for (Map.Entry<K, Entry<V>> candidate : entries.entrySet()) {
+                if (candidate.getValue().future.isDone()
+                        && (oldest == null || candidate.getValue().expiresAt - oldest.getValue().expiresAt < 0)) {
+                    oldest = candidate;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,122 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.SpeechOutline;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Splits speech text into chunks that can be synthesized independently. Chunks end at
+ * sentence boundaries and never span two sections or paragraphs, so the joins fall where
+ * a speaker would pause anyway; consecutive sentences are packed up to the size limit.
+ */
+final class SpeechChunker {
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SpeechChunker() {
+    }
+
+    /**
+     * Spoken text of an outline section: its heading followed by its talking points and evidence
+     */
+    static String narrate(SpeechOutline.Section section) {
+        List<String> sentences = new ArrayList<>();
+        sentences.add(section.heading());
+        if (section.talkingPoints() != null) {
+            sentences.addAll(section.talkingPoints());
+        }
+        if (section.evidence() != null) {
+            sentences.addAll(section.evidence());
+        }
+        StringBuilder text = new StringBuilder();
+        for (String sentence : sentences) {
+            if (sentence == null || sentence.isBlank()) {
+                continue;
+            }
+            String trimmed = sentence.strip();
+            text.append(trimmed);
+            if (".!?".indexOf(trimmed.charAt(trimmed.length() - 1)) < 0) {
+                text.append('.');
+            }
+            text.append(' ');
+        }
+        return text.toString().strip();
+    }
+
+    /**
+     * Passages of free text, one per paragraph
+     */
+    static List<String> paragraphs(String text) {
+        List<String> paragraphs = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_BREAK.split(text)) {
+            if (!paragraph.isBlank()) {
+                paragraphs.add(paragraph);
+            }
+        }
+        return paragraphs;
+    }
+
+    /**
+     * @param passages Sections or paragraphs in speaking order
+     * @param maxChars Largest chunk; a single longer sentence is split between words
+     * @return Chunks in speaking order
+     */
+    static List<String> chunk(List<String> passages, int maxChars) {
+        List<String> chunks = new ArrayList<>();
+        for (String passage : passages) {
+            StringBuilder chunk = new StringBuilder();
+            for (String sentence : sentences(WHITESPACE.matcher(passage.strip()).replaceAll(" "))) {
+                for (String piece : split(sentence, maxChars)) {
+                    if (chunk.length() > 0 && chunk.length() + 1 + piece.length() > maxChars) {
+                        chunks.add(chunk.toString());
+                        chunk.setLength(0);
+                    }
+                    if (chunk.length() > 0) {
+                        chunk.append(' ');
+                    }
+                    chunk.append(piece);
+                }
+            }
+            if (chunk.length() > 0) {
+                chunks.add(chunk.toString());
+            }
+        }
+        return chunks;
+    }
+
+    private static List<String> sentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.ENGLISH);
+        iterator.setText(text);
+        for (int start = iterator.first(), end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            String sentence = text.substring(start, end).strip();
+            if (!sentence.isEmpty()) {
+                sentences.add(sentence);
+            }
+        }
+        return sentences;
+    }
+
+    private static List<String> split(String sentence, int maxChars) {
+        if (sentence.length() <= maxChars) {
+            return List.of(sentence);
+        }
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (sentence.length() - start > maxChars) {
+            int end = sentence.lastIndexOf(' ', start + maxChars);
+            if (end <= start) {
+                end = start + maxChars;
+            }
+            pieces.add(sentence.substring(start, end).strip());
+            start = end;
+        }
+        pieces.add(sentence.substring(start).strip());
+        return pieces;
+    }
+}
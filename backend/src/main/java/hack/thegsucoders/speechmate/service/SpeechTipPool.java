@@ -0,0 +1,163 @@
+package hack.thegsucoders.speechmate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory pool of pre-generated speech tips. Requests are served by sampling the
+ * pool; a scheduled task tops it up from Gemini whenever it drops below the low-water
+ * mark or its contents get stale, so upstream calls happen a few times per hour at most.
+ */
+@Service
+public class SpeechTipPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpeechTipPool.class);
+
+    private final GeminiService geminiService;
+
+    private final int capacity;
+    private final int lowWater;
+    private final int batchSize;
+    private final Duration maxAge;
+
+    /** Insertion-ordered tips, oldest first. Guarded by {@link #refillLock}. */
+    private final ArrayDeque<String> tips = new ArrayDeque<>();
+    private final Set<String> seen = new HashSet<>();
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private final AtomicReference<Mono<Void>> inFlight = new AtomicReference<>();
+
+    /** Immutable copy of {@link #tips} read without locking on the request path. */
+    private volatile List<String> snapshot = List.of();
+    private volatile Instant lastRefill = Instant.EPOCH;
+
+    public SpeechTipPool(GeminiService geminiService,
+                         @Value("${tips.pool.capacity:200}") int capacity,
+                         @Value("${tips.pool.low-water:60}") int lowWater,
+                         @Value("${tips.pool.batch-size:25}") int batchSize,
+                         @Value("${tips.pool.max-age:2h}") Duration maxAge) {
+        this.geminiService = geminiService;
+        this.capacity = capacity;
+        this.lowWater = lowWater;
+        this.batchSize = batchSize;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Pick distinct tips at random from the pool
+     * @param count Number of tips wanted (default 20); capped at the pool size
+     * @return Tips without duplicates, in random order
+     */
+    public Mono<List<String>> sample(Integer count) {
+        if (snapshot.isEmpty()) {
+            // Cold pool: wait for the refill without holding the request thread
+            return refill().then(Mono.fromSupplier(() -> pick(snapshot, count)));
+        }
+        return Mono.just(pick(snapshot, count));
+    }
+
+    private static List<String> pick(List<String> pool, Integer count) {
+        int wanted = Math.min(count != null ? count : 20, pool.size());
+        if (wanted <= 0) {
+            return List.of();
+        }
+
+        // Partial Fisher-Yates over an index array: O(count) swaps, no duplicate picks
+        int[] indexes = new int[pool.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> result = new ArrayList<>(wanted);
+        for (int i = 0; i < wanted; i++) {
+            int j = random.nextInt(i, indexes.length);
+            int picked = indexes[j];
+            indexes[j] = indexes[i];
+            indexes[i] = picked;
+            result.add(pool.get(picked));
+        }
+        return result;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread.ofVirtual().name("tip-pool-warmup").start(this::refillIfNeeded);
+    }
+
+    /**
+     * Top up the pool when it is below the low-water mark or older than the max age
+     */
+    @Scheduled(fixedDelayString = "${tips.pool.refresh-interval:20m}", initialDelayString = "${tips.pool.refresh-interval:20m}")
+    public void refillIfNeeded() {
+        boolean stale = Instant.now().isAfter(lastRefill.plus(maxAge));
+        if (snapshot.size() < lowWater || stale) {
+            refill().block();
+        }
+    }
+
+    /**
+     * Start a refill, or join the one already in flight so upstream is only called once.
+     * The returned Mono completes when the refill has finished, successfully or not;
+     * cancelling it does not cancel the refill.
+     */
+    private Mono<Void> refill() {
+        while (true) {
+            Mono<Void> current = inFlight.get();
+            if (current != null) {
+                return current;
+            }
+            Sinks.Empty<Void> done = Sinks.empty();
+            Mono<Void> created = done.asMono();
+            if (!inFlight.compareAndSet(null, created)) {
+                continue;
+            }
+            geminiService.generateSpeechTips(batchSize)
+                .doFinally(signal -> {
+                    inFlight.set(null);
+                    done.tryEmitEmpty();
+                })
+                .subscribe(this::add, e -> LOGGER.warn("Failed to refill speech tip pool: {}", e.getMessage()));
+            return created;
+        }
+    }
+
+    private void add(List<String> batch) {
+        refillLock.lock();
+        try {
+            for (String tip : batch) {
+                String value = tip != null ? tip.strip() : "";
+                if (!value.isEmpty() && seen.add(value)) {
+                    tips.addLast(value);
+                }
+            }
+            while (tips.size() > capacity) {
+                seen.remove(tips.removeFirst());
+            }
+            snapshot = List.copyOf(tips);
+            lastRefill = Instant.now();
+        } finally {
+            refillLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hack.thegsucoders.speechmate.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A multipart upload that has been moved out of the request into a spool file,
+ * so it can still be read after the originating request has completed.
+ */
+public class SpooledMultipartFile implements MultipartFile {
+
+    private final Path path;
+    private final String name;
+    private final String originalFilename;
+    private final String contentType;
+    private final long size;
+
+    private SpooledMultipartFile(Path path, String name, String originalFilename, String contentType, long size) {
+        this.path = path;
+        this.name = name;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.size = size;
+    }
+
+    /**
+     * Move an upload into the given spool file
+     * @param file Upload from the current request
+     * @param target Destination file (replaced if it exists)
+     * @return File backed by the spool copy
+     */
+    public static SpooledMultipartFile spool(MultipartFile file, Path target) throws IOException {
+        file.transferTo(target.toFile());
+        return new SpooledMultipartFile(target, file.getName(), file.getOriginalFilename(),
+            file.getContentType(), Files.size(target));
+    }
+
+    /**
+     * The same upload with its content replaced, e.g. by a smaller re-encoded copy
+     * @param replacement File holding the new content
+     * @param replacementType MIME type of the new content
+     */
+    public SpooledMultipartFile withContent(Path replacement, String replacementType) throws IOException {
+        return new SpooledMultipartFile(replacement, name, originalFilename, replacementType, Files.size(replacement));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        transferTo(dest.toPath());
+    }
+
+    /**
+     * Moves the spool file rather than copying it; this instance must not be read afterwards.
+     */
+    @Override
+    public void transferTo(Path dest) throws IOException {
+        Files.move(path, dest, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,260 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache for synthesized speech. Clips are keyed by a SHA-256 of the
+ * normalized text, voice and model, kept in a byte-bounded in-memory LRU for hot clips
+ * and in a size-bounded directory of MP3 files that survives restarts.
+ */
+@Service
+public class TtsAudioCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TtsAudioCache.class);
+
+	private static final String SUFFIX = ".mp3";
+
+	private final Path directory;
+	private final long memoryLimit;
+	private final long memoryEntryLimit;
+	private final long diskLimit;
+
+	/** Access-ordered; guarded by {@code this}. */
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+	private volatile long memoryBytes;
+
+	/** Access-ordered index of the files on disk and their sizes; guarded by {@code this}. */
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(256, 0.75f, true);
+	private volatile long diskBytes;
+
+	private final Counter memoryHits;
+	private final Counter diskHits;
+	private final Counter misses;
+	private final Counter memoryEvictions;
+	private final Counter diskEvictions;
+
+	public TtsAudioCache(MeterRegistry meterRegistry,
+						 @Value("${tts.cache.dir:${java.io.tmpdir}/speechmate-tts-cache}") Path directory,
+						 @Value("${tts.cache.memory-size:32MB}") DataSize memoryLimit,
+						 @Value("${tts.cache.memory-entry-size:2MB}") DataSize memoryEntryLimit,
+						 @Value("${tts.cache.disk-size:1GB}") DataSize diskLimit) {
+		this.directory = directory;
+		this.memoryLimit = memoryLimit.toBytes();
+		this.memoryEntryLimit = memoryEntryLimit.toBytes();
+		this.diskLimit = diskLimit.toBytes();
+
+		this.memoryHits = Counter.builder("speechmate.tts.cache.requests").tag("result", "hit").tag("tier", "memory").register(meterRegistry);
+		this.diskHits = Counter.builder("speechmate.tts.cache.requests").tag("result", "hit").tag("tier", "disk").register(meterRegistry);
+		this.misses = Counter.builder("speechmate.tts.cache.requests").tag("result", "miss").tag("tier", "none").register(meterRegistry);
+		this.memoryEvictions = Counter.builder("speechmate.tts.cache.evictions").tag("tier", "memory").register(meterRegistry);
+		this.diskEvictions = Counter.builder("speechmate.tts.cache.evictions").tag("tier", "disk").register(meterRegistry);
+		Gauge.builder("speechmate.tts.cache.size", this, cache -> cache.memoryBytes).tag("tier", "memory").baseUnit("bytes").register(meterRegistry);
+		Gauge.builder("speechmate.tts.cache.size", this, cache -> cache.diskBytes).tag("tier", "disk").baseUnit("bytes").register(meterRegistry);
+	}
+
+	/**
+	 * Rebuild the disk index from the cache directory, least recently used first
+	 */
+	@PostConstruct
+	public void loadIndex() throws IOException {
+		Files.createDirectories(directory);
+		List<Path> files;
+		try (Stream<Path> listing = Files.list(directory)) {
+			files = new ArrayList<>(listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).toList());
+		}
+		files.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+
+		synchronized (this) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				long size = Files.size(file);
+				disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+				diskBytes += size;
+			}
+			evictDisk();
+		}
+	}
+
+	/**
+	 * Cache key for a synthesis request. Whitespace differences in the text do not change the key.
+	 */
+	public static String key(String text, String voiceId, String modelId) {
+		String normalized = text.strip().replaceAll("\\s+", " ");
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(voiceId.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	/**
+	 * Look up a clip, checking memory first and then disk. Disk hits are served from
+	 * the file and, if small enough, promoted into the memory tier.
+	 */
+	public Optional<Resource> get(String key) {
+		synchronized (this) {
+			byte[] cached = memory.get(key);
+			if (cached != null) {
+				memoryHits.increment();
+				return Optional.of(new ByteArrayResource(cached));
+			}
+			if (disk.get(key) == null) {
+				misses.increment();
+				return Optional.empty();
+			}
+		}
+
+		Path file = path(key);
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			if (Files.size(file) <= memoryEntryLimit) {
+				byte[] bytes = Files.readAllBytes(file);
+				synchronized (this) {
+					putMemory(key, bytes);
+				}
+				diskHits.increment();
+				return Optional.of(new ByteArrayResource(bytes));
+			}
+			diskHits.increment();
+			return Optional.of(new FileSystemResource(file));
+		} catch (IOException e) {
+			// File was evicted or removed underneath us
+			synchronized (this) {
+				Long size = disk.remove(key);
+				if (size != null) {
+					diskBytes -= size;
+				}
+			}
+			misses.increment();
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Store a freshly synthesized clip in both tiers
+	 */
+	public void put(String key, byte[] audio) {
+		Path file = path(key);
+		try {
+			Path temp = newTempFile();
+			Files.write(temp, audio);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write TTS cache entry {}: {}", key, e.getMessage());
+			file = null;
+		}
+
+		synchronized (this) {
+			putMemory(key, audio);
+			if (file != null) {
+				indexDisk(key, audio.length);
+			}
+		}
+	}
+
+	/**
+	 * Create a scratch file in the cache directory for a clip that is still being received
+	 */
+	public Path newTempFile() throws IOException {
+		return Files.createTempFile(directory, "partial-", ".tmp");
+	}
+
+	/**
+	 * Store a clip that was written to a file from {@link #newTempFile()}; the file is moved into the cache
+	 */
+	public void putFile(String key, Path temp) throws IOException {
+		Path file = path(key);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		long size = Files.size(file);
+		byte[] audio = size <= memoryEntryLimit ? Files.readAllBytes(file) : null;
+
+		synchronized (this) {
+			if (audio != null) {
+				putMemory(key, audio);
+			}
+			indexDisk(key, size);
+		}
+	}
+
+	private void indexDisk(String key, long size) {
+		Long previous = disk.put(key, size);
+		diskBytes += size - (previous != null ? previous : 0);
+		evictDisk();
+	}
+
+	private void putMemory(String key, byte[] audio) {
+		if (audio.length > memoryEntryLimit) {
+			return;
+		}
+		byte[] previous = memory.put(key, audio);
+		memoryBytes += audio.length - (previous != null ? previous.length : 0);
+
+		Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+		while (memoryBytes > memoryLimit && eldest.hasNext()) {
+			memoryBytes -= eldest.next().getValue().length;
+			eldest.remove();
+			memoryEvictions.increment();
+		}
+	}
+
+	private void evictDisk() {
+		Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+		while (diskBytes > diskLimit && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			try {
+				Files.deleteIfExists(path(entry.getKey()));
+			} catch (IOException e) {
+				LOGGER.warn("Failed to evict TTS cache entry {}: {}", entry.getKey(), e.getMessage());
+			}
+			diskBytes -= entry.getValue();
+			eldest.remove();
+			diskEvictions.increment();
+		}
+	}
+
+	private Path path(String key) {
+		return directory.resolve(key + SUFFIX);
+	}
+
+	private static FileTime lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+}
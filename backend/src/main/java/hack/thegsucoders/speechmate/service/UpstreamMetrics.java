@@ -0,0 +1,128 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.UsageMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latency, payload size and token usage of upstream calls. Every meter is tagged with
+ * the model (or service) and endpoint it belongs to, e.g. {@code gemini-2.5-pro} and
+ * {@code generateContent}.
+ */
+@Component
+public class UpstreamMetrics {
+
+    private final Meter.MeterProvider<Timer> requestTimer;
+    private final Meter.MeterProvider<DistributionSummary> requestBytes;
+    private final Meter.MeterProvider<DistributionSummary> responseBytes;
+    private final Meter.MeterProvider<DistributionSummary> uploadBytes;
+    private final Meter.MeterProvider<Counter> tokens;
+
+    public UpstreamMetrics(MeterRegistry meterRegistry) {
+        this.requestTimer = Timer.builder("speechmate.upstream.requests")
+            .description("Duration of upstream calls, one sample per attempt")
+            .publishPercentileHistogram()
+            .withRegistry(meterRegistry);
+        this.requestBytes = DistributionSummary.builder("speechmate.upstream.request.size")
+            .description("Size of request bodies sent upstream")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .withRegistry(meterRegistry);
+        this.responseBytes = DistributionSummary.builder("speechmate.upstream.response.size")
+            .description("Size of response bodies received from upstream")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .withRegistry(meterRegistry);
+        this.uploadBytes = DistributionSummary.builder("speechmate.upload.size")
+            .description("Size of files uploaded for analysis")
+            .baseUnit("bytes")
+            .publishPercentileHistogram()
+            .withRegistry(meterRegistry);
+        this.tokens = Counter.builder("speechmate.gemini.tokens")
+            .description("Tokens reported in Gemini usageMetadata")
+            .withRegistry(meterRegistry);
+    }
+
+    /**
+     * Time each subscription to an upstream call, tagged with its outcome
+     */
+    public <T> Mono<T> timed(String model, String endpoint, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call
+                .doOnSuccess(value -> record(model, endpoint, "SUCCESS", start, recorded))
+                .doOnError(e -> record(model, endpoint, outcome(e), start, recorded))
+                .doOnCancel(() -> record(model, endpoint, "CANCELLED", start, recorded));
+        });
+    }
+
+    /**
+     * Time a streamed upstream call from subscription until the stream ends
+     */
+    public <T> Flux<T> timed(String model, String endpoint, Flux<T> call) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call
+                .doOnComplete(() -> record(model, endpoint, "SUCCESS", start, recorded))
+                .doOnError(e -> record(model, endpoint, outcome(e), start, recorded))
+                .doOnCancel(() -> record(model, endpoint, "CANCELLED", start, recorded));
+        });
+    }
+
+    public void requestBytes(String model, String endpoint, long bytes) {
+        requestBytes.withTags("model", model, "endpoint", endpoint).record(bytes);
+    }
+
+    public void responseBytes(String model, String endpoint, long bytes) {
+        responseBytes.withTags("model", model, "endpoint", endpoint).record(bytes);
+    }
+
+    /**
+     * Record an uploaded file, tagged with the top-level media type (audio, video, image, application)
+     */
+    public void upload(String mimeType, long bytes) {
+        String type = mimeType != null && mimeType.indexOf('/') > 0
+            ? mimeType.substring(0, mimeType.indexOf('/')).toLowerCase(Locale.ROOT)
+            : "unknown";
+        uploadBytes.withTags("type", type).record(bytes);
+    }
+
+    public void usage(String model, UsageMetadata usage) {
+        increment(model, "prompt", usage.promptTokenCount());
+        increment(model, "candidates", usage.candidatesTokenCount());
+        increment(model, "cached", usage.cachedContentTokenCount());
+    }
+
+    private void increment(String model, String type, int count) {
+        if (count > 0) {
+            tokens.withTags("model", model, "type", type).increment(count);
+        }
+    }
+
+    private void record(String model, String endpoint, String outcome, long start, AtomicBoolean recorded) {
+        if (recorded.compareAndSet(false, true)) {
+            requestTimer.withTags("model", model, "endpoint", endpoint, "outcome", outcome)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String outcome(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return response.getStatusCode().is4xxClientError() ? "CLIENT_ERROR" : "SERVER_ERROR";
+        }
+        return "UNKNOWN";
+    }
+}
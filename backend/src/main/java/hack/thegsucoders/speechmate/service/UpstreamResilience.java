@@ -0,0 +1,306 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Retries, circuit breaking and hedging for upstream calls. Each upstream, named by
+ * model and endpoint (e.g. {@code gemini-2.0-flash-lite:generateContent}), gets its own
+ * circuit breaker. Latency statistics, and so hedge thresholds, are kept per upstream and
+ * task, since a 32-token encouragement and a 2048-token outline on the same model have
+ * very different response times.
+ */
+@Component
+public class UpstreamResilience {
+
+    public enum Policy {
+        /** One attempt; for expensive calls such as multimodal analysis */
+        SINGLE,
+        /** Retry transient failures with jittered exponential backoff, honouring Retry-After */
+        RETRY,
+        /** As {@link #RETRY}, plus a second request once the first is slower than the recent p95 */
+        RETRY_HEDGED
+    }
+
+    private final class Upstream {
+        final String name;
+        final CircuitBreaker breaker;
+        final Map<String, Stats> stats = new ConcurrentHashMap<>();
+        final Counter retries;
+        final Counter rejected;
+
+        Upstream(String name) {
+            this.name = name;
+            this.breaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDuration);
+            this.retries = Counter.builder("speechmate.upstream.retries").tag("upstream", name).register(meterRegistry);
+            this.rejected = Counter.builder("speechmate.upstream.rejected")
+                .description("Calls failed fast because the circuit was open")
+                .tag("upstream", name)
+                .register(meterRegistry);
+            Gauge.builder("speechmate.upstream.circuit.state", breaker, b -> b.state().ordinal())
+                .description("Circuit state: 0 closed, 1 open, 2 half-open")
+                .tag("upstream", name)
+                .register(meterRegistry);
+        }
+
+        Stats stats(String task) {
+            return stats.computeIfAbsent(task, t -> new Stats(name, t));
+        }
+    }
+
+    /**
+     * Latency of one task's calls to an upstream
+     */
+    private final class Stats {
+        final Timer latency;
+        final Counter hedges;
+
+        Stats(String upstream, String task) {
+            this.latency = Timer.builder("speechmate.upstream.latency")
+                .description("Latency of successful upstream attempts")
+                .tag("upstream", upstream)
+                .tag("task", task)
+                .publishPercentiles(HEDGE_PERCENTILE)
+                .register(meterRegistry);
+            this.hedges = Counter.builder("speechmate.upstream.hedges")
+                .tag("upstream", upstream)
+                .tag("task", task)
+                .register(meterRegistry);
+        }
+    }
+
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    /** Task for callers that make only one kind of call to an upstream */
+    public static final String DEFAULT_TASK = "default";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration maxRetryAfter;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final boolean hedgeEnabled;
+    private final long hedgeMinSamples;
+
+    public UpstreamResilience(MeterRegistry meterRegistry,
+                              @Value("${resilience.retry.max-attempts:3}") int maxAttempts,
+                              @Value("${resilience.retry.initial-backoff:200ms}") Duration initialBackoff,
+                              @Value("${resilience.retry.max-backoff:2s}") Duration maxBackoff,
+                              @Value("${resilience.retry.max-retry-after:5s}") Duration maxRetryAfter,
+                              @Value("${resilience.circuit.window-size:20}") int windowSize,
+                              @Value("${resilience.circuit.minimum-calls:10}") int minimumCalls,
+                              @Value("${resilience.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+                              @Value("${resilience.circuit.open-duration:30s}") Duration openDuration,
+                              @Value("${resilience.hedge.enabled:true}") boolean hedgeEnabled,
+                              @Value("${resilience.hedge.min-samples:50}") long hedgeMinSamples) {
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.maxRetryAfter = maxRetryAfter;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinSamples = hedgeMinSamples;
+    }
+
+    /**
+     * Run an upstream call under the given policy. The call is re-subscribed for each
+     * attempt, so it must be lazy, e.g. a WebClient exchange.
+     * @return The call's result; fails with {@link UpstreamUnavailableException} if the
+     *         circuit is open or the upstream kept failing transiently
+     */
+    public <T> Mono<T> execute(String upstream, Policy policy, Mono<T> call) {
+        return execute(upstream, DEFAULT_TASK, policy, call);
+    }
+
+    /**
+     * As {@link #execute(String, Policy, Mono)}, with latency and hedging tracked for the given
+     * task only; the circuit is still shared by every task on the upstream
+     * @param task Kind of call, e.g. {@code tips}
+     */
+    public <T> Mono<T> execute(String upstream, String task, Policy policy, Mono<T> call) {
+        Upstream target = upstreams.computeIfAbsent(upstream, Upstream::new);
+        Stats stats = target.stats(task);
+
+        Mono<T> attempt = attempt(target, stats, call);
+        if (policy == Policy.RETRY_HEDGED && hedgeEnabled) {
+            attempt = hedge(stats, attempt);
+        }
+        if (policy != Policy.SINGLE) {
+            attempt = attempt.retryWhen(retry(target));
+        }
+        return attempt.onErrorMap(
+            e -> isTransient(e) && !(e instanceof UpstreamUnavailableException),
+            e -> new UpstreamUnavailableException(upstream, retryAfter(e).orElse(maxRetryAfter), e)
+        );
+    }
+
+    /**
+     * Recent p95 latency of one task's successful attempts, once there are enough samples to go by
+     */
+    public Optional<Duration> p95(String upstream, String task) {
+        Upstream target = upstreams.get(upstream);
+        Stats stats = target == null ? null : target.stats.get(task);
+        return stats == null ? Optional.empty() : hedgeThreshold(stats);
+    }
+
+    /**
+     * Whether calls to the upstream currently fail fast because its circuit is open
+     */
+    public boolean isOpen(String upstream) {
+        Upstream target = upstreams.get(upstream);
+        return target != null && target.breaker.remainingOpen().compareTo(Duration.ZERO) > 0;
+    }
+
+    private <T> Mono<T> attempt(Upstream target, Stats stats, Mono<T> call) {
+        return Mono.defer(() -> {
+            CircuitBreaker.Permit permit = target.breaker.tryAcquire();
+            if (permit == null) {
+                target.rejected.increment();
+                return Mono.error(new UpstreamUnavailableException(target.name, target.breaker.remainingOpen(), null));
+            }
+            long start = System.nanoTime();
+            return call
+                .doOnSuccess(value -> {
+                    target.breaker.onSuccess(permit);
+                    stats.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                })
+                .doOnError(e -> {
+                    // Caller errors such as 400s say nothing about the upstream's health
+                    if (isTransient(e)) {
+                        target.breaker.onFailure(permit);
+                    } else {
+                        target.breaker.onSuccess(permit);
+                    }
+                })
+                .doOnCancel(() -> target.breaker.onCancel(permit));
+        });
+    }
+
+    /**
+     * Race a second attempt against the first once it has taken longer than the recent
+     * p95; whichever answers first wins and the other is cancelled. A failing hedge never
+     * cuts the first attempt short.
+     */
+    private <T> Mono<T> hedge(Stats stats, Mono<T> attempt) {
+        return Mono.defer(() -> {
+            Optional<Duration> threshold = hedgeThreshold(stats);
+            if (threshold.isEmpty()) {
+                return attempt;
+            }
+            Mono<T> hedged = Mono.delay(threshold.get())
+                .then(Mono.defer(() -> {
+                    stats.hedges.increment();
+                    return attempt;
+                }))
+                .onErrorResume(e -> Mono.never());
+            return Mono.firstWithSignal(attempt, hedged);
+        });
+    }
+
+    private Optional<Duration> hedgeThreshold(Stats stats) {
+        if (stats.latency.count() < hedgeMinSamples) {
+            return Optional.empty();
+        }
+        for (ValueAtPercentile percentile : stats.latency.takeSnapshot().percentileValues()) {
+            if (percentile.percentile() == HEDGE_PERCENTILE && percentile.value() > 0) {
+                return Optional.of(Duration.ofNanos((long) percentile.value(TimeUnit.NANOSECONDS)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Retry retry(Upstream target) {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable error = signal.failure();
+            long failedAttempts = signal.totalRetries() + 1;
+            if (failedAttempts >= maxAttempts || !isTransient(error) || error instanceof UpstreamUnavailableException) {
+                return Mono.error(error);
+            }
+
+            Optional<Duration> retryAfter = retryAfter(error);
+            if (retryAfter.isPresent() && retryAfter.get().compareTo(maxRetryAfter) > 0) {
+                // Not worth holding the request that long; let the client come back instead
+                return Mono.error(error);
+            }
+            target.retries.increment();
+            return Mono.delay(retryAfter.orElseGet(() -> backoff(signal.totalRetries())));
+        }));
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half the delay is fixed, half random
+     */
+    private Duration backoff(long retry) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(retry, 20));
+        long half = ceiling / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    /**
+     * Rate limits, server errors and network failures are worth retrying and count against the circuit
+     */
+    static boolean isTransient(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+        }
+        return error instanceof WebClientRequestException
+            || error instanceof TimeoutException
+            || error instanceof UpstreamUnavailableException;
+    }
+
+    /**
+     * Parse a Retry-After header given either as seconds or as an HTTP date
+     */
+    private static Optional<Duration> retryAfter(Throwable error) {
+        if (!(error instanceof WebClientResponseException response)) {
+            return Optional.empty();
+        }
+        String value = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Duration.ofSeconds(Long.parseLong(value.strip())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.strip(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration wait = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                return Optional.of(wait.isNegative() ? Duration.ZERO : wait);
+            } catch (DateTimeParseException ignored) {
+                return Optional.empty();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package hack.thegsucoders.speechmate.service;
+
+import java.time.Duration;
+
+/**
+ * An upstream is overloaded or failing: its circuit is open, or it kept answering
+ * with transient errors after retries. Clients should be told to come back later.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public UpstreamUnavailableException(String upstream, Duration retryAfter, Throwable cause) {
+        super(upstream + " is temporarily unavailable, please try again shortly", cause);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * How long the client should wait before trying again
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
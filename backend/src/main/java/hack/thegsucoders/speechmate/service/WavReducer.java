@@ -0,0 +1,298 @@
+package hack.thegsucoders.speechmate.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rewrites PCM WAV audio as 16-bit mono at a speech sample rate. Channels are averaged,
+ * and resampling averages the input samples falling into each output period, which
+ * doubles as the anti-aliasing low-pass filter. Also splits recordings into time
+ * windows. Streams in both directions, so memory use does not depend on the recording
+ * length.
+ */
+final class WavReducer {
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int HEADER_SIZE = 44;
+    private static final int OUTPUT_BITS = 16;
+    /** Sample rates outside this range are not real recordings, only headers that would size buffers absurdly */
+    private static final int MIN_SAMPLE_RATE = 8_000;
+    private static final int MAX_SAMPLE_RATE = 192_000;
+
+    /**
+     * Format fields of a PCM WAV file, positioned at the start of its sample data
+     */
+    record Format(int channels, int sampleRate, int bitsPerSample, long dataSize) {
+        int frameSize() {
+            return channels * (bitsPerSample / 8);
+        }
+    }
+
+    private WavReducer() {
+    }
+
+    /**
+     * Write a reduced copy of a WAV file
+     * @param maxSampleRate Highest sample rate to keep; higher rates are resampled down to it
+     * @return false if the file is not integer PCM WAV or is already 16-bit mono at or below the rate,
+     *         in which case nothing useful was written
+     */
+    static boolean reduce(Path source, Path target, int maxSampleRate) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 64 * 1024))) {
+            Format format = readHeader(in);
+            if (format == null) {
+                return false;
+            }
+            int outputRate = Math.min(format.sampleRate(), maxSampleRate);
+            if (format.channels() == 1 && format.bitsPerSample() == OUTPUT_BITS && outputRate == format.sampleRate()) {
+                return false;
+            }
+
+            long samples;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+                out.write(new byte[HEADER_SIZE]);
+                samples = convert(in, out, format, outputRate);
+            }
+            writeHeader(target, 1, outputRate, OUTPUT_BITS, samples * (OUTPUT_BITS / 8));
+            return true;
+        }
+    }
+
+    /**
+     * Length of a WAV recording
+     * @return Duration in seconds, or -1 if the file is not integer PCM WAV
+     */
+    static double duration(Path source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            Format format = readHeader(in);
+            if (format == null) {
+                return -1;
+            }
+            // With an unknown data size the rest of the file is sample data
+            long dataSize = format.dataSize() != Long.MAX_VALUE ? format.dataSize() : in.available();
+            return (double) (dataSize / format.frameSize()) / format.sampleRate();
+        }
+    }
+
+    /**
+     * Copy consecutive time windows of a WAV recording into separate files, keeping its format
+     * @param windows Windows in order; the last one extends to the end of the recording
+     * @return One file per window in {@code directory}; the caller deletes them. Empty if the
+     *         file is not integer PCM WAV.
+     */
+    static List<Path> split(Path source, Path directory, List<RecordingSegmenter.Window> windows) throws IOException {
+        List<Path> pieces = new ArrayList<>(windows.size());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 64 * 1024))) {
+            Format format = readHeader(in);
+            if (format == null) {
+                return pieces;
+            }
+            int frameSize = format.frameSize();
+            long remaining = format.dataSize() / frameSize * frameSize;
+            byte[] buffer = new byte[64 * 1024 / frameSize * frameSize];
+            long position = 0;
+
+            for (int i = 0; i < windows.size(); i++) {
+                Path piece = Files.createTempFile(directory, "segment-", ".wav");
+                pieces.add(piece);
+                long end = i == windows.size() - 1
+                    ? Long.MAX_VALUE
+                    : Math.round(windows.get(i).end() * format.sampleRate()) * frameSize;
+                long written = 0;
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(piece), 64 * 1024)) {
+                    out.write(new byte[HEADER_SIZE]);
+                    while (position < end && remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, Math.min(end - position, remaining)));
+                        if (read < 0) {
+                            remaining = 0;
+                            break;
+                        }
+                        out.write(buffer, 0, read);
+                        position += read;
+                        remaining -= read;
+                        written += read;
+                    }
+                }
+                writeHeader(piece, format.channels(), format.sampleRate(), format.bitsPerSample(), written);
+            }
+            return pieces;
+        } catch (IOException | RuntimeException e) {
+            pieces.forEach(piece -> piece.toFile().delete());
+            throw e;
+        }
+    }
+
+    static boolean isWav(String mimeType) {
+        String type = mimeType != null ? mimeType.toLowerCase(Locale.ROOT) : "";
+        return type.equals("audio/wav") || type.equals("audio/x-wav")
+            || type.equals("audio/wave") || type.equals("audio/vnd.wave");
+    }
+
+    /**
+     * Downmix and resample the sample data
+     * @return Number of samples written
+     */
+    private static long convert(InputStream in, OutputStream out, Format format, int outputRate) throws IOException {
+        int bytesPerSample = format.bitsPerSample() / 8;
+        int frameSize = format.frameSize();
+        byte[] frame = new byte[frameSize];
+        byte[] sample = new byte[2];
+
+        // Each input frame spans one unit of input time; each output sample spans `ratio` units
+        double ratio = (double) format.sampleRate() / outputRate;
+        double boundary = ratio;
+        double time = 0;
+        double sum = 0;
+        double weight = 0;
+        long written = 0;
+        long remaining = format.dataSize() / frameSize;
+
+        while (remaining-- > 0 && in.readNBytes(frame, 0, frameSize) == frameSize) {
+            double value = 0;
+            for (int channel = 0; channel < format.channels(); channel++) {
+                value += readSample(frame, channel * bytesPerSample, bytesPerSample);
+            }
+            value /= format.channels();
+
+            double end = time + 1;
+            if (end <= boundary) {
+                sum += value;
+                weight += 1;
+            } else {
+                // Split the frame between the output sample it completes and the next one
+                double head = boundary - time;
+                sum += value * head;
+                weight += head;
+                written += writeSample(out, sample, sum / weight);
+                sum = value * (end - boundary);
+                weight = end - boundary;
+                boundary += ratio;
+            }
+            time = end;
+        }
+        if (weight > 0) {
+            written += writeSample(out, sample, sum / weight);
+        }
+        return written;
+    }
+
+    /**
+     * Read one sample scaled to the 16-bit range; 8-bit PCM is unsigned, wider formats are signed little-endian
+     */
+    static double readSample(byte[] frame, int offset, int bytesPerSample) {
+        return switch (bytesPerSample) {
+            case 1 -> ((frame[offset] & 0xFF) - 128) << 8;
+            case 2 -> (short) ((frame[offset] & 0xFF) | (frame[offset + 1] << 8));
+            case 3 -> ((frame[offset] & 0xFF) | ((frame[offset + 1] & 0xFF) << 8) | (frame[offset + 2] << 16)) / 256.0;
+            default -> ((frame[offset] & 0xFF) | ((frame[offset + 1] & 0xFF) << 8)
+                | ((frame[offset + 2] & 0xFF) << 16) | (frame[offset + 3] << 24)) / 65536.0;
+        };
+    }
+
+    private static int writeSample(OutputStream out, byte[] sample, double value) throws IOException {
+        int rounded = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+        sample[0] = (byte) rounded;
+        sample[1] = (byte) (rounded >> 8);
+        out.write(sample);
+        return 1;
+    }
+
+    /**
+     * Walk the RIFF chunks up to the sample data
+     * @return The format, or null if this is not an integer PCM WAV file at a plausible sample rate
+     */
+    static Format readHeader(DataInputStream in) throws IOException {
+        byte[] id = new byte[4];
+        try {
+            in.readFully(id);
+            if (!"RIFF".equals(new String(id, StandardCharsets.US_ASCII))) {
+                return null;
+            }
+            readUnsignedInt(in);
+            in.readFully(id);
+            if (!"WAVE".equals(new String(id, StandardCharsets.US_ASCII))) {
+                return null;
+            }
+
+            int audioFormat = -1;
+            int channels = 0;
+            int sampleRate = 0;
+            int bitsPerSample = 0;
+            while (true) {
+                in.readFully(id);
+                String chunk = new String(id, StandardCharsets.US_ASCII);
+                long size = readUnsignedInt(in);
+                if (chunk.equals("fmt ")) {
+                    if (size < 16) {
+                        return null;
+                    }
+                    byte[] body = new byte[(int) Math.min(size, 64)];
+                    in.readFully(body);
+                    in.skipNBytes(size - body.length + (size & 1));
+                    ByteBuffer fmt = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+                    audioFormat = fmt.getShort(0) & 0xFFFF;
+                    channels = fmt.getShort(2) & 0xFFFF;
+                    sampleRate = fmt.getInt(4);
+                    bitsPerSample = fmt.getShort(14) & 0xFFFF;
+                    if (audioFormat == FORMAT_EXTENSIBLE && body.length >= 26) {
+                        // The sub-format GUID starts with the actual format code
+                        audioFormat = fmt.getShort(24) & 0xFFFF;
+                    }
+                } else if (chunk.equals("data")) {
+                    boolean supported = audioFormat == FORMAT_PCM && channels > 0
+                        && sampleRate >= MIN_SAMPLE_RATE && sampleRate <= MAX_SAMPLE_RATE
+                        && bitsPerSample % 8 == 0 && bitsPerSample >= 8 && bitsPerSample <= 32;
+                    // Streaming writers leave the size as 0 or 0xFFFFFFFF; read to the end of the file then
+                    long dataSize = size == 0 || size == 0xFFFFFFFFL ? Long.MAX_VALUE : size;
+                    return supported ? new Format(channels, sampleRate, bitsPerSample, dataSize) : null;
+                } else {
+                    in.skipNBytes(size + (size & 1));
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static long readUnsignedInt(DataInputStream in) throws IOException {
+        return Integer.toUnsignedLong(Integer.reverseBytes(in.readInt()));
+    }
+
+    private static void writeHeader(Path target, int channels, int sampleRate, int bitsPerSample, long dataSize) throws IOException {
+        int blockAlign = channels * (bitsPerSample / 8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII))
+            .putInt((int) (36 + dataSize))
+            .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+            .put("fmt ".getBytes(StandardCharsets.US_ASCII))
+            .putInt(16)
+            .putShort((short) FORMAT_PCM)
+            .putShort((short) channels)
+            .putInt(sampleRate)
+            .putInt(sampleRate * blockAlign)
+            .putShort((short) blockAlign)
+            .putShort((short) bitsPerSample)
+            .put("data".getBytes(StandardCharsets.US_ASCII))
+            .putInt((int) dataSize)
+            .flip();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+        }
+    }
+}
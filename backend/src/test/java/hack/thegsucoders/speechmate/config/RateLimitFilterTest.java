@@ -0,0 +1,84 @@
+package hack.thegsucoders.speechmate.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitFilterTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void bucketAdmitsBurstThenWaitsOneInterval() {
+        long now = 1_000 * SECOND;
+        RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(3, Duration.ofSeconds(10), now);
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(10 * SECOND, bucket.tryAcquire(now));
+        assertEquals(4 * SECOND, bucket.tryAcquire(now + 6 * SECOND));
+    }
+
+    @Test
+    void bucketRefillsOneTokenPerInterval() {
+        long now = 1_000 * SECOND;
+        RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(2, Duration.ofSeconds(10), now);
+        bucket.tryAcquire(now);
+        bucket.tryAcquire(now);
+
+        long later = now + 10 * SECOND;
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(10 * SECOND, bucket.tryAcquire(later));
+    }
+
+    @Test
+    void bucketRefillsNoFurtherThanCapacity() {
+        long now = 1_000 * SECOND;
+        RateLimitFilter.Bucket bucket = new RateLimitFilter.Bucket(2, Duration.ofSeconds(10), now);
+        bucket.tryAcquire(now);
+        assertFalse(bucket.isFull(now));
+
+        long idle = now + 1_000 * SECOND;
+        assertTrue(bucket.isFull(idle));
+        assertEquals(0, bucket.tryAcquire(idle));
+        assertEquals(0, bucket.tryAcquire(idle));
+        assertEquals(10 * SECOND, bucket.tryAcquire(idle));
+    }
+
+    @Test
+    void classifiesByEndpoint() {
+        assertEquals(RateLimitFilter.EndpointClass.HEAVY, RateLimitFilter.classify(post("/api/gemini/analyze-speech")));
+        assertEquals(RateLimitFilter.EndpointClass.HEAVY, RateLimitFilter.classify(post("/api/gemini/analyze-speech/jobs")));
+        assertEquals(RateLimitFilter.EndpointClass.LIGHT, RateLimitFilter.classify(post("/api/gemini/generate-outline")));
+        assertEquals(RateLimitFilter.EndpointClass.BATCH, RateLimitFilter.classify(post("/api/elevenlabs/text-to-speech/batch")));
+        assertNull(RateLimitFilter.classify(post("/api/gemini/speech-tips")));
+
+        MockHttpServletRequest get = new MockHttpServletRequest("GET", "/api/gemini/analyze-speech");
+        assertNull(RateLimitFilter.classify(get));
+    }
+
+    @Test
+    void classifiesEncodedPathsLikeTheDecodedOnes() {
+        assertEquals(RateLimitFilter.EndpointClass.HEAVY, RateLimitFilter.classify(post("/api/gemini/analyze%2Dspeech")));
+        assertEquals(RateLimitFilter.EndpointClass.HEAVY, RateLimitFilter.classify(post("/api/gemini/analyze-speech;x=1")));
+        assertEquals(RateLimitFilter.EndpointClass.HEAVY, RateLimitFilter.classify(post("/api//gemini/analyze-speech")));
+    }
+
+    @Test
+    void classifiesWithinTheContextPath() {
+        MockHttpServletRequest request = post("/app/api/gemini/analyze-speech");
+        request.setContextPath("/app");
+        assertEquals(RateLimitFilter.EndpointClass.HEAVY, RateLimitFilter.classify(request));
+    }
+
+    private static MockHttpServletRequest post(String uri) {
+        return new MockHttpServletRequest("POST", uri);
+    }
+}
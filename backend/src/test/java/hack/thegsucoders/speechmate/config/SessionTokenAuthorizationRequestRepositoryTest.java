@@ -0,0 +1,130 @@
+package hack.thegsucoders.speechmate.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokenAuthorizationRequestRepositoryTest {
+
+    private static final String COOKIE = "SPEECHMATE_OAUTH2_REQUEST";
+
+    private final SessionTokenCodec codec = new SessionTokenCodec(
+        "k1:" + Base64.getEncoder().encodeToString("k".repeat(32).getBytes(StandardCharsets.US_ASCII)),
+        false, new SimpleMeterRegistry());
+    private final SessionTokenAuthorizationRequestRepository repository = new SessionTokenAuthorizationRequestRepository(
+        codec, new SessionCookies("None", true, ""), COOKIE, Duration.ofMinutes(5));
+
+    /**
+     * Stands in for a gadget class: records whether its deserialization code ever ran
+     */
+    static final class Untrusted implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        static volatile boolean deserialized;
+
+        @Serial
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            deserialized = true;
+        }
+    }
+
+    @Test
+    void loadsTheSavedRequestForItsState() {
+        OAuth2AuthorizationRequest saved = authorizationRequest("state-1");
+        String token = save(saved);
+
+        OAuth2AuthorizationRequest loaded = repository.loadAuthorizationRequest(callback(token, "state-1"));
+
+        assertNotNull(loaded);
+        assertEquals(saved.getState(), loaded.getState());
+        assertEquals(saved.getRedirectUri(), loaded.getRedirectUri());
+        assertEquals(saved.getAuthorizationRequestUri(), loaded.getAuthorizationRequestUri());
+        assertEquals(saved.getAttributes(), loaded.getAttributes());
+    }
+
+    @Test
+    void ignoresOtherStatesAndMissingState() {
+        String token = save(authorizationRequest("state-1"));
+
+        assertNull(repository.loadAuthorizationRequest(callback(token, "state-2")));
+        assertNull(repository.loadAuthorizationRequest(callback(token, null)));
+    }
+
+    @Test
+    void removingClearsTheCookie() {
+        String token = save(authorizationRequest("state-1"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNotNull(repository.removeAuthorizationRequest(callback(token, "state-1"), response));
+        assertTrue(response.getHeader(HttpHeaders.SET_COOKIE).contains("Max-Age=0"));
+    }
+
+    @Test
+    void refusesToDeserializeClassesOutsideTheAllowlist() throws IOException {
+        Untrusted.deserialized = false;
+        List<Object> payload = new ArrayList<>(List.of(new Untrusted()));
+        String token = codec.seal(SessionTokenAuthorizationRequestRepository.PURPOSE, serialize(payload), Duration.ofMinutes(5));
+
+        assertNull(repository.loadAuthorizationRequest(callback(token, "state-1")));
+        assertFalse(Untrusted.deserialized);
+    }
+
+    private String save(OAuth2AuthorizationRequest authorizationRequest) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveAuthorizationRequest(authorizationRequest, new MockHttpServletRequest(), response);
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        return setCookie.substring(setCookie.indexOf('=') + 1, setCookie.indexOf(';'));
+    }
+
+    private static MockHttpServletRequest callback(String token, String state) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/login/oauth2/code/google");
+        request.setCookies(new Cookie(COOKIE, token));
+        if (state != null) {
+            request.setParameter("state", state);
+        }
+        return request;
+    }
+
+    private static OAuth2AuthorizationRequest authorizationRequest(String state) {
+        return OAuth2AuthorizationRequest.authorizationCode()
+            .authorizationUri("https://accounts.google.com/o/oauth2/v2/auth")
+            .clientId("client")
+            .redirectUri("https://api.example.com/login/oauth2/code/google")
+            .scopes(Set.of("openid", "email"))
+            .state(state)
+            .attributes(attributes -> attributes.put("registration_id", "google"))
+            .build();
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+}
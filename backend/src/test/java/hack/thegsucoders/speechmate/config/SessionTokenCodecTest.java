@@ -0,0 +1,112 @@
+package hack.thegsucoders.speechmate.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokenCodecTest {
+
+    private static final String OLD_KEY = "old:" + secret('a');
+    private static final String NEW_KEY = "new:" + secret('b');
+    private static final byte[] PAYLOAD = "{\"sub\":\"123\"}".getBytes(StandardCharsets.UTF_8);
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    @Test
+    void opensWhatItSealed() {
+        SessionTokenCodec codec = codec(OLD_KEY, false);
+        String token = codec.seal("session", PAYLOAD, TTL);
+
+        assertTrue(token.startsWith("old."));
+        assertArrayEquals(PAYLOAD, codec.open("session", token).orElseThrow());
+    }
+
+    @Test
+    void rejectsTamperedTokens() {
+        SessionTokenCodec codec = codec(OLD_KEY, false);
+        String token = codec.seal("session", PAYLOAD, TTL);
+        String[] parts = token.split("\\.");
+
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+            "{\"sub\":\"456\"}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(codec.open("session", parts[0] + "." + payload + "." + parts[2]).isEmpty());
+        assertTrue(codec.open("session", parts[0] + "." + parts[1] + "." + flipLastChar(parts[2])).isEmpty());
+        assertTrue(codec.open("session", "new." + parts[1] + "." + parts[2]).isEmpty());
+        assertTrue(codec.open("session", parts[0] + "." + parts[1]).isEmpty());
+        assertTrue(codec.open("session", "garbage").isEmpty());
+    }
+
+    @Test
+    void rejectsTokensSealedForAnotherPurpose() {
+        SessionTokenCodec codec = codec(OLD_KEY, false);
+        String token = codec.seal("oauth2-authorization-request", PAYLOAD, TTL);
+
+        assertTrue(codec.open("session", token).isEmpty());
+    }
+
+    @Test
+    void rejectsExpiredTokens() {
+        SessionTokenCodec codec = codec(OLD_KEY, false);
+        String token = codec.seal("session", PAYLOAD, Duration.ofSeconds(-1));
+
+        assertTrue(codec.open("session", token).isEmpty());
+    }
+
+    @Test
+    void rejectsTokensOfAnotherSecret() {
+        String token = codec(OLD_KEY, false).seal("session", PAYLOAD, TTL);
+
+        assertTrue(codec("old:" + secret('c'), false).open("session", token).isEmpty());
+    }
+
+    @Test
+    void rotatedKeysStillOpenButNoLongerSeal() {
+        String oldToken = codec(OLD_KEY, false).seal("session", PAYLOAD, TTL);
+        SessionTokenCodec rotated = codec(NEW_KEY + "," + OLD_KEY, false);
+
+        assertArrayEquals(PAYLOAD, rotated.open("session", oldToken).orElseThrow());
+        String newToken = rotated.seal("session", PAYLOAD, TTL);
+        assertTrue(newToken.startsWith("new."));
+        assertTrue(codec(OLD_KEY, false).open("session", newToken).isEmpty());
+    }
+
+    @Test
+    void encryptsPayloads() {
+        SessionTokenCodec codec = codec(OLD_KEY, true);
+        String token = codec.seal("session", PAYLOAD, TTL);
+
+        byte[] sealed = Base64.getUrlDecoder().decode(token.split("\\.")[1]);
+        assertFalse(new String(sealed, StandardCharsets.ISO_8859_1).contains("sub"));
+        assertArrayEquals(PAYLOAD, codec.open("session", token).orElseThrow());
+        // Each token gets its own IV
+        assertFalse(token.equals(codec.seal("session", PAYLOAD, TTL)));
+    }
+
+    @Test
+    void rejectsShortOrMalformedKeys() {
+        String shortSecret = Base64.getEncoder().encodeToString(new byte[16]);
+        assertThrows(IllegalArgumentException.class, () -> codec("short:" + shortSecret, false));
+        assertThrows(IllegalArgumentException.class, () -> codec("dotted.id:" + secret('a'), false));
+        assertThrows(IllegalArgumentException.class, () -> codec(secret('a'), false));
+    }
+
+    private static SessionTokenCodec codec(String keys, boolean encrypt) {
+        return new SessionTokenCodec(keys, encrypt, new SimpleMeterRegistry());
+    }
+
+    private static String secret(char fill) {
+        return Base64.getEncoder().encodeToString(String.valueOf(fill).repeat(32).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String flipLastChar(String value) {
+        char last = value.charAt(value.length() - 1);
+        return value.substring(0, value.length() - 1) + (last == 'A' ? 'B' : 'A');
+    }
+}
@@ -0,0 +1,95 @@
+package hack.thegsucoders.speechmate.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTokenSecurityContextRepositoryTest {
+
+    private static final String COOKIE = "SPEECHMATE_SESSION";
+
+    private final SessionTokenCodec codec = new SessionTokenCodec(
+        "k1:" + Base64.getEncoder().encodeToString("k".repeat(32).getBytes(StandardCharsets.US_ASCII)),
+        false, new SimpleMeterRegistry());
+    private final SessionTokenSecurityContextRepository repository = new SessionTokenSecurityContextRepository(
+        codec, new SessionCookies("None", true, ""), new ObjectMapper(), COOKIE, Duration.ofHours(12), "sub,name,email");
+
+    @Test
+    void restoresTheSignedInUserFromTheCookie() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveContext(context(), new MockHttpServletRequest(), response);
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.contains("HttpOnly"));
+        assertTrue(setCookie.contains("Secure"));
+
+        SecurityContext restored = load(cookieValue(setCookie));
+        OAuth2AuthenticationToken authentication = (OAuth2AuthenticationToken) restored.getAuthentication();
+        OAuth2User user = authentication.getPrincipal();
+        assertEquals("google", authentication.getAuthorizedClientRegistrationId());
+        assertEquals("123", user.getName());
+        assertEquals("speaker@example.com", user.getAttribute("email"));
+        // Attributes not listed in auth.session.attributes are not kept
+        assertNull(user.getAttribute("locale"));
+        assertEquals(List.of("OAUTH2_USER"), authentication.getAuthorities().stream().map(Object::toString).toList());
+    }
+
+    @Test
+    void ignoresTamperedCookies() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveContext(context(), new MockHttpServletRequest(), response);
+        String token = cookieValue(response.getHeader(HttpHeaders.SET_COOKIE));
+
+        assertNull(load(token.substring(0, token.length() - 2) + "xx").getAuthentication());
+        assertNull(load("k1.e30.AAAA").getAuthentication());
+    }
+
+    @Test
+    void clearsTheCookieOnLogout() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(COOKIE, "anything"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveContext(new SecurityContextImpl(), request, response);
+
+        assertTrue(response.getHeader(HttpHeaders.SET_COOKIE).contains("Max-Age=0"));
+    }
+
+    private SecurityContext load(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(COOKIE, token));
+        return repository.loadContext(new HttpRequestResponseHolder(request, new MockHttpServletResponse()));
+    }
+
+    private static SecurityContext context() {
+        List<SimpleGrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("OAUTH2_USER"));
+        DefaultOAuth2User user = new DefaultOAuth2User(authorities,
+            Map.of("sub", "123", "name", "Speaker", "email", "speaker@example.com", "locale", "en"), "sub");
+        return new SecurityContextImpl(new OAuth2AuthenticationToken(user, authorities, "google"));
+    }
+
+    private static String cookieValue(String setCookie) {
+        return setCookie.substring(setCookie.indexOf('=') + 1, setCookie.indexOf(';'));
+    }
+}
@@ -0,0 +1,43 @@
+package hack.thegsucoders.speechmate.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UploadAdmissionFilterTest {
+
+    @Test
+    void reservesDeclaredLengthRoundedUpToWholeUnits() throws IOException {
+        UploadAdmissionFilter filter = filter(DataSize.ofMegabytes(100), DataSize.ofMegabytes(10));
+
+        assertEquals(1, filter.reservation(0));
+        assertEquals(1, filter.reservation(1));
+        assertEquals(1, filter.reservation(1024));
+        assertEquals(2, filter.reservation(1025));
+    }
+
+    @Test
+    void reservesLargestRequestWhenLengthIsUnknown() throws IOException {
+        UploadAdmissionFilter filter = filter(DataSize.ofMegabytes(100), DataSize.ofMegabytes(10));
+
+        assertEquals(10 * 1024, filter.reservation(-1));
+    }
+
+    @Test
+    void reservesNoMoreThanTheWholeBudget() throws IOException {
+        UploadAdmissionFilter filter = filter(DataSize.ofMegabytes(1), DataSize.ofMegabytes(10));
+
+        assertEquals(1024, filter.reservation(-1));
+        assertEquals(1024, filter.reservation(DataSize.ofGigabytes(5).toBytes()));
+    }
+
+    private static UploadAdmissionFilter filter(DataSize budget, DataSize maxRequestSize) throws IOException {
+        return new UploadAdmissionFilter(new SimpleMeterRegistry(), true, budget, Duration.ofSeconds(1), 4,
+            Duration.ofSeconds(15), maxRequestSize, "");
+    }
+}
@@ -0,0 +1,115 @@
+package hack.thegsucoders.speechmate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.service.AcousticAnalyzer;
+import hack.thegsucoders.speechmate.service.AnalysisHistoryStore;
+import hack.thegsucoders.speechmate.service.AnalysisJobService;
+import hack.thegsucoders.speechmate.service.AnalysisResultCache;
+import hack.thegsucoders.speechmate.service.GeminiFileService;
+import hack.thegsucoders.speechmate.service.GeminiRequestEncoder;
+import hack.thegsucoders.speechmate.service.GeminiResponseParser;
+import hack.thegsucoders.speechmate.service.GeminiService;
+import hack.thegsucoders.speechmate.service.MediaReducer;
+import hack.thegsucoders.speechmate.service.ModelRouter;
+import hack.thegsucoders.speechmate.service.RecordingSegmenter;
+import hack.thegsucoders.speechmate.service.SpeechTipPool;
+import hack.thegsucoders.speechmate.service.UpstreamMetrics;
+import hack.thegsucoders.speechmate.service.UpstreamResilience;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class GeminiControllerTest {
+
+    /** Pixel limit of the media reducer, below the test image's 40x40 */
+    private static final long MAX_IMAGE_PIXELS = 1_000;
+
+    @TempDir
+    Path spoolDir;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper();
+        MediaReducer mediaReducer = new MediaReducer(meterRegistry, true, 1, 2048, MAX_IMAGE_PIXELS, 0.85f, 16_000);
+        ReflectionTestUtils.setField(mediaReducer, "spoolDir", spoolDir);
+        AcousticAnalyzer acousticAnalyzer = new AcousticAnalyzer(meterRegistry, true, Duration.ofMillis(250));
+        ModelRouter router = new ModelRouter(mock(UpstreamResilience.class), meterRegistry,
+            List.of("gemini-2.0-flash"), Duration.ofSeconds(20),
+            List.of("gemini-2.0-flash"), Duration.ofSeconds(15),
+            List.of("gemini-2.0-flash"), Duration.ofSeconds(10),
+            List.of("gemini-2.5-pro"), Duration.ofMinutes(3),
+            List.of("gemini-2.5-flash"), DataSize.ofMegabytes(8));
+
+        GeminiService geminiService = new GeminiService(
+            mock(WebClient.class),
+            mock(WebClient.class),
+            mock(GeminiFileService.class),
+            mock(GeminiRequestEncoder.class),
+            mediaReducer,
+            mock(RecordingSegmenter.class),
+            acousticAnalyzer,
+            mock(AnalysisResultCache.class),
+            mock(GeminiResponseParser.class),
+            mock(UpstreamResilience.class),
+            router,
+            mock(UpstreamMetrics.class),
+            objectMapper,
+            meterRegistry,
+            Duration.ofSeconds(10),
+            Duration.ofMinutes(10),
+            1000);
+        GeminiController controller = new GeminiController(geminiService, acousticAnalyzer,
+            mock(AnalysisJobService.class), mock(AnalysisHistoryStore.class), mock(SpeechTipPool.class));
+
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+            .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+            .build();
+    }
+
+    @Test
+    void analyzeSpeechRejectsImageOverPixelLimit() throws Exception {
+        MockMultipartFile image = new MockMultipartFile("files", "slide.png", "image/png", png(40, 40));
+
+        MvcResult result = mockMvc.perform(multipart("/api/gemini/analyze-speech").file(image))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").exists());
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,67 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.AcousticAnalysis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AcousticAnalyzerTest {
+
+    private final AcousticAnalyzer analyzer = new AcousticAnalyzer(new SimpleMeterRegistry(), true, Duration.ofMillis(250));
+
+    @Test
+    void rejectsImplausibleSampleRate() throws IOException {
+        byte[] wav = wav(1, 8, 1, 0xFFFFFFFEL, new byte[16]);
+        assertNull(analyzer.analyze(new ByteArrayInputStream(wav), wav.length));
+    }
+
+    @Test
+    void rejectsDataSizeLargerThanUpload() throws IOException {
+        byte[] wav = wav(16_000, 8, 1, 0xFFFFFFFEL, new byte[16]);
+        assertNull(analyzer.analyze(new ByteArrayInputStream(wav), wav.length));
+    }
+
+    @Test
+    void readsToEndWhenSizeIsUnknown() throws IOException {
+        // One second of 8-bit silence with the streaming writers' unknown data size
+        byte[] samples = new byte[16_000];
+        Arrays.fill(samples, (byte) 128);
+        byte[] wav = wav(16_000, 8, 1, 0xFFFFFFFFL, samples);
+
+        AcousticAnalysis analysis = analyzer.analyze(new ByteArrayInputStream(wav), 0);
+
+        assertNotNull(analysis);
+        assertEquals(1.0, analysis.durationSeconds());
+    }
+
+    private static byte[] wav(int sampleRate, int bitsPerSample, int channels, long dataSize, byte[] samples) {
+        int blockAlign = channels * bitsPerSample / 8;
+        return ByteBuffer.allocate(44 + samples.length).order(ByteOrder.LITTLE_ENDIAN)
+            .put("RIFF".getBytes(StandardCharsets.US_ASCII))
+            .putInt(36 + samples.length)
+            .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+            .put("fmt ".getBytes(StandardCharsets.US_ASCII))
+            .putInt(16)
+            .putShort((short) 1)
+            .putShort((short) channels)
+            .putInt(sampleRate)
+            .putInt(sampleRate * blockAlign)
+            .putShort((short) blockAlign)
+            .putShort((short) bitsPerSample)
+            .put("data".getBytes(StandardCharsets.US_ASCII))
+            .putInt((int) dataSize)
+            .put(samples)
+            .array();
+    }
+}
@@ -0,0 +1,136 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.model.AnalysisSummary;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisHistoryStoreTest {
+
+    private static final String OWNER = "speaker@example.com";
+
+    @TempDir
+    Path directory;
+
+    private AnalysisHistoryStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void keepsCompleteRecordsAfterTornTail() throws IOException {
+        store = open();
+        String first = append("first", 70);
+        append("second", 80);
+        store.close();
+
+        Path log = directory.resolve("analyses.log");
+        long size = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+
+        store = open();
+        assertEquals(List.of(first), ids(store.page(OWNER, null, 10).items()));
+        assertEquals(70, store.find(OWNER, first).orElseThrow().overallScore());
+        assertTrue(Files.size(log) < size - 5);
+
+        // Appends after recovery land after the last complete record
+        String third = append("third", 90);
+        store.close();
+        store = open();
+        assertEquals(List.of(third, first), ids(store.page(OWNER, null, 10).items()));
+    }
+
+    @Test
+    void keepsIdsUniqueAcrossCompaction() throws IOException {
+        store = open();
+        String first = append("first", 70);
+        String second = append("second", 80);
+        String third = append("third", 90);
+        long before = Files.size(directory.resolve("analyses.log"));
+        assertTrue(store.delete(OWNER, third));
+        assertTrue(store.delete(OWNER, second));
+        store.close();
+
+        // The log, now mostly deleted records, is compacted in the background or on reopening
+        store = open();
+        assertTrue(Files.size(directory.resolve("analyses.log")) < before);
+        store.close();
+
+        store = open();
+        String fourth = append("fourth", 60);
+        assertFalse(List.of(first, second, third).contains(fourth));
+        assertEquals(List.of(fourth, first), ids(store.page(OWNER, null, 10).items()));
+        assertEquals(70, store.find(OWNER, first).orElseThrow().overallScore());
+        assertTrue(store.find(OWNER, third).isEmpty());
+    }
+
+    @Test
+    void pagesPastCursorWhoseEntryWasDeleted() throws IOException {
+        store = open();
+        String a = append("a", 1);
+        String b = append("b", 2);
+        String c = append("c", 3);
+        String d = append("d", 4);
+        String e = append("e", 5);
+
+        AnalysisHistoryStore.Page page = store.page(OWNER, null, 2);
+        assertEquals(List.of(e, d), ids(page.items()));
+        assertEquals(d, page.nextCursor());
+
+        assertTrue(store.delete(OWNER, d));
+        page = store.page(OWNER, page.nextCursor(), 2);
+        assertEquals(List.of(c, b), ids(page.items()));
+
+        page = store.page(OWNER, page.nextCursor(), 2);
+        assertEquals(List.of(a), ids(page.items()));
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void hidesOtherUsersAnalyses() throws IOException {
+        store = open();
+        String id = append("mine", 70);
+
+        assertTrue(store.find("someone@example.com", id).isEmpty());
+        assertFalse(store.delete("someone@example.com", id));
+        assertTrue(store.page("someone@example.com", null, 10).items().isEmpty());
+    }
+
+    private AnalysisHistoryStore open() throws IOException {
+        AnalysisHistoryStore opened = new AnalysisHistoryStore(new ObjectMapper(), new SimpleMeterRegistry(), true,
+            directory, 50, 0.5, DataSize.ofBytes(1), false);
+        opened.open();
+        return opened;
+    }
+
+    private String append(String topic, int score) throws IOException {
+        SpeechAnalysis analysis = new SpeechAnalysis(score, "Summary of " + topic, null, null, null, null,
+            Map.of("clarity", new SpeechAnalysis.Score(score, "good")), null, null, null, null, null, null);
+        return store.append(OWNER, topic, analysis).orElseThrow().id();
+    }
+
+    private static List<String> ids(List<AnalysisSummary> summaries) {
+        return summaries.stream().map(AnalysisSummary::id).toList();
+    }
+}
@@ -0,0 +1,116 @@
+package hack.thegsucoders.speechmate.service;
+
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AnalysisMergerTest {
+
+    /** A ten-minute window followed by a five-minute one */
+    private static final List<RecordingSegmenter.Window> WINDOWS = List.of(
+        new RecordingSegmenter.Window(0, 0, 600),
+        new RecordingSegmenter.Window(1, 600, 900));
+
+    @Test
+    void singleAnalysisIsReturnedAsIs() {
+        SpeechAnalysis analysis = analysis(80, null, null, null, null);
+
+        assertSame(analysis, AnalysisMerger.merge(List.of(analysis), List.of(WINDOWS.get(0))));
+    }
+
+    @Test
+    void scoresAreWeightedBySegmentLength() {
+        SpeechAnalysis first = analysis(90, Map.of("clarity", new SpeechAnalysis.Score(60, "Fair")), null, null, null);
+        SpeechAnalysis second = analysis(60, Map.of("clarity", new SpeechAnalysis.Score(90, "Excellent"),
+            "pacing", new SpeechAnalysis.Score(72, "Good")), null, null, null);
+
+        SpeechAnalysis merged = AnalysisMerger.merge(List.of(first, second), WINDOWS);
+
+        assertEquals(80, merged.overallScore());
+        assertEquals(new SpeechAnalysis.Score(70, "Good"), merged.scores().get("clarity"));
+        // Reported by one segment only, so averaged over that one
+        assertEquals(new SpeechAnalysis.Score(72, "Good"), merged.scores().get("pacing"));
+    }
+
+    @Test
+    void fillerCountsAreSummedAndFrequencyRecomputed() {
+        SpeechAnalysis first = analysis(80, null, null,
+            new SpeechAnalysis.FillerWords(20, "once per 30 seconds", List.of("um", "like"), "Openings"), null);
+        SpeechAnalysis second = analysis(80, null, null,
+            new SpeechAnalysis.FillerWords(10, "once per 30 seconds", List.of("so", "Um"), "Transitions"), null);
+
+        SpeechAnalysis.FillerWords fillers = AnalysisMerger.merge(List.of(first, second), WINDOWS).detailedFeedback().fillerWords();
+
+        assertEquals(30, fillers.count());
+        assertEquals("once per 30 seconds", fillers.frequency());
+        assertEquals(List.of("um", "so", "like"), fillers.mostCommon());
+        assertEquals("Openings Transitions", fillers.context());
+    }
+
+    @Test
+    void timestampsAreShiftedToRecordingTime() {
+        List<RecordingSegmenter.Window> windows = List.of(
+            new RecordingSegmenter.Window(0, 0, 600),
+            new RecordingSegmenter.Window(1, 600, 3000),
+            new RecordingSegmenter.Window(2, 3000, 3700));
+
+        SpeechAnalysis merged = AnalysisMerger.merge(List.of(
+            analysis(80, null, statements("0:42"), null, null),
+            analysis(80, null, statements("1:05-1:30", "around 2:10 and 12:00"), null, null),
+            analysis(80, null, statements("10:30", "0:01:05"), null, null)
+        ), windows);
+
+        assertEquals(List.of("00:42", "11:05-11:30", "around 12:10 and 22:00", "1:00:30", "51:05"),
+            merged.specificStatementsFeedback().stream().map(SpeechAnalysis.StatementFeedback::timestamp).toList());
+    }
+
+    @Test
+    void timestampWithoutTimeBecomesSegmentRange() {
+        SpeechAnalysis merged = AnalysisMerger.merge(List.of(
+            analysis(80, null, statements("opening"), null, null),
+            analysis(80, null, statements((String) null), null, null)
+        ), WINDOWS);
+
+        assertEquals(List.of("00:00-10:00", "10:00-15:00"),
+            merged.specificStatementsFeedback().stream().map(SpeechAnalysis.StatementFeedback::timestamp).toList());
+    }
+
+    @Test
+    void actionPlanIsInterleavedAndRenumbered() {
+        SpeechAnalysis first = analysis(80, null, null, null,
+            List.of("Priority 1: Slow down", "Priority 2: Pause after key points"));
+        SpeechAnalysis second = analysis(80, null, null, null,
+            List.of("Priority 1: slow down", "priority 2 : Make eye contact", "Priority 3: Cut filler words"));
+
+        SpeechAnalysis merged = AnalysisMerger.merge(List.of(first, second), WINDOWS);
+
+        assertEquals(List.of(
+            "Priority 1: Slow down",
+            "Priority 2: Pause after key points",
+            "Priority 3: Make eye contact"
+        ), merged.actionPlan());
+    }
+
+    private static List<SpeechAnalysis.StatementFeedback> statements(String... timestamps) {
+        return Arrays.stream(timestamps)
+            .map(timestamp -> new SpeechAnalysis.StatementFeedback("Quote", timestamp, "Strong", null, null))
+            .toList();
+    }
+
+    private static SpeechAnalysis analysis(Integer overallScore,
+                                           Map<String, SpeechAnalysis.Score> scores,
+                                           List<SpeechAnalysis.StatementFeedback> statements,
+                                           SpeechAnalysis.FillerWords fillerWords,
+                                           List<String> actionPlan) {
+        SpeechAnalysis.DetailedFeedback details = fillerWords == null ? null
+            : new SpeechAnalysis.DetailedFeedback(null, null, fillerWords, null, null, null, null, null);
+        return new SpeechAnalysis(overallScore, null, null, null, null, null, scores, null, statements, null,
+            details, null, actionPlan);
+    }
+}
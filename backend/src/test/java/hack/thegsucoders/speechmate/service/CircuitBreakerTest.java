@@ -0,0 +1,123 @@
+package hack.thegsucoders.speechmate.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAtFailureRateThenClosesAfterSuccessfulTrial() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, Duration.ZERO);
+
+        record(breaker, false, false, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        record(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        CircuitBreaker.Permit trial = breaker.tryAcquire();
+        assertNotNull(trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertNull(breaker.tryAcquire(), "only one trial at a time");
+
+        breaker.onSuccess(trial);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertNotNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedTrialReopens() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, Duration.ZERO);
+        record(breaker, true, true, true, true);
+
+        CircuitBreaker.Permit trial = breaker.tryAcquire();
+        breaker.onFailure(trial);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void rejectsCallsUntilOpenDurationHasPassed() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, Duration.ofHours(1));
+        record(breaker, true, true, true, true);
+
+        assertNull(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(breaker.remainingOpen().compareTo(Duration.ofMinutes(59)) > 0);
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 5, 0.5, Duration.ZERO);
+
+        record(breaker, true, true, true, true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void failureRateIsMeasuredOverSlidingWindow() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.75, Duration.ZERO);
+
+        // Two early failures slide out of the window before a third arrives
+        record(breaker, true, true, false, false, false, false, true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void ignoresOutcomesFromEarlierGenerations() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, Duration.ZERO);
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+        record(breaker, true, true, true, true);
+
+        CircuitBreaker.Permit trial = breaker.tryAcquire();
+        // A call admitted while closed finishes during the trial and must not decide it
+        breaker.onSuccess(slow);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onFailure(slow);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.onSuccess(trial);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        // Nor count against the window of the circuit that closed after it
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(slow);
+            breaker.onFailure(trial);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void cancelledTrialLetsAnotherThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, Duration.ZERO);
+        record(breaker, true, true, true, true);
+
+        CircuitBreaker.Permit trial = breaker.tryAcquire();
+        breaker.onCancel(trial);
+        CircuitBreaker.Permit next = breaker.tryAcquire();
+
+        assertNotNull(next);
+        breaker.onSuccess(trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state(), "the cancelled trial no longer decides");
+        breaker.onSuccess(next);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private static void record(CircuitBreaker breaker, boolean... failures) {
+        for (boolean failed : failures) {
+            CircuitBreaker.Permit permit = breaker.tryAcquire();
+            if (failed) {
+                breaker.onFailure(permit);
+            } else {
+                breaker.onSuccess(permit);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeminiFileServiceTest {
+
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    /** Three and a half chunks, so the upload has full chunks and a short final one */
+    private static final int FILE_BYTES = CHUNK_BYTES * 7 / 2;
+
+    private GeminiStubServer stub;
+    private GeminiFileService fileService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = new GeminiStubServer();
+        fileService = new GeminiFileService(WebClient.create(stub.baseUrl()), new UpstreamMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(fileService, "apiKey", "test-key");
+        ReflectionTestUtils.setField(fileService, "chunkSize", DataSize.ofKilobytes(256));
+        ReflectionTestUtils.setField(fileService, "pollInterval", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(fileService, "activationTimeout", Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void uploadsInChunksAndWaitsUntilActive() {
+        stub.fileStates("PROCESSING", "PROCESSING", "ACTIVE");
+
+        GeminiFileService.UploadedFile uploaded = fileService.upload(recording(new AtomicLong())).block(Duration.ofSeconds(10));
+
+        assertEquals(new GeminiFileService.UploadedFile(GeminiStubServer.FILE_NAME, GeminiStubServer.FILE_URI, "audio/mpeg"), uploaded);
+        assertEquals(List.of("resumable start " + FILE_BYTES + " audio/mpeg"), stub.startHeaders);
+        assertEquals(List.of(
+            new GeminiStubServer.Chunk("upload", 0, CHUNK_BYTES),
+            new GeminiStubServer.Chunk("upload", CHUNK_BYTES, CHUNK_BYTES),
+            new GeminiStubServer.Chunk("upload", 2L * CHUNK_BYTES, CHUNK_BYTES),
+            new GeminiStubServer.Chunk("upload, finalize", 3L * CHUNK_BYTES, CHUNK_BYTES / 2)
+        ), stub.chunks);
+        assertEquals(2, stub.polls());
+        assertTrue(stub.deleted.isEmpty());
+    }
+
+    @Test
+    void readsNoMoreThanTwoChunksAheadOfTheUpload() {
+        AtomicLong maxAhead = new AtomicLong();
+
+        fileService.upload(recording(maxAhead)).block(Duration.ofSeconds(10));
+
+        // One chunk in flight and one read ahead, however large the file
+        assertTrue(maxAhead.get() <= 2L * CHUNK_BYTES, "read " + maxAhead.get() + " bytes ahead of the upload");
+    }
+
+    @Test
+    void deletesFileThatFailsProcessing() {
+        stub.fileStates("PROCESSING", "FAILED");
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> fileService.upload(recording(new AtomicLong())).block(Duration.ofSeconds(10)));
+
+        assertInstanceOf(IllegalStateException.class, error);
+        assertEquals(List.of(GeminiStubServer.FILE_NAME), stub.deleted);
+    }
+
+    @Test
+    void deletesFileThatNeverActivates() {
+        stub.fileStates("PROCESSING");
+        ReflectionTestUtils.setField(fileService, "activationTimeout", Duration.ofMillis(200));
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> fileService.upload(recording(new AtomicLong())).block(Duration.ofSeconds(10)));
+
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertEquals(List.of(GeminiStubServer.FILE_NAME), stub.deleted);
+    }
+
+    @Test
+    void deletesFileWhenUploadIsCancelled() throws InterruptedException {
+        stub.fileStates("PROCESSING");
+
+        Disposable upload = fileService.upload(recording(new AtomicLong())).subscribe();
+        assertTrue(stub.awaitFirstPoll());
+        upload.dispose();
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (stub.deleted.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(GeminiStubServer.FILE_NAME), stub.deleted);
+    }
+
+    /**
+     * Upload whose stream records how far reading has got ahead of the bytes the stub received
+     */
+    private MockMultipartFile recording(AtomicLong maxAhead) {
+        return new MockMultipartFile("files", "talk.mp3", "audio/mpeg", new byte[FILE_BYTES]) {
+            @Override
+            public InputStream getInputStream() {
+                return new FilterInputStream(new ByteArrayInputStream(new byte[FILE_BYTES])) {
+                    private long read;
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) {
+                            read += n;
+                            maxAhead.accumulateAndGet(read - stub.received(), Math::max);
+                        }
+                        return n;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hack.thegsucoders.speechmate.model.SpeechAnalysis;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeminiServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void outlinePromptFallsBackToDefaultsForNullFields() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("topic", null);
+        params.put("tone", null);
+        params.put("keyMessage", null);
+        params.put("seconds", 120);
+
+        String prompt = outlinePrompt(params);
+
+        assertTrue(prompt.contains("A speech topic"));
+        assertTrue(prompt.contains("professional"));
+        assertFalse(prompt.contains("Key Message"));
+        assertFalse(prompt.contains("null"));
+    }
+
+    @Test
+    void outlinePromptUsesGivenFields() {
+        String prompt = outlinePrompt(Map.of("topic", "Climate policy", "keyMessage", "Act now", "seconds", 300));
+
+        assertTrue(prompt.contains("Climate policy"));
+        assertTrue(prompt.contains("Key Message: Act now"));
+    }
+
+    @Test
+    void largeRecordingIsReferencedByFileUriAndDeletedAfterwards() throws Exception {
+        try (GeminiStubServer stub = new GeminiStubServer()) {
+            stub.fileStates("PROCESSING", "ACTIVE");
+            GeminiService geminiService = geminiService(stub);
+            MockMultipartFile recording = new MockMultipartFile("files", "talk.mp3", "audio/mpeg", new byte[64 * 1024]);
+
+            SpeechAnalysis analysis = geminiService.analyzeSpeechPerformance(List.of(recording), "Topic", null, 60, null)
+                .block(Duration.ofSeconds(10));
+
+            assertEquals(80, analysis.overallScore());
+            assertEquals(1, stub.generateBodies.size());
+            String body = stub.generateBodies.get(0);
+            assertTrue(body.contains("\"file_data\""));
+            assertTrue(body.contains("\"file_uri\":\"" + GeminiStubServer.FILE_URI + "\""));
+            assertFalse(body.contains("\"inline_data\""));
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (stub.deleted.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(GeminiStubServer.FILE_NAME), stub.deleted);
+        }
+    }
+
+    /**
+     * Service that sends analyses and Files API uploads to the stub, with every file above 1 KB uploaded
+     */
+    private GeminiService geminiService(GeminiStubServer stub) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper();
+        WebClient webClient = WebClient.create(stub.baseUrl());
+        UpstreamMetrics upstreamMetrics = new UpstreamMetrics(meterRegistry);
+
+        GeminiFileService fileService = new GeminiFileService(webClient, upstreamMetrics);
+        ReflectionTestUtils.setField(fileService, "apiKey", "test-key");
+        ReflectionTestUtils.setField(fileService, "chunkSize", DataSize.ofKilobytes(256));
+        ReflectionTestUtils.setField(fileService, "pollInterval", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(fileService, "activationTimeout", Duration.ofSeconds(5));
+
+        MediaReducer mediaReducer = new MediaReducer(meterRegistry, false, 1, 2048, 4_000_000, 0.85f, 16_000);
+        ReflectionTestUtils.setField(mediaReducer, "spoolDir", tempDir.resolve("spool"));
+        UpstreamResilience resilience = new UpstreamResilience(meterRegistry, 3, Duration.ofMillis(10), Duration.ofMillis(50),
+            Duration.ofSeconds(1), 20, 10, 0.5, Duration.ofSeconds(30), false, 50);
+        ModelRouter router = new ModelRouter(resilience, meterRegistry,
+            List.of("gemini-2.0-flash"), Duration.ofSeconds(20),
+            List.of("gemini-2.0-flash"), Duration.ofSeconds(15),
+            List.of("gemini-2.0-flash"), Duration.ofSeconds(10),
+            List.of("gemini-2.5-pro"), Duration.ofSeconds(10),
+            List.of("gemini-2.5-flash"), DataSize.ofMegabytes(8));
+
+        GeminiService geminiService = new GeminiService(
+            webClient,
+            webClient,
+            fileService,
+            new GeminiRequestEncoder(objectMapper),
+            mediaReducer,
+            new RecordingSegmenter(meterRegistry, false, Duration.ofMinutes(10), Duration.ofMinutes(5), 1),
+            new AcousticAnalyzer(meterRegistry, false, Duration.ofMillis(250)),
+            new AnalysisResultCache(objectMapper, meterRegistry, false, tempDir.resolve("cache"), DataSize.ofMegabytes(1), Duration.ofHours(1)),
+            new GeminiResponseParser(objectMapper),
+            resilience,
+            router,
+            upstreamMetrics,
+            objectMapper,
+            meterRegistry,
+            Duration.ofSeconds(10),
+            Duration.ofMinutes(10),
+            1000);
+        ReflectionTestUtils.setField(geminiService, "apiKey", "test-key");
+        ReflectionTestUtils.setField(geminiService, "filesApiEnabled", true);
+        ReflectionTestUtils.setField(geminiService, "inlineThreshold", DataSize.ofKilobytes(1));
+        return geminiService;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String outlinePrompt(Map<String, Object> params) {
+        Map<String, Object> request = GeminiService.buildOutlineRequest(params);
+        Map<String, Object> content = ((List<Map<String, Object>>) request.get("contents")).get(0);
+        return (String) ((List<Map<String, Object>>) content.get("parts")).get(0).get("text");
+    }
+}
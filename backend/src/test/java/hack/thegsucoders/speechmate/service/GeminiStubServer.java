@@ -0,0 +1,142 @@
+package hack.thegsucoders.speechmate.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Gemini API: the Files API resumable upload protocol, file
+ * metadata polling and deletion, and generateContent with a canned analysis
+ */
+class GeminiStubServer implements AutoCloseable {
+
+    static final String FILE_NAME = "files/abc123";
+    static final String FILE_URI = "https://generativelanguage.googleapis.com/v1beta/" + FILE_NAME;
+    static final String ANALYSIS = "{\"overall_score\": 80, \"summary\": \"Solid delivery\"}";
+
+    /**
+     * One chunk received by the upload session
+     */
+    record Chunk(String command, long offset, int length) {
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile List<String> fileStates = List.of("ACTIVE");
+    private final AtomicInteger polls = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private final CountDownLatch firstPoll = new CountDownLatch(1);
+
+    final List<String> startHeaders = new CopyOnWriteArrayList<>();
+    final List<Chunk> chunks = new CopyOnWriteArrayList<>();
+    final List<String> deleted = new CopyOnWriteArrayList<>();
+    final List<String> generateBodies = new CopyOnWriteArrayList<>();
+
+    GeminiStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * State reported when the upload is finalized, then on each poll; the last one repeats
+     */
+    void fileStates(String... states) {
+        this.fileStates = List.of(states);
+    }
+
+    /** Bytes of upload chunks fully received so far */
+    long received() {
+        return received.get();
+    }
+
+    int polls() {
+        return polls.get();
+    }
+
+    boolean awaitFirstPoll() throws InterruptedException {
+        return firstPoll.await(5, TimeUnit.SECONDS);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+
+        if (method.equals("POST") && path.equals("/upload/v1beta/files")) {
+            startHeaders.add(exchange.getRequestHeaders().getFirst("X-Goog-Upload-Protocol")
+                + " " + exchange.getRequestHeaders().getFirst("X-Goog-Upload-Command")
+                + " " + exchange.getRequestHeaders().getFirst("X-Goog-Upload-Header-Content-Length")
+                + " " + exchange.getRequestHeaders().getFirst("X-Goog-Upload-Header-Content-Type"));
+            exchange.getResponseHeaders().add("X-Goog-Upload-URL", baseUrl() + "/upload/session/1");
+            respond(exchange, 200, "");
+        } else if (method.equals("POST") && path.equals("/upload/session/1")) {
+            String command = exchange.getRequestHeaders().getFirst("X-Goog-Upload-Command");
+            long offset = Long.parseLong(exchange.getRequestHeaders().getFirst("X-Goog-Upload-Offset"));
+            if (offset != received.get()) {
+                respond(exchange, 400, "{\"error\": \"offset " + offset + " does not match " + received.get() + "\"}");
+                return;
+            }
+            chunks.add(new Chunk(command, offset, body.length));
+            received.addAndGet(body.length);
+            respond(exchange, 200, command.contains("finalize") ? "{\"file\": " + file(fileStates.get(0)) + "}" : "");
+        } else if (method.equals("GET") && path.equals("/v1beta/" + FILE_NAME)) {
+            int poll = polls.incrementAndGet();
+            firstPoll.countDown();
+            List<String> states = fileStates;
+            respond(exchange, 200, file(states.get(Math.min(poll, states.size() - 1))));
+        } else if (method.equals("DELETE") && path.startsWith("/v1beta/files/")) {
+            deleted.add(path.substring("/v1beta/".length()));
+            respond(exchange, 200, "{}");
+        } else if (method.equals("POST") && path.endsWith(":generateContent")) {
+            generateBodies.add(new String(body, StandardCharsets.UTF_8));
+            respond(exchange, 200, "{\"candidates\": [{\"content\": {\"parts\": [{\"text\": "
+                + quote(ANALYSIS) + "}]}, \"finishReason\": \"STOP\"}]}");
+        } else {
+            respond(exchange, 404, "{}");
+        }
+    }
+
+    private static String file(String state) {
+        return "{\"name\": \"" + FILE_NAME + "\", \"uri\": \"" + FILE_URI
+            + "\", \"mimeType\": \"audio/mpeg\", \"state\": \"" + state + "\"}";
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
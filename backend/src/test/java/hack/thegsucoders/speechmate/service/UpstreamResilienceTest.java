@@ -0,0 +1,128 @@
+package hack.thegsucoders.speechmate.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamResilienceTest {
+
+    private static final String UPSTREAM = "gemini-2.0-flash:generateContent";
+
+    private final UpstreamResilience resilience = new UpstreamResilience(new SimpleMeterRegistry(),
+        3, Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofSeconds(2), 4, 4, 0.5, Duration.ofHours(1), false, 50);
+
+    @Test
+    void retriesTransientFailures() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 2, error(503, null));
+
+        String result = resilience.execute(UPSTREAM, UpstreamResilience.Policy.RETRY, call).block();
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 10, error(502, null));
+
+        assertThrows(UpstreamUnavailableException.class,
+            () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.RETRY, call).block());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void doesNotRetryCallerErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 10, error(400, null));
+
+        WebClientResponseException error = assertThrows(WebClientResponseException.class,
+            () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.RETRY, call).block());
+        assertEquals(400, error.getStatusCode().value());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void singlePolicyMakesOneAttempt() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 10, error(503, null));
+
+        assertThrows(UpstreamUnavailableException.class,
+            () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.SINGLE, call).block());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void honoursShortRetryAfter() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 1, error(429, "0"));
+
+        assertEquals("ok", resilience.execute(UPSTREAM, UpstreamResilience.Policy.RETRY, call).block());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void passesRetryAfterBeyondCapBackToCaller() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 10, error(429, "60"));
+
+        UpstreamUnavailableException error = assertThrows(UpstreamUnavailableException.class,
+            () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.RETRY, call).block());
+        assertEquals(1, attempts.get());
+        assertEquals(Duration.ofSeconds(60), error.getRetryAfter());
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutCallingUpstream() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 100, error(503, null));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(UpstreamUnavailableException.class,
+                () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.SINGLE, call).block());
+        }
+        assertTrue(resilience.isOpen(UPSTREAM));
+
+        UpstreamUnavailableException error = assertThrows(UpstreamUnavailableException.class,
+            () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.RETRY, call).block());
+        assertEquals(4, attempts.get());
+        assertTrue(error.getRetryAfter().compareTo(Duration.ofMinutes(59)) > 0);
+    }
+
+    @Test
+    void callerErrorsDoNotTripCircuit() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> call = failingTimes(attempts, 100, error(400, null));
+        for (int i = 0; i < 8; i++) {
+            assertThrows(WebClientResponseException.class,
+                () -> resilience.execute(UPSTREAM, UpstreamResilience.Policy.SINGLE, call).block());
+        }
+
+        assertFalse(resilience.isOpen(UPSTREAM));
+    }
+
+    /**
+     * Call that fails with the given error on its first attempts, then answers "ok"
+     */
+    private static Mono<String> failingTimes(AtomicInteger attempts, int failures, WebClientResponseException error) {
+        return Mono.defer(() -> attempts.incrementAndGet() <= failures ? Mono.error(error) : Mono.just("ok"));
+    }
+
+    private static WebClientResponseException error(int status, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+        }
+        return WebClientResponseException.create(status, "", headers, new byte[0], null);
+    }
+}
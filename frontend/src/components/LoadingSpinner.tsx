@@ -16,8 +16,14 @@ export default function LoadingSpinner({ message }: LoadingSpinnerProps) {
     if (cachedTips) {
       try {
         const parsedData = JSON.parse(cachedTips);
-        // Extract tips array from the Gemini API response
-        if (parsedData.candidates?.[0]?.content?.parts?.[0]?.text) {
+        if (Array.isArray(parsedData.tips) && parsedData.tips.length > 0) {
+          // Tips served from the backend pool
+          setTips(parsedData.tips);
+          const randomStart = Math.floor(Math.random() * parsedData.tips.length);
+          setCurrentTip(parsedData.tips[randomStart]);
+          setLastTipIndex(randomStart);
+        } else if (parsedData.candidates?.[0]?.content?.parts?.[0]?.text) {
+          // Extract tips array from a raw Gemini API response
           const tipsText = parsedData.candidates[0].content.parts[0].text;
           const tipsMatch = tipsText.match(/\{[\s\S]*\}/);
           if (tipsMatch) {
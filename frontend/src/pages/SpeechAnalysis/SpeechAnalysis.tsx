@@ -190,52 +190,19 @@ function SpeechAnalysis() {
       return;
     }
 
-    // Parse the Gemini API response
-    try {
-      const analysisData = state.analysis as Record<string, unknown>;
-      console.log('Analysis data keys:', Object.keys(analysisData));
-      
-      const candidates = analysisData.candidates as Array<{ content?: { parts?: Array<{ text?: string }> } }>;
-      console.log('Candidates:', candidates);
-      
-      if (candidates && candidates.length > 0) {
-        const content = candidates[0].content;
-        console.log('Content:', content);
-        
-        if (content && content.parts && content.parts.length > 0) {
-          const responseText = content.parts[0].text;
-          console.log('Response text:', responseText);
-          
-          if (responseText) {
-            const jsonMatch = responseText.match(/\{[\s\S]*\}/);
-            console.log('JSON match found:', !!jsonMatch);
-            
-            if (jsonMatch) {
-              console.log('Parsing JSON:', jsonMatch[0].substring(0, 200) + '...');
-              const parsed = JSON.parse(jsonMatch[0]) as AnalysisData;
-              console.log('Parsed analysis:', parsed);
-              setAnalysis(parsed);
-              
-              // Play the feedback summary using ElevenLabs
-              playFeedbackAudio(parsed.summary);
-            } else {
-              console.error('No JSON found in response text');
-              alert('Invalid response format. Please try again.');
-              navigate('/home', { state: { skipAnimation: true } });
-            }
-          }
-        }
-      } else {
-        console.error('No candidates found in analysis data');
-        alert('Invalid analysis response. Please try again.');
-        navigate('/home', { state: { skipAnimation: true } });
-      }
-    } catch (err) {
-      console.error('Failed to parse analysis:', err);
-      console.error('Error details:', err instanceof Error ? err.message : String(err));
-      alert('Failed to parse speech analysis. Please try again.');
+    // The backend returns the analysis already parsed
+    const parsed = state.analysis as unknown as AnalysisData;
+    if (typeof parsed.overall_score !== 'number' || !parsed.summary) {
+      console.error('Invalid analysis response:', parsed);
+      alert('Invalid analysis response. Please try again.');
       navigate('/home', { state: { skipAnimation: true } });
+      return;
     }
+
+    setAnalysis(parsed);
+
+    // Play the feedback summary using ElevenLabs
+    playFeedbackAudio(parsed.summary);
   }, [location, navigate]);
 
   // Cleanup audio on unmount
@@ -27,15 +27,7 @@ interface SpeechOutline {
 }
 
 interface LocationState {
-  outline: {
-    candidates?: Array<{
-      content?: {
-        parts?: Array<{
-          text?: string;
-        }>;
-      };
-    }>;
-  };
+  outline: SpeechOutline;
   originalParams: {
     topic: string;
     tone: string;
@@ -66,36 +58,9 @@ function SpeechResult() {
       return;
     }
 
-    // Extract text from Gemini API response
-    try {
-      const candidates = state.outline.candidates;
-      if (candidates && candidates.length > 0) {
-        const content = candidates[0].content;
-        if (content && content.parts && content.parts.length > 0) {
-          const generatedText = content.parts[0].text;
-          if (generatedText) {
-            // Try to parse as JSON
-            try {
-              const jsonMatch = generatedText.match(/\{[\s\S]*\}/);
-              if (jsonMatch) {
-                const parsed = JSON.parse(jsonMatch[0]) as SpeechOutline;
-                setSpeechOutline(parsed);
-                setSpeechText(formatOutlineToText(parsed));
-              } else {
-                setSpeechText(generatedText);
-              }
-            } catch {
-              setSpeechText(generatedText);
-            }
-          } else {
-            setSpeechText('No content generated');
-          }
-        }
-      }
-    } catch (err) {
-      console.error('Error parsing outline:', err);
-      setSpeechText(JSON.stringify(state.outline, null, 2));
-    }
+    // The backend returns the outline already parsed
+    setSpeechOutline(state.outline);
+    setSpeechText(formatOutlineToText(state.outline));
   }, [state, navigate]);
 
   const formatOutlineToText = (outline: SpeechOutline): string => {